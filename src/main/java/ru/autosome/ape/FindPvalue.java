@@ -5,6 +5,7 @@ import ru.autosome.ape.calculation.findPvalue.FindPvalueAPE;
 import ru.autosome.commons.backgroundModel.mono.Background;
 import ru.autosome.commons.backgroundModel.mono.BackgroundModel;
 import ru.autosome.commons.backgroundModel.mono.WordwiseBackground;
+import ru.autosome.commons.importer.MotifImporter;
 import ru.autosome.commons.importer.PWMImporter;
 import ru.autosome.commons.model.Named;
 import ru.autosome.commons.motifModel.mono.PWM;
@@ -23,11 +24,11 @@ public class FindPvalue extends ru.autosome.ape.cli.generalized.FindPvalue<PWM,
   }
 
   @Override
-  protected CanFindPvalue calculator() throws FileNotFoundException {
+  protected CanFindPvalue calculator(Named<PWM> motif) throws FileNotFoundException {
     if (thresholds_folder == null) {
       return new FindPvalueAPE<>(motif.getObject(), background, discretizer);
     } else {
-      return bsearchCalculator();
+      return bsearchCalculator(motif);
     }
   }
 
@@ -42,9 +43,8 @@ public class FindPvalue extends ru.autosome.ape.cli.generalized.FindPvalue<PWM,
   }
 
   @Override
-  protected Named<PWM> loadMotif(String filename) {
-    PWMImporter importer = new PWMImporter(background, data_model, effective_count, transpose, pseudocount);
-    return importer.loadMotifWithName(filename);
+  protected MotifImporter<PWM> motifImporter() {
+    return new PWMImporter(background, data_model, effective_count, transpose, pseudocount);
   }
 
   protected static FindPvalue from_arglist(String[] args) throws IOException {
@@ -53,10 +53,14 @@ public class FindPvalue extends ru.autosome.ape.cli.generalized.FindPvalue<PWM,
     return result;
   }
 
+  public static void run(String[] args) throws Exception {
+    FindPvalue cli = FindPvalue.from_arglist(args);
+    cli.report();
+  }
+
   public static void main(String[] args) {
     try {
-      FindPvalue cli = FindPvalue.from_arglist(args);
-      System.out.println(cli.report());
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
@@ -5,6 +5,7 @@ import ru.autosome.ape.calculation.findThreshold.FindThresholdAPE;
 import ru.autosome.commons.backgroundModel.mono.Background;
 import ru.autosome.commons.backgroundModel.mono.BackgroundModel;
 import ru.autosome.commons.backgroundModel.mono.WordwiseBackground;
+import ru.autosome.commons.importer.MotifImporter;
 import ru.autosome.commons.importer.PWMImporter;
 import ru.autosome.commons.model.Named;
 import ru.autosome.commons.motifModel.mono.PWM;
@@ -27,9 +28,8 @@ public class FindThreshold extends ru.autosome.ape.cli.generalized.FindThreshold
   }
 
   @Override
-  protected Named<PWM> loadMotif(String filename) {
-    PWMImporter importer = new PWMImporter(background, data_model, effective_count, transpose, pseudocount);
-    return importer.loadMotifWithName(filename);
+  protected MotifImporter<PWM> motifImporter() {
+    return new PWMImporter(background, data_model, effective_count, transpose, pseudocount);
   }
 
   @Override
@@ -38,11 +38,11 @@ public class FindThreshold extends ru.autosome.ape.cli.generalized.FindThreshold
   }
 
   @Override
-  protected CanFindThreshold calculator() throws FileNotFoundException {
+  protected CanFindThreshold calculator(Named<PWM> motif) throws FileNotFoundException {
     if (thresholds_folder == null) {
       return new FindThresholdAPE<>(motif.getObject(), background, discretizer);
     } else {
-      return bsearchCalculator();
+      return bsearchCalculator(motif);
     }
   }
 
@@ -52,10 +52,14 @@ public class FindThreshold extends ru.autosome.ape.cli.generalized.FindThreshold
     return result;
   }
 
+  public static void run(String[] args) throws Exception {
+    FindThreshold cli = FindThreshold.from_arglist(args);
+    cli.report();
+  }
+
   public static void main(String args[]) {
     try {
-      FindThreshold cli = FindThreshold.from_arglist(args);
-      System.out.println(cli.report());
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
@@ -13,11 +13,15 @@ abstract public class ScoringDistributionGenerator {
   abstract GaussianThresholdEstimator gaussianThresholdEstimator();
   protected abstract ScoreDistributionTop score_distribution_above_threshold(double threshold);
 
-  private ScoreDistributionTop score_distribution() {
+  public ScoreDistributionTop score_distribution() {
     return score_distribution_above_threshold(Double.NEGATIVE_INFINITY);
   }
 
-  private ScoreDistributionTop score_distribution_under_pvalue(double pvalue) {
+  public ScoreDistributionTop score_distribution_above(double threshold) {
+    return score_distribution_above_threshold(threshold);
+  }
+
+  public ScoreDistributionTop score_distribution_under_pvalue(double pvalue) {
     final int maxNumberOfAttempts = 2;
     int numberOfAttempts = 0;
     ScoreDistributionTop scoreDistribution;
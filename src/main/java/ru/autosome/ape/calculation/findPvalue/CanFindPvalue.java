@@ -10,4 +10,10 @@ public interface CanFindPvalue {
 
   FoundedPvalueInfo pvalueByThreshold(double threshold);
   ReportListLayout<FoundedPvalueInfo> report_table_layout();
+
+  // Calculator for a long series of requests (e.g. for portions of a threshold stream),
+  // which can keep data reused between requests (such as score distribution)
+  default CanFindPvalue streamingCalculator() {
+    return this;
+  }
 }
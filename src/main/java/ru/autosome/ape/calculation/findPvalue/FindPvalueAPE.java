@@ -17,10 +17,19 @@ public class FindPvalueAPE<ModelType extends Discretable<ModelType> & HasLength
   final Discretizer discretizer;
 
   public FindPvalueAPE(ModelType motif, BackgroundType background, Discretizer discretizer) {
-    this.pvalueCalculator = new FindPvalueExact<>(motif.discrete(discretizer), background);
+    this(new FindPvalueExact<>(motif.discrete(discretizer), background), discretizer);
+  }
+
+  private FindPvalueAPE(FindPvalueExact<ModelType, BackgroundType> pvalueCalculator, Discretizer discretizer) {
+    this.pvalueCalculator = pvalueCalculator;
     this.discretizer = discretizer;
   }
 
+  @Override
+  public FindPvalueAPE<ModelType, BackgroundType> streamingCalculator() {
+    return new FindPvalueAPE<>(pvalueCalculator.streamingCalculator(), discretizer);
+  }
+
   @Override
   public List<FoundedPvalueInfo> pvaluesByThresholds(List<Double> thresholds) {
     List<FoundedPvalueInfo> infos_upscaled = pvalueCalculator.pvaluesByThresholds(discretizer.upscale(thresholds));
@@ -39,6 +39,10 @@ public class FindPvalueBsearch implements CanFindPvalue {
     return new FoundedPvalueInfo(threshold, pvalue);
   }
 
+  public double maxThresholdWithPvalueGreaterThan(double pvalue) {
+    return bsearchList.maxThresholdWithPvalueGreaterThan(pvalue);
+  }
+
   // TODO: decide which parameters are relevant
   @Override
   public ReportListLayout<FoundedPvalueInfo> report_table_layout() {
@@ -2,10 +2,12 @@ package ru.autosome.ape.calculation.findPvalue;
 
 import gnu.trove.map.TDoubleDoubleMap;
 import ru.autosome.ape.calculation.ScoringModelDistributions.ScoringDistributionGenerator;
+import ru.autosome.ape.model.ScoreDistributionTop;
 import ru.autosome.commons.backgroundModel.GeneralizedBackgroundModel;
 import ru.autosome.commons.cli.ReportListLayout;
 import ru.autosome.commons.motifModel.HasLength;
 import ru.autosome.commons.motifModel.ScoreDistribution;
+import ru.autosome.commons.support.ArrayExtensions;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,15 +17,52 @@ public class FindPvalueExact<ModelType extends HasLength & ScoreDistribution<Bac
 
   final ModelType motif;
   final BackgroundType background;
+  final boolean reuseDistribution;
+  private ScoreDistributionTop reusedDistribution; // distribution calculated for previous requests
 
   public FindPvalueExact(ModelType motif, BackgroundType background) {
+    this(motif, background, false);
+  }
+
+  private FindPvalueExact(ModelType motif, BackgroundType background, boolean reuseDistribution) {
     this.motif = motif;
     this.background = background;
+    this.reuseDistribution = reuseDistribution;
+  }
+
+  // Distribution is calculated once (above the least threshold of the first request)
+  // and recalculated in full at most once (when a lower threshold is requested);
+  // counts are taken from it by binary search.
+  @Override
+  public FindPvalueExact<ModelType, BackgroundType> streamingCalculator() {
+    return new FindPvalueExact<>(motif, background, true);
+  }
+
+  private synchronized ScoreDistributionTop distributionAbove(double threshold) {
+    if (reusedDistribution == null) {
+      reusedDistribution = motif.scoringModel(background).score_distribution_above(threshold);
+    } else if (reusedDistribution.getLeftScoreBoundary() > threshold) {
+      reusedDistribution = motif.scoringModel(background).score_distribution();
+    }
+    return reusedDistribution;
   }
 
   @Override
   public List<FoundedPvalueInfo> pvaluesByThresholds(List<Double> thresholds) {
     double vocabularyVolume = Math.pow(background.volume(), motif.length());
+    if (reuseDistribution) {
+      ScoreDistributionTop scoreDistribution = distributionAbove(ArrayExtensions.min(thresholds));
+      List<FoundedPvalueInfo> infos = new ArrayList<>(thresholds.size());
+      try {
+        for (double threshold: thresholds) {
+          double pvalue = scoreDistribution.count_above_threshold_bsearch(threshold) / vocabularyVolume;
+          infos.add(new FoundedPvalueInfo(threshold, pvalue));
+        }
+      } catch (ScoreDistributionTop.NotRepresentativeDistribution exception) {
+        throw new RuntimeException("Should never be here", exception);
+      }
+      return infos;
+    }
     ScoringDistributionGenerator scoringModel = motif.scoringModel(background);
     TDoubleDoubleMap counts = scoringModel.counts_above_thresholds(thresholds);
 
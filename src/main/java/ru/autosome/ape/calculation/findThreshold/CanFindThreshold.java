@@ -9,4 +9,10 @@ public interface CanFindThreshold {
   FoundedThresholdInfo thresholdByPvalue(double pvalue, BoundaryType boundaryType);
 
   List<FoundedThresholdInfo> thresholdsByPvalues(List<Double> pvalues, BoundaryType boundaryType);
+
+  // Calculator for a long series of requests (e.g. for portions of a P-value stream),
+  // which can keep data reused between requests (such as score distribution)
+  default CanFindThreshold streamingCalculator() {
+    return this;
+  }
 }
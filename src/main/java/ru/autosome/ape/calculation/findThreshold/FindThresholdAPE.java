@@ -14,8 +14,17 @@ public class FindThresholdAPE<ModelType extends Discretable<ModelType> & ScoreDi
   final Discretizer discretizer;
 
   public FindThresholdAPE(ModelType motif, BackgroundType background, Discretizer discretizer) {
+    this(new FindThresholdExact<>(motif.discrete(discretizer), background), discretizer);
+  }
+
+  private FindThresholdAPE(FindThresholdExact<ModelType, BackgroundType> thresholdCalculator, Discretizer discretizer) {
     this.discretizer = discretizer;
-    this.thresholdCalculator = new FindThresholdExact<>(motif.discrete(discretizer), background);
+    this.thresholdCalculator = thresholdCalculator;
+  }
+
+  @Override
+  public FindThresholdAPE<ModelType, BackgroundType> streamingCalculator() {
+    return new FindThresholdAPE<>(thresholdCalculator.streamingCalculator(), discretizer);
   }
 
   @Override
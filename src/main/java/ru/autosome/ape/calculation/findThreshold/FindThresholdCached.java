@@ -0,0 +1,36 @@
+package ru.autosome.ape.calculation.findThreshold;
+
+import ru.autosome.commons.model.BoundaryType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Remembers thresholds which were already calculated by underlying calculator.
+// Useful when the same motif is compared against many queries at the same P-value.
+// Thread-safe if underlying calculator is.
+public class FindThresholdCached implements CanFindThreshold {
+  private final CanFindThreshold thresholdCalculator;
+  private final Map<BoundaryType, Map<Double, FoundedThresholdInfo>> cache;
+
+  public FindThresholdCached(CanFindThreshold thresholdCalculator) {
+    this.thresholdCalculator = thresholdCalculator;
+    this.cache = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public FoundedThresholdInfo thresholdByPvalue(double pvalue, BoundaryType boundaryType) {
+    Map<Double, FoundedThresholdInfo> cacheForBoundary = cache.computeIfAbsent(boundaryType, (BoundaryType key) -> new ConcurrentHashMap<>());
+    return cacheForBoundary.computeIfAbsent(pvalue, (Double key) -> thresholdCalculator.thresholdByPvalue(key, boundaryType));
+  }
+
+  @Override
+  public List<FoundedThresholdInfo> thresholdsByPvalues(List<Double> pvalues, BoundaryType boundaryType) {
+    List<FoundedThresholdInfo> result = new ArrayList<>(pvalues.size());
+    for (double pvalue: pvalues) {
+      result.add(thresholdByPvalue(pvalue, boundaryType));
+    }
+    return result;
+  }
+}
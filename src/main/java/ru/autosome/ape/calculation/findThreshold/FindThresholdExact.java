@@ -1,8 +1,10 @@
 package ru.autosome.ape.calculation.findThreshold;
 
 import ru.autosome.ape.calculation.ScoringModelDistributions.ScoringDistributionGenerator;
+import ru.autosome.ape.model.ScoreDistributionTop;
 import ru.autosome.commons.model.BoundaryType;
 import ru.autosome.commons.motifModel.ScoreDistribution;
+import ru.autosome.commons.support.ArrayExtensions;
 
 import java.util.List;
 
@@ -10,10 +12,36 @@ public class FindThresholdExact<ModelType extends ScoreDistribution<BackgroundTy
                                BackgroundType> implements CanFindThreshold {
   final ModelType motif;
   final BackgroundType background;
+  final boolean reuseDistribution;
+  private ScoreDistributionTop reusedDistribution; // distribution calculated for previous requests
+  private double reusedDistributionPvalue; // P-value covered by reused distribution
 
   public FindThresholdExact(ModelType motif, BackgroundType background) {
+    this(motif, background, false);
+  }
+
+  private FindThresholdExact(ModelType motif, BackgroundType background, boolean reuseDistribution) {
     this.motif = motif;
     this.background = background;
+    this.reuseDistribution = reuseDistribution;
+  }
+
+  // Distribution is calculated once (for the greatest P-value of the first request)
+  // and recalculated in full at most once (when a greater P-value is requested)
+  @Override
+  public FindThresholdExact<ModelType, BackgroundType> streamingCalculator() {
+    return new FindThresholdExact<>(motif, background, true);
+  }
+
+  private synchronized ScoreDistributionTop distributionUnderPvalue(double pvalue) {
+    if (reusedDistribution == null) {
+      reusedDistribution = motif.scoringModel(background).score_distribution_under_pvalue(pvalue);
+      reusedDistributionPvalue = reusedDistribution.top_part_pvalue();
+    } else if (reusedDistributionPvalue < pvalue && reusedDistribution.getLeftScoreBoundary() != Double.NEGATIVE_INFINITY) {
+      reusedDistribution = motif.scoringModel(background).score_distribution();
+      reusedDistributionPvalue = reusedDistribution.top_part_pvalue();
+    }
+    return reusedDistribution;
   }
 
   @Override
@@ -24,6 +52,13 @@ public class FindThresholdExact<ModelType extends ScoreDistribution<BackgroundTy
 
   @Override
   public List<FoundedThresholdInfo> thresholdsByPvalues(List<Double> pvalues, BoundaryType boundaryType) {
+    if (reuseDistribution) {
+      try {
+        return distributionUnderPvalue(ArrayExtensions.max(pvalues)).thresholds(pvalues, boundaryType);
+      } catch (ScoreDistributionTop.NotRepresentativeDistribution exception) {
+        throw new RuntimeException("Should never be here", exception);
+      }
+    }
     ScoringDistributionGenerator scoringModel = motif.scoringModel(background);
     return scoringModel.thresholds(pvalues, boundaryType);
   }
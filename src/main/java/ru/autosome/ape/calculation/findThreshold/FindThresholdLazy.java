@@ -0,0 +1,33 @@
+package ru.autosome.ape.calculation.findThreshold;
+
+import ru.autosome.commons.model.BoundaryType;
+import ru.autosome.commons.support.Lazy;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+// Creates underlying calculator on the first request,
+// e.g. loads a thresholds list only when motif is really compared with something.
+// Thread-safe if underlying calculator is.
+public class FindThresholdLazy implements CanFindThreshold {
+  private final Lazy<CanFindThreshold> thresholdCalculator;
+
+  public FindThresholdLazy(Supplier<? extends CanFindThreshold> thresholdCalculatorSupplier) {
+    this.thresholdCalculator = Lazy.of(thresholdCalculatorSupplier);
+  }
+
+  @Override
+  public FoundedThresholdInfo thresholdByPvalue(double pvalue, BoundaryType boundaryType) {
+    return thresholdCalculator.get().thresholdByPvalue(pvalue, boundaryType);
+  }
+
+  @Override
+  public List<FoundedThresholdInfo> thresholdsByPvalues(List<Double> pvalues, BoundaryType boundaryType) {
+    return thresholdCalculator.get().thresholdsByPvalues(pvalues, boundaryType);
+  }
+
+  @Override
+  public CanFindThreshold streamingCalculator() {
+    return thresholdCalculator.get().streamingCalculator();
+  }
+}
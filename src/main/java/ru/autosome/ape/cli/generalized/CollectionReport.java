@@ -0,0 +1,80 @@
+package ru.autosome.ape.cli.generalized;
+
+import ru.autosome.commons.cli.ListReporter;
+import ru.autosome.commons.cli.NamedRow;
+import ru.autosome.commons.model.Named;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Collection mode of FindPvalue/FindThreshold: each motif is processed in a separate task of a thread pool,
+// results are written as a single table keyed by motif name (in order of motifs in collection)
+// as soon as results of preceding motifs are written.
+class CollectionReport {
+  interface MotifProcessing<ModelType, ResultInfo> {
+    List<NamedRow<ResultInfo>> process(Named<ModelType> motif) throws Exception;
+  }
+
+  static <ModelType, ResultInfo> void write(List<Named<ModelType>> motifs, int numberOfThreads,
+                                            MotifProcessing<ModelType, ResultInfo> processing,
+                                            File binaryOutputFile) throws IOException {
+    if (motifs.isEmpty()) {
+      throw new IllegalArgumentException("No motifs in collection");
+    }
+    ExecutorService workers = Executors.newFixedThreadPool(numberOfThreads, (Runnable task) -> {
+      Thread thread = new Thread(task);
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<List<NamedRow<ResultInfo>>>> results = new ArrayList<>(motifs.size());
+      for (Named<ModelType> motif: motifs) {
+        results.add(workers.submit(() -> processing.process(motif)));
+      }
+      // all motifs have the same columns, so the first motif's layout is used for the header
+      List<NamedRow<ResultInfo>> firstMotifRows = result(results.get(0), motifs.get(0));
+      if (firstMotifRows.isEmpty()) {
+        throw new IllegalArgumentException("No values to calculate");
+      }
+      Iterable<List<NamedRow<ResultInfo>>> chunks = () -> new Iterator<List<NamedRow<ResultInfo>>>() {
+        private int motifIndex = 0;
+
+        @Override
+        public boolean hasNext() {
+          return motifIndex < motifs.size();
+        }
+
+        @Override
+        public List<NamedRow<ResultInfo>> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          int index = motifIndex++;
+          return (index == 0) ? firstMotifRows : result(results.get(index), motifs.get(index));
+        }
+      };
+      ListReporter.writeChunkedReport(chunks, NamedRow.combinedLayout("M", "motif", firstMotifRows.get(0).layout), binaryOutputFile);
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  private static <ResultInfo> List<NamedRow<ResultInfo>> result(Future<List<NamedRow<ResultInfo>>> future, Named<?> motif) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Failed to process motif " + motif.getName() + ": " + e.getCause().getMessage(), e.getCause());
+    }
+  }
+}
@@ -5,28 +5,32 @@ import ru.autosome.ape.calculation.findPvalue.FindPvalueBsearch;
 import ru.autosome.ape.calculation.findPvalue.FoundedPvalueInfo;
 import ru.autosome.commons.cli.Helper;
 import ru.autosome.commons.cli.ListReporter;
+import ru.autosome.commons.cli.NamedRow;
 import ru.autosome.commons.cli.ReportListLayout;
-import ru.autosome.commons.cli.TextListReporter;
+import ru.autosome.commons.importer.InputExtensions;
+import ru.autosome.commons.importer.MotifImporter;
 import ru.autosome.commons.model.Discretizer;
 import ru.autosome.commons.model.Named;
 import ru.autosome.commons.model.PseudocountCalculator;
 import ru.autosome.commons.motifModel.types.DataModel;
 import ru.autosome.commons.support.IOExtensions;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class FindPvalue<ModelType, BackgroundType> {
+  private static final int STDIN_CHUNK_SIZE = 4096;
 
   protected abstract String DOC_background_option();
   protected abstract String DOC_run_string();
   public String documentString() {
     return "Command-line format:\n" +
      DOC_run_string() + " <pat-file> <threshold list>... [options]\n" +
+     "  or\n" +
+     DOC_run_string() + " <collection> <threshold list>... --collection [options]\n" +
+     "  (collection is a folder with motifs or a single file with all of them, results are keyed by motif name)\n" +
      "\n" +
      "Options:\n" +
      "  [--discretization <discretization level>] or [-d]\n" +
@@ -36,11 +40,16 @@ public abstract class FindPvalue<ModelType, BackgroundType> {
      "  [--background <background probabilities>] or [-b]" + DOC_background_option() + "\n" +
      "  [--precalc <folder>] - specify folder with thresholds for PWM collection (for fast-and-rough calculation).\n" +
      "  [--transpose] - load motif from transposed matrix (nucleotides in lines).\n" +
+     "  [--binary-output <file>] - write results into a columnar binary file instead of text output to stdout.\n" +
+     "  [--thresholds-from-stdin] - read more thresholds (whitespace-separated) from stdin; they are processed portion by portion, results are printed as soon as they are obtained.\n" +
+     "  [--collection] - calculate P-values for each motif of a collection.\n" +
+     "  [--threads <number>] - number of threads to process motifs of a collection in parallel (default: number of processors).\n" +
      DOC_additional_options() +
      "\n" +
      "Examples:\n" +
      "  " + DOC_run_string() + " motifs/KLF4_f2.pat 7.32\n" +
-     "  " + DOC_run_string() + " motifs/KLF4_f2.pat 7.32 4.31 5.42 -d 1000 -b 0.2,0.3,0.3,0.2\n";
+     "  " + DOC_run_string() + " motifs/KLF4_f2.pat 7.32 4.31 5.42 -d 1000 -b 0.2,0.3,0.3,0.2\n" +
+     "  " + DOC_run_string() + " ./hocomoco/ 4.31 5.42 --collection --precalc ./hocomoco_thresholds/\n";
   }
 
   protected String DOC_additional_options() {
@@ -55,26 +64,39 @@ public abstract class FindPvalue<ModelType, BackgroundType> {
   protected PseudocountCalculator pseudocount;
   protected boolean transpose;
   protected boolean should_extract_values_from_stdin;
+  protected Iterator<List<Double>> thresholds_from_stdin; // portions of thresholds which are read lazily
+  protected File binaryOutputFile; // null means that results are printed to stdout as text
+  protected boolean collection_mode;
+  protected int numberOfThreads;
 
   protected Named<ModelType> motif;
+  protected List<Named<ModelType>> motifs; // in collection mode
   protected BackgroundType background;
 
   protected File thresholds_folder;
 
-  abstract protected CanFindPvalue calculator() throws FileNotFoundException;
+  abstract protected CanFindPvalue calculator(Named<ModelType> motif) throws FileNotFoundException;
 
-  protected CanFindPvalue bsearchCalculator() throws FileNotFoundException {
+  protected CanFindPvalue calculator() throws FileNotFoundException {
+    return calculator(motif);
+  }
+
+  protected CanFindPvalue bsearchCalculator(Named<ModelType> motif) throws FileNotFoundException {
     if (thresholds_folder.isFile()) {
       return new FindPvalueBsearch(thresholds_folder);
     } else {
-      File thresholds_file = new File(thresholds_folder, motif.getName() + ".thr");
+      File thresholds_file = InputExtensions.possiblyCompressedFile(new File(thresholds_folder, motif.getName() + ".thr"));
       return new FindPvalueBsearch(thresholds_file);
     }
   }
 
   protected abstract void initialize_default_background();
   protected abstract void extract_background(String str);
-  abstract protected Named<ModelType> loadMotif(String filename);
+  protected abstract MotifImporter<ModelType> motifImporter();
+
+  protected Named<ModelType> loadMotif(String filename) {
+    return motifImporter().loadMotifWithName(filename);
+  }
 
   protected void initialize_defaults() {
     initialize_default_background();
@@ -86,6 +108,10 @@ public abstract class FindPvalue<ModelType, BackgroundType> {
     pseudocount = PseudocountCalculator.logPseudocount;
     transpose = false;
     should_extract_values_from_stdin = false;
+    thresholds_from_stdin = null;
+    binaryOutputFile = null;
+    collection_mode = false;
+    numberOfThreads = Runtime.getRuntime().availableProcessors();
   }
 
   protected void extract_pm_filename(List<String> argv) {
@@ -106,11 +132,10 @@ public abstract class FindPvalue<ModelType, BackgroundType> {
     } catch (NumberFormatException e) { }
 
     if (should_extract_values_from_stdin) {
-      IOExtensions.extract_doubles_from_input_stream(System.in, thresholds_list);
+      thresholds_from_stdin = IOExtensions.double_chunks(new BufferedReader(new InputStreamReader(System.in)), STDIN_CHUNK_SIZE);
     }
 
-
-    if (thresholds_list.isEmpty()) {
+    if (thresholds_list.isEmpty() && (thresholds_from_stdin == null || !thresholds_from_stdin.hasNext())) {
       throw new IllegalArgumentException("You should specify at least one threshold");
     }
     this.thresholds = thresholds_list;
@@ -138,6 +163,15 @@ public abstract class FindPvalue<ModelType, BackgroundType> {
       }
     } else if (opt.equals("--transpose")) {
       transpose = true;
+    } else if (opt.equals("--binary-output")) {
+      binaryOutputFile = new File(argv.remove(0));
+    } else if (opt.equals("--collection")) {
+      collection_mode = true;
+    } else if (opt.equals("--threads")) {
+      numberOfThreads = Integer.valueOf(argv.remove(0));
+      if (numberOfThreads <= 0) {
+        throw new IllegalArgumentException("Number of threads should be positive");
+      }
     } else if (opt.equals("--thresholds-from-stdin")) {
       // Pass; It's already processed, before thresholds extraction
     } else {
@@ -161,7 +195,18 @@ public abstract class FindPvalue<ModelType, BackgroundType> {
     while (argv.size() > 0) {
       extract_option(argv);
     }
-    motif = loadMotif(pm_filename);
+    if (collection_mode) {
+      if (thresholds_folder != null && thresholds_folder.isFile()) {
+        throw new IllegalArgumentException("Thresholds for a collection should be specified by a folder");
+      }
+      if (thresholds_from_stdin != null) { // all thresholds are necessary for each motif
+        thresholds_from_stdin.forEachRemaining(thresholds::addAll);
+        thresholds_from_stdin = null;
+      }
+      motifs = motifImporter().loadMotifCollectionWithNames(new File(pm_filename));
+    } else {
+      motif = loadMotif(pm_filename);
+    }
   }
 
   protected void setup_from_arglist(String[] args) throws IOException {
@@ -170,12 +215,28 @@ public abstract class FindPvalue<ModelType, BackgroundType> {
     setup_from_arglist(argv);
   }
 
-  protected String report() throws FileNotFoundException {
+  // Thresholds from stdin are processed and reported portion by portion, so that
+  // an arbitrarily long stream is processed in constant memory and results appear immediately
+  protected void report() throws IOException {
+    if (collection_mode) {
+      CollectionReport.write(motifs, numberOfThreads, (Named<ModelType> motif) -> {
+        CanFindPvalue calc = calculator(motif);
+        return NamedRow.rows(motif.getName(), calc.pvaluesByThresholds(thresholds), calc.report_table_layout());
+      }, binaryOutputFile);
+      return;
+    }
     CanFindPvalue calc = calculator();
-    List<FoundedPvalueInfo> results = calc.pvaluesByThresholds(thresholds);
     ReportListLayout<FoundedPvalueInfo> layout = calc.report_table_layout();
-    ListReporter<FoundedPvalueInfo> reporter = new TextListReporter<>();
-    return reporter.report(results, layout);
+    if (thresholds_from_stdin == null) {
+      ListReporter.writeReport(calc.pvaluesByThresholds(thresholds), layout, binaryOutputFile);
+    } else {
+      CanFindPvalue streamingCalc = calc.streamingCalculator();
+      Stream<List<Double>> chunks = Stream.concat(
+          thresholds.isEmpty() ? Stream.empty() : Stream.of(thresholds),
+          StreamSupport.stream(Spliterators.spliteratorUnknownSize(thresholds_from_stdin, Spliterator.ORDERED), false));
+      Iterable<List<FoundedPvalueInfo>> results = chunks.map(streamingCalc::pvaluesByThresholds)::iterator;
+      ListReporter.writeChunkedReport(results, layout, binaryOutputFile);
+    }
   }
 
   protected FindPvalue() {
@@ -6,8 +6,10 @@ import ru.autosome.ape.calculation.findThreshold.FoundedThresholdInfo;
 import ru.autosome.commons.backgroundModel.GeneralizedBackgroundModel;
 import ru.autosome.commons.cli.Helper;
 import ru.autosome.commons.cli.ListReporter;
+import ru.autosome.commons.cli.NamedRow;
 import ru.autosome.commons.cli.ReportListLayout;
-import ru.autosome.commons.cli.TextListReporter;
+import ru.autosome.commons.importer.InputExtensions;
+import ru.autosome.commons.importer.MotifImporter;
 import ru.autosome.commons.model.BoundaryType;
 import ru.autosome.commons.model.Discretizer;
 import ru.autosome.commons.model.Named;
@@ -16,19 +18,22 @@ import ru.autosome.commons.motifModel.HasLength;
 import ru.autosome.commons.motifModel.types.DataModel;
 import ru.autosome.commons.support.IOExtensions;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class FindThreshold<ModelType extends HasLength, BackgroundType extends GeneralizedBackgroundModel> {
+  private static final int STDIN_CHUNK_SIZE = 4096;
+
   protected abstract String DOC_background_option();
   protected abstract String DOC_run_string();
   protected String documentString() {
     return "Command-line format:\n" +
       DOC_run_string() + " <pat-file> [<list of P-values>...] [options]\n" +
+      "  or\n" +
+      DOC_run_string() + " <collection> [<list of P-values>...] --collection [options]\n" +
+      "  (collection is a folder with motifs or a single file with all of them, results are keyed by motif name)\n" +
       "\n" +
       "Options:\n" +
       "  [--discretization <discretization level>] or [-d]\n" +
@@ -39,11 +44,16 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
       "  [--background <background probabilities>] or [-b] " + DOC_background_option() + "\n" +
       "  [--precalc <folder>] - specify folder with thresholds for PWM collection (for fast-and-rough calculation).\n" +
       "  [--transpose] - load motif from transposed matrix (nucleotides in lines).\n" +
+      "  [--binary-output <file>] - write results into a columnar binary file instead of text output to stdout.\n" +
+      "  [--pvalues-from-stdin] - read more P-values (whitespace-separated) from stdin; they are processed portion by portion, results are printed as soon as they are obtained.\n" +
+      "  [--collection] - calculate thresholds for each motif of a collection.\n" +
+      "  [--threads <number>] - number of threads to process motifs of a collection in parallel (default: number of processors).\n" +
      DOC_additional_options() +
       "\n" +
       "Examples:\n" +
       "  " + DOC_run_string() + " motifs/diKLF4_f2.pat\n" +
-      "  " + DOC_run_string() + "  motifs/diKLF4_f2.pat 0.001 0.0001 0.0005 -d 1000 -b 0.4,0.3,0.2,0.1\n";
+      "  " + DOC_run_string() + "  motifs/diKLF4_f2.pat 0.001 0.0001 0.0005 -d 1000 -b 0.4,0.3,0.2,0.1\n" +
+      "  " + DOC_run_string() + "  ./hocomoco/ 0.001 0.0001 --collection --threads 4\n";
   }
 
   protected String DOC_additional_options() {
@@ -57,6 +67,10 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
   protected List<Double> pvalues;
   protected boolean transpose;
   protected boolean should_extract_values_from_stdin;
+  protected Iterator<List<Double>> pvalues_from_stdin; // portions of P-values which are read lazily
+  protected File binaryOutputFile; // null means that results are printed to stdout as text
+  protected boolean collection_mode;
+  protected int numberOfThreads;
 
   protected String pm_filename;
   protected DataModel data_model;
@@ -64,18 +78,27 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
   protected PseudocountCalculator pseudocount;
   protected BackgroundType background;
   protected Named<ModelType> motif;
+  protected List<Named<ModelType>> motifs; // in collection mode
   protected File thresholds_folder;
 
   protected abstract void initialize_default_background();
   protected abstract void extract_background(String str);
-  protected abstract Named<ModelType> loadMotif(String filename);
-  protected abstract CanFindThreshold calculator() throws FileNotFoundException;
+  protected abstract MotifImporter<ModelType> motifImporter();
+  protected abstract CanFindThreshold calculator(Named<ModelType> motif) throws FileNotFoundException;
+
+  protected Named<ModelType> loadMotif(String filename) {
+    return motifImporter().loadMotifWithName(filename);
+  }
+
+  protected CanFindThreshold calculator() throws FileNotFoundException {
+    return calculator(motif);
+  }
 
-  protected CanFindThreshold bsearchCalculator() throws FileNotFoundException {
+  protected CanFindThreshold bsearchCalculator(Named<ModelType> motif) throws FileNotFoundException {
     if (thresholds_folder.isFile()) {
       return new FindThresholdBsearch(thresholds_folder);
     } else {
-      File thresholds_file = new File(thresholds_folder, motif.getName() + ".thr");
+      File thresholds_file = InputExtensions.possiblyCompressedFile(new File(thresholds_folder, motif.getName() + ".thr"));
       return new FindThresholdBsearch(thresholds_file);
     }
   }
@@ -90,6 +113,10 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
     thresholds_folder = null;
     transpose = false;
     should_extract_values_from_stdin = false;
+    pvalues_from_stdin = null;
+    binaryOutputFile = null;
+    collection_mode = false;
+    numberOfThreads = Runtime.getRuntime().availableProcessors();
 
     pvalues = new ArrayList<>();
     pvalues.add(0.0005);
@@ -105,7 +132,18 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
     while (argv.size() > 0) {
       extract_option(argv);
     }
-    motif = loadMotif(pm_filename);
+    if (collection_mode) {
+      if (thresholds_folder != null && thresholds_folder.isFile()) {
+        throw new IllegalArgumentException("Thresholds for a collection should be specified by a folder");
+      }
+      if (pvalues_from_stdin != null) { // all P-values are necessary for each motif
+        pvalues_from_stdin.forEachRemaining(pvalues::addAll);
+        pvalues_from_stdin = null;
+      }
+      motifs = motifImporter().loadMotifCollectionWithNames(new File(pm_filename));
+    } else {
+      motif = loadMotif(pm_filename);
+    }
   }
 
   protected void setup_from_arglist(String[] args) throws IOException {
@@ -137,6 +175,15 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
       }
     } else if (opt.equals("--transpose")) {
       transpose = true;
+    } else if (opt.equals("--binary-output")) {
+      binaryOutputFile = new File(argv.remove(0));
+    } else if (opt.equals("--collection")) {
+      collection_mode = true;
+    } else if (opt.equals("--threads")) {
+      numberOfThreads = Integer.valueOf(argv.remove(0));
+      if (numberOfThreads <= 0) {
+        throw new IllegalArgumentException("Number of threads should be positive");
+      }
     } else if (opt.equals("--pvalues-from-stdin")) {
       // Pass; It's already processed, before pvalues extraction
     }  else {
@@ -170,16 +217,17 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
     }
 
     if (should_extract_values_from_stdin) {
-      IOExtensions.extract_doubles_from_input_stream(System.in, pvalues_tmp);
-    }
-
-
-    if (pvalues_tmp.size() != 0) {
+      Iterator<List<Double>> chunks = IOExtensions.double_chunks(new BufferedReader(new InputStreamReader(System.in)), STDIN_CHUNK_SIZE);
+      if (!pvalues_tmp.isEmpty() || chunks.hasNext()) { // default P-value is used only when there are no others
+        this.pvalues = pvalues_tmp;
+        this.pvalues_from_stdin = chunks;
+      }
+    } else if (pvalues_tmp.size() != 0) {
       this.pvalues = pvalues_tmp;
     }
   }
 
-  ReportListLayout<FoundedThresholdInfo> report_table_layout() {
+  ReportListLayout<FoundedThresholdInfo> report_table_layout(ModelType motif) {
     ReportListLayout<FoundedThresholdInfo> infos = new ReportListLayout<>();
 
     infos.add_parameter("V", "discretization value", discretizer);
@@ -192,7 +240,7 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
 
     if (background.is_wordwise()) {
       infos.add_table_parameter("W", "number of recognized words", (FoundedThresholdInfo cell) -> {
-          double numberOfRecognizedWords = cell.numberOfRecognizedWords(background.volume(), motif.getObject().length());
+          double numberOfRecognizedWords = cell.numberOfRecognizedWords(background.volume(), motif.length());
           return (long)numberOfRecognizedWords;
         });
     }
@@ -201,12 +249,27 @@ public abstract class FindThreshold<ModelType extends HasLength, BackgroundType
     return infos;
   }
 
-  protected String report() throws FileNotFoundException {
+  // P-values from stdin are processed and reported portion by portion (see FindPvalue#report)
+  protected void report() throws IOException {
+    if (collection_mode) {
+      CollectionReport.write(motifs, numberOfThreads, (Named<ModelType> motif) -> {
+        List<FoundedThresholdInfo> results = calculator(motif).thresholdsByPvalues(pvalues, pvalue_boundary);
+        return NamedRow.rows(motif.getName(), results, report_table_layout(motif.getObject()));
+      }, binaryOutputFile);
+      return;
+    }
     CanFindThreshold calc = calculator();
-    List<FoundedThresholdInfo> results = calc.thresholdsByPvalues(pvalues, pvalue_boundary);
-    ReportListLayout<FoundedThresholdInfo> layout = report_table_layout();
-    ListReporter<FoundedThresholdInfo> reporter = new TextListReporter<>();
-    return reporter.report(results, layout);
+    ReportListLayout<FoundedThresholdInfo> layout = report_table_layout(motif.getObject());
+    if (pvalues_from_stdin == null) {
+      ListReporter.writeReport(calc.thresholdsByPvalues(pvalues, pvalue_boundary), layout, binaryOutputFile);
+    } else {
+      CanFindThreshold streamingCalc = calc.streamingCalculator();
+      Stream<List<Double>> chunks = Stream.concat(
+          pvalues.isEmpty() ? Stream.empty() : Stream.of(pvalues),
+          StreamSupport.stream(Spliterators.spliteratorUnknownSize(pvalues_from_stdin, Spliterator.ORDERED), false));
+      Iterable<List<FoundedThresholdInfo>> results = chunks.map((List<Double> chunk) -> streamingCalc.thresholdsByPvalues(chunk, pvalue_boundary))::iterator;
+      ListReporter.writeChunkedReport(results, layout, binaryOutputFile);
+    }
   }
 
   protected FindThreshold() {
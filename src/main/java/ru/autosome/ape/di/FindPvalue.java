@@ -33,11 +33,11 @@ public class FindPvalue extends ru.autosome.ape.cli.generalized.FindPvalue<DiPWM
   boolean fromMononucleotide;
 
   @Override
-  protected CanFindPvalue calculator() throws FileNotFoundException {
+  protected CanFindPvalue calculator(Named<DiPWM> motif) throws FileNotFoundException {
     if (thresholds_folder == null) {
       return new FindPvalueAPE<>(motif.getObject(), background, discretizer);
     } else {
-      return bsearchCalculator();
+      return bsearchCalculator(motif);
     }
   }
 
@@ -67,14 +67,12 @@ public class FindPvalue extends ru.autosome.ape.cli.generalized.FindPvalue<DiPWM
   }
 
   @Override
-  protected Named<DiPWM> loadMotif(String filename) {
-    MotifImporter<DiPWM> importer;
+  protected MotifImporter<DiPWM> motifImporter() {
     if (fromMononucleotide) {
-      importer = new DiPWMFromMonoImporter(background, data_model, effective_count, transpose, pseudocount);
+      return new DiPWMFromMonoImporter(background, data_model, effective_count, transpose, pseudocount);
     } else {
-      importer = new DiPWMImporter(background, data_model, effective_count, transpose, pseudocount);
+      return new DiPWMImporter(background, data_model, effective_count, transpose, pseudocount);
     }
-    return importer.loadMotifWithName(filename);
   }
 
   protected static FindPvalue from_arglist(String[] args) throws IOException {
@@ -83,10 +81,14 @@ public class FindPvalue extends ru.autosome.ape.cli.generalized.FindPvalue<DiPWM
     return result;
   }
 
+  public static void run(String[] args) throws Exception {
+    FindPvalue cli = ru.autosome.ape.di.FindPvalue.from_arglist(args);
+    cli.report();
+  }
+
   public static void main(String[] args) {
     try {
-      FindPvalue cli = ru.autosome.ape.di.FindPvalue.from_arglist(args);
-      System.out.println(cli.report());
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
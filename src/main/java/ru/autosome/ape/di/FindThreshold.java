@@ -44,14 +44,12 @@ public class FindThreshold extends ru.autosome.ape.cli.generalized.FindThreshold
   }
 
   @Override
-  protected Named<DiPWM> loadMotif(String filename) {
-    MotifImporter<DiPWM> importer;
+  protected MotifImporter<DiPWM> motifImporter() {
     if (fromMononucleotide) {
-      importer = new DiPWMFromMonoImporter(background, data_model, effective_count, transpose, pseudocount);
+      return new DiPWMFromMonoImporter(background, data_model, effective_count, transpose, pseudocount);
     } else {
-      importer = new DiPWMImporter(background, data_model, effective_count, transpose, pseudocount);
+      return new DiPWMImporter(background, data_model, effective_count, transpose, pseudocount);
     }
-    return importer.loadMotifWithName(filename);
   }
 
   @Override
@@ -70,11 +68,11 @@ public class FindThreshold extends ru.autosome.ape.cli.generalized.FindThreshold
   }
 
   @Override
-  protected CanFindThreshold calculator() throws FileNotFoundException {
+  protected CanFindThreshold calculator(Named<DiPWM> motif) throws FileNotFoundException {
     if (thresholds_folder == null) {
       return new FindThresholdAPE<>(motif.getObject(), background, discretizer);
     } else {
-      return bsearchCalculator();
+      return bsearchCalculator(motif);
     }
   }
 
@@ -84,10 +82,14 @@ public class FindThreshold extends ru.autosome.ape.cli.generalized.FindThreshold
     return result;
   }
 
+  public static void run(String[] args) throws Exception {
+    FindThreshold cli = ru.autosome.ape.di.FindThreshold.from_arglist(args);
+    cli.report();
+  }
+
   public static void main(String args[]) {
     try {
-      FindThreshold cli = ru.autosome.ape.di.FindThreshold.from_arglist(args);
-      System.out.println(cli.report());
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
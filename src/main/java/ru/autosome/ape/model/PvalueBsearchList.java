@@ -1,8 +1,11 @@
 package ru.autosome.ape.model;
 
+import ru.autosome.commons.importer.InputExtensions;
 import ru.autosome.commons.model.BoundaryType;
+import ru.autosome.commons.support.SharedCache;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -44,6 +47,21 @@ public class PvalueBsearchList {
     }
   }
 
+  // Scores not greater than returned value have P-value (as given by pvalue_by_threshold) greater than given one.
+  // Negative infinity if there are no such scores, positive infinity if all scores have greater P-value.
+  public double maxThresholdWithPvalueGreaterThan(double pvalue) {
+    if (list.isEmpty() || list.get(0).pvalue <= pvalue) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    for (int i = 0; i + 1 < list.size(); ++i) {
+      // scores between neighbouring thresholds get combined P-value
+      if (list.get(i + 1).pvalue <= pvalue || combine_pvalues(list.get(i).pvalue, list.get(i + 1).pvalue) <= pvalue) {
+        return list.get(i).threshold;
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
   public ThresholdPvaluePair thresholdInfoByPvalue(double pvalue, BoundaryType boundaryType) {
     if (boundaryType == BoundaryType.STRONG) {
       return strongThresholdInfoByPvalue(pvalue);
@@ -108,11 +126,20 @@ public class PvalueBsearchList {
                }).collect(Collectors.toList());
   }
 
+  // Plain or compressed file
   public static List<ThresholdPvaluePair> load_thresholds_list(File file) throws FileNotFoundException {
-    return load_thresholds_list(new BufferedReader(new FileReader(file)));
+    try (BufferedReader reader = InputExtensions.openReader(file)) {
+      return load_thresholds_list(reader);
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
+  // List isn't modified after creation, so it's shared when cache is enabled
   public static PvalueBsearchList load_from_file(File file) throws FileNotFoundException {
-    return new PvalueBsearchList(load_thresholds_list(file));
+    return SharedCache.get(() -> Arrays.asList("thresholds list", SharedCache.fileKey(file)),
+                           () -> new PvalueBsearchList(load_thresholds_list(file)));
   }
 }
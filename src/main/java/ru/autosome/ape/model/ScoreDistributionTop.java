@@ -27,6 +27,9 @@ public class ScoreDistributionTop {
   private Double cache_best_score;  // best score and worst score are used to estimate score when it is
   private Double cache_worst_score;
 
+  private double[] cache_descending_scores; // scores sorted in descending order and partial sums of their counts;
+  private List<Double> cache_partial_sums;   // built once and reused by all subsequent requests
+
 
   public double getWorstScore() {
     if (cache_worst_score != null) {
@@ -52,6 +55,20 @@ public class ScoreDistributionTop {
   }
   public void setBestScore(double value) { cache_best_score = value; }
 
+  public double getLeftScoreBoundary() { return left_score_boundary; }
+
+  private synchronized void build_sorted_scores() {
+    if (cache_descending_scores == null) {
+      double[] scores = ArrayExtensions.descending_sorted_hash_keys(score_count_hash);
+      double counts[] = new double[scores.length];
+      for (int i = 0; i < scores.length; ++i) {
+        counts[i] = score_count_hash.get(scores[i]);
+      }
+      cache_partial_sums = ArrayExtensions.partial_sums(counts, 0.0);
+      cache_descending_scores = scores;
+    }
+  }
+
   public ScoreDistributionTop(TDoubleDoubleMap score_count_hash, double total_count, double left_score_boundary) {
     this.score_count_hash = score_count_hash;
     this.total_count = total_count;
@@ -85,6 +102,27 @@ public class ScoreDistributionTop {
     return accum;
   }
 
+  // The same as count_above_threshold but by binary search in sorted scores instead of a scan over all of them
+  // (counts are summed in another order, so results can differ in the least significant bits).
+  // Suitable for many requests to the same distribution.
+  public double count_above_threshold_bsearch(double threshold) throws NotRepresentativeDistribution {
+    if (threshold < left_score_boundary) {
+      throw new NotRepresentativeDistribution("Score distribution left boundary " + left_score_boundary + " is greater than requested threshold " + threshold);
+    }
+    build_sorted_scores();
+    // number of scores which are not less than threshold
+    int left = 0, right = cache_descending_scores.length;
+    while (left < right) {
+      int middle = (left + right) >>> 1;
+      if (cache_descending_scores[middle] >= threshold) {
+        left = middle + 1;
+      } else {
+        right = middle;
+      }
+    }
+    return (left == 0) ? 0.0 : cache_partial_sums.get(left - 1);
+  }
+
   private ThresholdsRange thresholdsRangeByCount(double[] scores, List<Double> partial_sums, double look_for_count) {
     int[] range_indices = ArrayExtensions.indices_of_range(partial_sums, look_for_count);
     if (range_indices[0] == -1) {
@@ -123,13 +161,9 @@ public class ScoreDistributionTop {
                                                " but pvalue " + ArrayExtensions.max(pvalues)  + " was requested");
     }
 
-    double[] scores = ArrayExtensions.descending_sorted_hash_keys(score_count_hash);
-
-    double counts[] = new double[scores.length];
-    for (int i = 0; i < scores.length; ++i) {
-      counts[i] = score_count_hash.get(scores[i]);
-    }
-    List<Double> partial_sums = ArrayExtensions.partial_sums(counts, 0.0);
+    build_sorted_scores();
+    double[] scores = cache_descending_scores;
+    List<Double> partial_sums = cache_partial_sums;
 
     TDoubleObjectMap<ThresholdsRange> results = new TDoubleObjectHashMap<>();
     for (double pvalue : pvalues) {
@@ -0,0 +1,119 @@
+package ru.autosome.ape.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.autosome.commons.support.FastDoubleParser;
+
+import java.util.Random;
+
+// Fast parser should give exactly the same double (bit for bit) as Double.parseDouble
+// and reject the same strings
+public class FastDoubleParserTest {
+  private static void assertParsedAsJDK(String text) {
+    Double expected;
+    try {
+      expected = Double.parseDouble(text);
+    } catch (NumberFormatException e) {
+      expected = null;
+    }
+    Double actual;
+    try {
+      actual = FastDoubleParser.parseDouble(text);
+    } catch (NumberFormatException e) {
+      actual = null;
+    }
+    if (expected == null) {
+      Assert.assertNull("'" + text + "' should not be parsed", actual);
+    } else {
+      Assert.assertNotNull("'" + text + "' should be parsed", actual);
+      Assert.assertEquals("'" + text + "'", Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+    }
+  }
+
+  @Test
+  public void testSpecialValues() {
+    String[] texts = {"0", "-0", "+0", "0.0", "-0.0", "1", "-1", "1.", ".5", "-.5", "1e0", "1E5", "1e+5", "1e-5",
+                      "0.1", "0.2", "0.3", "123.456", "-2.5e-3", "3.14159265358979", "2.718281828459045",
+                      "NaN", "Infinity", "-Infinity", "+Infinity",
+                      "1.7976931348623157e308", "2.2250738585072014E-308", "4.9e-324"};
+    for (String text: texts) {
+      assertParsedAsJDK(text);
+    }
+  }
+
+  @Test
+  public void testSubnormals() {
+    String[] texts = {"4.9e-324", "5e-324", "2.5e-324", "2.4e-324", "1e-323", "2.2250738585072009e-308",
+                      "2.225073858507201e-308", "1e-310", "-1e-315", "3.0e-320", "1.2345678901234567e-316"};
+    for (String text: texts) {
+      assertParsedAsJDK(text);
+    }
+    Random random = new Random(7);
+    for (int i = 0; i < 10000; ++i) {
+      assertParsedAsJDK(Double.toString(Double.longBitsToDouble(random.nextLong() & 0x000FFFFFFFFFFFFFL)));
+    }
+  }
+
+  // mantissas of 19 digits fit into a long, longer ones are handled separately
+  @Test
+  public void testLongMantissas() {
+    String[] texts = {"1234567890123456789", "9999999999999999999", "12345678901234567890", "99999999999999999999",
+                      "0.1234567890123456789", "0.12345678901234567890", "9.999999999999999999e-5",
+                      "1.0000000000000000001", "1.00000000000000000001", "9007199254740993", "9007199254740993.0000000001",
+                      "0.30000000000000000001", "18446744073709551615", "18446744073709551616",
+                      "00000000000000000000000001.5", "1.50000000000000000000000000"};
+    for (String text: texts) {
+      assertParsedAsJDK(text);
+    }
+    Random random = new Random(11);
+    for (int i = 0; i < 10000; ++i) {
+      StringBuilder builder = new StringBuilder();
+      int numberOfDigits = 17 + random.nextInt(5);
+      int pointPosition = random.nextInt(numberOfDigits + 1);
+      for (int digit = 0; digit < numberOfDigits; ++digit) {
+        if (digit == pointPosition) {
+          builder.append('.');
+        }
+        builder.append((char) ('0' + random.nextInt(10)));
+      }
+      builder.append('e').append(random.nextInt(80) - 40);
+      assertParsedAsJDK(builder.toString());
+    }
+  }
+
+  @Test
+  public void testExponentOverflow() {
+    String[] texts = {"1e308", "1e309", "1.8e308", "-1e309", "1e400", "1e-400", "1e-325", "1e-324",
+                      "1e99999", "1e-99999", "1e2147483647", "1e2147483648", "1e-2147483648", "1e99999999999",
+                      "0e99999999999", "0.0000000000000000000001e22", "100000000000000000000000e-23"};
+    for (String text: texts) {
+      assertParsedAsJDK(text);
+    }
+  }
+
+  @Test
+  public void testRandomValues() {
+    Random random = new Random(3);
+    for (int i = 0; i < 100000; ++i) {
+      assertParsedAsJDK(Double.toString(Double.longBitsToDouble(random.nextLong())));
+      assertParsedAsJDK(String.format("%.6f", random.nextGaussian() * 10));
+      assertParsedAsJDK(String.format("%." + random.nextInt(20) + "e", random.nextDouble() * Math.pow(10, random.nextInt(600) - 300)));
+    }
+  }
+
+  @Test
+  public void testMalformed() {
+    String[] texts = {"", " ", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", "--1", "1-", "abc", "0x10", "1,5", "Inf", "nan"};
+    for (String text: texts) {
+      assertParsedAsJDK(text);
+    }
+  }
+
+  @Test
+  public void testSubrange() {
+    String line = "  0.25\t-1.5e-3 7 ";
+    Assert.assertEquals(0.25, FastDoubleParser.parseDouble(line, 2, 6), 0.0);
+    Assert.assertEquals(-1.5e-3, FastDoubleParser.parseDouble(line, 7, 14), 0.0);
+    Assert.assertEquals(7.0, FastDoubleParser.parseDouble(line, 15, 16), 0.0);
+  }
+}
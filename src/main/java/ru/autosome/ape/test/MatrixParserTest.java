@@ -0,0 +1,142 @@
+package ru.autosome.ape.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.autosome.commons.importer.ChIPMunkParser;
+import ru.autosome.commons.importer.MatrixParser;
+import ru.autosome.commons.importer.ParsingResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+// Matrix format (header, ChIPMunk output, transposed matrix) should be recognized by the first lines
+public class MatrixParserTest {
+  private static final double[][] matrix = {{1.0, 2.0, 3.0, 4.0},
+                                            {-0.5, 0.25, 1e-3, 7.0},
+                                            {0.0, -1.0, 2.5, -3.5}};
+
+  private static MatrixParser monoParser(boolean transpose) {
+    return new MatrixParser(4, transpose, new ChIPMunkParser(4, "ru.autosome.ChIPMunk", "PWMA"));
+  }
+
+  private static void assertMatrix(double[][] expected, ParsingResult result) {
+    double[][] actual = result.getMatrix();
+    Assert.assertEquals(expected.length, actual.length);
+    for (int pos = 0; pos < expected.length; ++pos) {
+      Assert.assertArrayEquals(expected[pos], actual[pos], 0.0);
+    }
+  }
+
+  // both list and stream input should give the same result
+  private static ParsingResult parse(MatrixParser parser, List<String> lines) throws IOException {
+    ParsingResult fromList = parser.parse(lines);
+    ParsingResult fromReader = parser.parse(new BufferedReader(new StringReader(String.join("\n", lines))));
+    Assert.assertEquals(fromList.getName(), fromReader.getName());
+    assertMatrix(fromList.getMatrix(), fromReader);
+    Assert.assertEquals(fromList.getName(), parser.parseName(lines));
+    Assert.assertEquals(fromList.getName(), parser.parseName(new BufferedReader(new StringReader(String.join("\n", lines)))));
+    return fromList;
+  }
+
+  @Test
+  public void testHeaders() throws IOException {
+    ParsingResult result = parse(monoParser(false), Arrays.asList("> KLF4_f2 some description", "1 2 3 4", "-0.5\t0.25 1e-3  7", "0 -1 2.5 -3.5"));
+    Assert.assertEquals("KLF4_f2 some description", result.getName());
+    assertMatrix(matrix, result);
+
+    result = parse(monoParser(false), Arrays.asList("KLF4_f2", "1 2 3 4", "-0.5 0.25 1e-3 7", "0 -1 2.5 -3.5"));
+    Assert.assertEquals("KLF4_f2", result.getName());
+    assertMatrix(matrix, result);
+
+    result = parse(monoParser(false), Arrays.asList("1 2 3 4", "-0.5 0.25 1e-3 7", "0 -1 2.5 -3.5"));
+    Assert.assertNull(result.getName());
+    assertMatrix(matrix, result);
+
+    // names which look like a number only in their first letter
+    result = parse(monoParser(false), Arrays.asList("1e5_motif", "1 2 3 4", "-0.5 0.25 1e-3 7", "0 -1 2.5 -3.5"));
+    Assert.assertEquals("1e5_motif", result.getName());
+    assertMatrix(matrix, result);
+  }
+
+  @Test
+  public void testLeadingAndTrailingBlankLines() throws IOException {
+    ParsingResult result = parse(monoParser(false), Arrays.asList("", "   ", "\t", ">motif", "1 2 3 4", "-0.5 0.25 1e-3 7", "0 -1 2.5 -3.5", "", "> next", "9 9 9 9"));
+    Assert.assertEquals("motif", result.getName());
+    assertMatrix(matrix, result);
+
+    result = parse(monoParser(false), Arrays.asList("", "  1 2 3 4", "-0.5 0.25 1e-3 7", "0 -1 2.5 -3.5  ", ""));
+    Assert.assertNull(result.getName());
+    assertMatrix(matrix, result);
+  }
+
+  @Test
+  public void testTransposed() throws IOException {
+    List<String> transposedLines = Arrays.asList(">motif", "1 -0.5 0", "2 0.25 -1", "3 1e-3 2.5", "4 7 -3.5");
+    // recognized by the number of weights in the first row
+    ParsingResult result = parse(monoParser(false), transposedLines);
+    Assert.assertEquals("motif", result.getName());
+    assertMatrix(matrix, result);
+    result = parse(monoParser(true), transposedLines);
+    assertMatrix(matrix, result);
+
+    // square matrix is recognized as transposed only when requested
+    List<String> squareLines = Arrays.asList("1 2 3 4", "5 6 7 8", "9 10 11 12", "13 14 15 16");
+    assertMatrix(new double[][]{{1, 2, 3, 4}, {5, 6, 7, 8}, {9, 10, 11, 12}, {13, 14, 15, 16}}, parse(monoParser(false), squareLines));
+    assertMatrix(new double[][]{{1, 5, 9, 13}, {2, 6, 10, 14}, {3, 7, 11, 15}, {4, 8, 12, 16}}, parse(monoParser(true), squareLines));
+  }
+
+  @Test
+  public void testChIPMunk() throws IOException {
+    List<String> lines = Arrays.asList("PROG|ru.autosome.ChIPMunk some arguments",
+                                       "OUTC|ru.autosome.ChIPMunk",
+                                       "MOTF|CACGTG",
+                                       "WORD|XXX",
+                                       "PWMA|1 -0.5 0",
+                                       "PWMC|2 0.25 -1",
+                                       "PWMG|3 1e-3 2.5",
+                                       "PWMT|4 7 -3.5",
+                                       "",
+                                       "INFO|done");
+    ParsingResult result = parse(monoParser(false), lines);
+    Assert.assertNull(result.getName());
+    assertMatrix(matrix, result);
+
+    // without ChIPMunk parser, the first line is taken for a header
+    Assert.assertEquals("PROG|ru.autosome.ChIPMunk some arguments",
+                        new MatrixParser(4, false, null).parseName(Arrays.asList("PROG|ru.autosome.ChIPMunk some arguments", "1 2 3 4")));
+  }
+
+  @Test
+  public void testDinucleotide() throws IOException {
+    MatrixParser parser = new MatrixParser(16, false, new ChIPMunkParser(16, "ru.autosome.di.ChIPMunk", "PWAA"));
+    double[][] expected = new double[2][16];
+    for (int letter = 0; letter < 16; ++letter) {
+      expected[0][letter] = letter;
+      expected[1][letter] = -0.5 * letter;
+    }
+    ParsingResult result = parse(parser, Arrays.asList(">di", "0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15",
+                                                        "0 -0.5 -1 -1.5 -2 -2.5 -3 -3.5 -4 -4.5 -5 -5.5 -6 -6.5 -7 -7.5"));
+    Assert.assertEquals("di", result.getName());
+    assertMatrix(expected, result);
+  }
+
+  @Test
+  public void testMalformed() {
+    String[][] inputs = {{"1 2 3 4", "1 2 3"},
+                         {"1 2 3", "1 2"},
+                         {"1 2", "1 2", "1 2", "1 2", "1 2"},
+                         {"1 2", "1 2", "1 2"},
+                         {"1 2 3 4", "1 2 x 4"}};
+    for (String[] input: inputs) {
+      try {
+        monoParser(false).parse(Arrays.asList(input));
+        Assert.fail("should fail on " + Arrays.toString(input));
+      } catch (RuntimeException e) {
+        // expected
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package ru.autosome.ape.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.autosome.commons.model.Orientation;
+import ru.autosome.commons.model.Position;
+import ru.autosome.perfectosape.cli.SNPScanBinarySink;
+import ru.autosome.perfectosape.cli.SNPScanResultSink;
+import ru.autosome.perfectosape.model.RegionAffinityInfos;
+import ru.autosome.perfectosape.model.RegionAffinityVariantInfo;
+import ru.autosome.perfectosape.model.Sequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+// Binary file written by SNPScanBinarySink is decoded according to the format described in its header comment
+public class SNPScanBinarySinkTest {
+  private static RegionAffinityInfos affinityInfos(int position_1, Orientation orientation_1, double pvalue_1,
+                                                   int position_2, Orientation orientation_2, double pvalue_2) {
+    return new RegionAffinityInfos(new RegionAffinityVariantInfo(new Position(position_1, orientation_1), "A", pvalue_1, new Sequence("ACGT")),
+                                   new RegionAffinityVariantInfo(new Position(position_2, orientation_2), "G", pvalue_2, new Sequence("GCGT")));
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void skipPadding(ByteBuffer buffer) {
+    while (buffer.position() % 8 != 0) {
+      Assert.assertEquals(0, buffer.get());
+    }
+  }
+
+  @Test
+  public void testDecodeBlock() throws IOException {
+    File file = File.createTempFile("snpscan", ".bin");
+    file.deleteOnExit();
+    try (SNPScanBinarySink sink = new SNPScanBinarySink(file)) {
+      sink.writeHeader(Arrays.asList("KLF4_f2", "SP1_f1"));
+      SNPScanResultSink.Batch firstBatch = sink.newBatch(3);
+      firstBatch.append(0, "rs1", 0, "KLF4_f2", 1, affinityInfos(-3, Orientation.direct, 1e-4, -2, Orientation.revcomp, 5e-3));
+      firstBatch.append(2, "rs3", 0, "KLF4_f2", 2, affinityInfos(0, Orientation.revcomp, 2.5e-5, 1, Orientation.direct, 0.25));
+      firstBatch.append(0, "rs1", 1, "SP1_f1", 1, affinityInfos(-7, Orientation.revcomp, 3e-6, -7, Orientation.revcomp, 3e-6));
+      sink.writeBatch(firstBatch);
+      SNPScanResultSink.Batch secondBatch = sink.newBatch(2);
+      secondBatch.append(1, "\u0441\u043d\u043f5", 1, "SP1_f1", 1, affinityInfos(4, Orientation.direct, 0.5, 5, Orientation.direct, 1e-7));
+      sink.writeBatch(secondBatch);
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    byte[] magic = new byte[8];
+    buffer.get(magic);
+    Assert.assertEquals("SNPSCANB", new String(magic, StandardCharsets.US_ASCII));
+    Assert.assertEquals(1, buffer.getInt());
+    Assert.assertEquals(2, buffer.getInt());
+    Assert.assertEquals("KLF4_f2", readString(buffer));
+    Assert.assertEquals("SP1_f1", readString(buffer));
+    skipPadding(buffer);
+
+    // first block
+    Assert.assertEquals(3, buffer.getInt()); // records
+    Assert.assertEquals(3, buffer.getInt()); // SNPs
+    Assert.assertEquals(0L, buffer.getLong());
+    Assert.assertEquals(1e-4, buffer.getDouble(), 0.0);
+    Assert.assertEquals(2.5e-5, buffer.getDouble(), 0.0);
+    Assert.assertEquals(3e-6, buffer.getDouble(), 0.0);
+    Assert.assertEquals(5e-3, buffer.getDouble(), 0.0);
+    Assert.assertEquals(0.25, buffer.getDouble(), 0.0);
+    Assert.assertEquals(3e-6, buffer.getDouble(), 0.0);
+    for (int expected: new int[]{0, 2, 0,     // SNP ordinals
+                                 0, 0, 1,     // motif indices
+                                 -3, 0, -7,   // positions 1
+                                 -2, 1, -7}) { // positions 2
+      Assert.assertEquals(expected, buffer.getInt());
+    }
+    for (byte expected: new byte[]{1, 2, 1,   // allele numbers
+                                   0, 1, 1,   // orientations 1
+                                   1, 0, 1}) { // orientations 2
+      Assert.assertEquals(expected, buffer.get());
+    }
+    skipPadding(buffer);
+    Assert.assertEquals(2, buffer.getInt()); // names of SNPs with records
+    Assert.assertEquals(0, buffer.getInt());
+    Assert.assertEquals("rs1", readString(buffer));
+    Assert.assertEquals(2, buffer.getInt());
+    Assert.assertEquals("rs3", readString(buffer));
+    skipPadding(buffer);
+
+    // second block: SNP ordinals continue those of the first block
+    Assert.assertEquals(1, buffer.getInt());
+    Assert.assertEquals(2, buffer.getInt());
+    Assert.assertEquals(3L, buffer.getLong());
+    Assert.assertEquals(0.5, buffer.getDouble(), 0.0);
+    Assert.assertEquals(1e-7, buffer.getDouble(), 0.0);
+    for (int expected: new int[]{4, 1, 4, 5}) {
+      Assert.assertEquals(expected, buffer.getInt());
+    }
+    for (byte expected: new byte[]{1, 0, 0}) {
+      Assert.assertEquals(expected, buffer.get());
+    }
+    skipPadding(buffer);
+    Assert.assertEquals(1, buffer.getInt());
+    Assert.assertEquals(4, buffer.getInt());
+    Assert.assertEquals("\u0441\u043d\u043f5", readString(buffer));
+    skipPadding(buffer);
+    Assert.assertEquals(0, buffer.remaining());
+  }
+}
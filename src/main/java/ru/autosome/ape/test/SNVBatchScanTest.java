@@ -0,0 +1,121 @@
+package ru.autosome.ape.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.autosome.commons.backgroundModel.di.DiWordwiseBackground;
+import ru.autosome.commons.backgroundModel.mono.WordwiseBackground;
+import ru.autosome.commons.motifModel.di.DiPWM;
+import ru.autosome.commons.motifModel.mono.PWM;
+import ru.autosome.commons.scoringModel.SequenceScoringModel;
+import ru.autosome.perfectosape.calculation.SNVBatchScan;
+import ru.autosome.perfectosape.calculation.SingleSNVScan;
+import ru.autosome.perfectosape.model.RegionAffinityVariantInfo;
+import ru.autosome.perfectosape.model.SequenceWithSNV;
+import ru.autosome.perfectosape.model.encoded.EncodedSequenceType;
+import ru.autosome.perfectosape.model.encoded.EncodedSequenceWithSNVType;
+import ru.autosome.perfectosape.model.encoded.di.SequenceWithSNVDiEncoded;
+import ru.autosome.perfectosape.model.encoded.mono.SequenceWithSNVMonoEncoded;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static ru.autosome.ape.test.ScanFixtures.randomMatrix;
+import static ru.autosome.ape.test.ScanFixtures.randomSequence;
+import static ru.autosome.ape.test.ScanFixtures.scoreAsPvalue;
+
+// Batch kernel (SNVBatchScan) should give the same best positions and scores as SingleSNVScan
+// which scans each allele of each SNV separately
+public class SNVBatchScanTest {
+  // alleles of equal length share windows in the batch kernel (including alternative indel alleles)
+  private static final String[] alleleSets = {"A/G", "C/T", "G/A/C/T", "AT/-", "-/GC", "A/TTA", "A/-/TG/CA/GT", "-/ACG/TTT/C/G"};
+
+  private static List<SequenceWithSNV> randomSNVs(Random random, int count) {
+    List<SequenceWithSNV> result = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      String alleles = alleleSets[random.nextInt(alleleSets.length)];
+      // some sequences are shorter than motifs
+      result.add(SequenceWithSNV.fromString(randomSequence(random, 1 + random.nextInt(15)) + "[" + alleles + "]" + randomSequence(random, 1 + random.nextInt(15))));
+    }
+    return result;
+  }
+
+  private static <SequenceType extends EncodedSequenceType,
+                  SequenceWithSNVType extends EncodedSequenceWithSNVType<SequenceType>,
+                  ModelType extends SequenceScoringModel<SequenceType>>
+  void assertSameAsSingleScan(List<SequenceWithSNV> snvs, Function<SequenceWithSNV, SequenceWithSNVType> encoder,
+                              ModelType pwm, int expandRegionLength, double insignificantScoreBound) {
+    List<SequenceWithSNVType> encodedSNVs = new ArrayList<>();
+    for (SequenceWithSNV snv: snvs) {
+      encodedSNVs.add(encoder.apply(snv));
+    }
+    SNVBatchScan<SequenceType, SequenceWithSNVType, ModelType> batchScan = new SNVBatchScan<>(snvs, encodedSNVs, expandRegionLength);
+    List<SingleSNVScan<SequenceType, SequenceWithSNVType, ModelType>> batchResults = batchScan.scansByMotif(pwm, scoreAsPvalue, insignificantScoreBound);
+    Assert.assertEquals(snvs.size(), batchResults.size());
+
+    for (int i = 0; i < snvs.size(); ++i) {
+      SequenceWithSNV snv = snvs.get(i);
+      if (snv.length() < pwm.length()) {
+        Assert.assertNull(batchResults.get(i));
+        continue;
+      }
+      SingleSNVScan<SequenceType, SequenceWithSNVType, ModelType> singleScan = new SingleSNVScan<>(pwm, snv, encodedSNVs.get(i), scoreAsPvalue, expandRegionLength);
+      if (batchResults.get(i) == null) { // skipped SNVs should have no allele scoring above the bound
+        for (int allele_number = 0; allele_number < snv.num_cases(); ++allele_number) {
+          Assert.assertTrue(snv.toString(), singleScan.affinityVariantInfo(allele_number).getPvalue() <= insignificantScoreBound + 1e-6);
+        }
+        continue;
+      }
+      for (int allele_number = 0; allele_number < snv.num_cases(); ++allele_number) {
+        RegionAffinityVariantInfo expected = singleScan.affinityVariantInfo(allele_number);
+        RegionAffinityVariantInfo actual = batchResults.get(i).affinityVariantInfo(allele_number);
+        String message = snv + " allele " + allele_number;
+        Assert.assertEquals(message, expected.getPosition().toString(), actual.getPosition().toString());
+        Assert.assertEquals(message, expected.getPvalue(), actual.getPvalue(), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testMonoPWM() {
+    Random random = new Random(13);
+    List<SequenceWithSNV> snvs = randomSNVs(random, 200);
+    for (int trial = 0; trial < 20; ++trial) {
+      PWM pwm = new PWM(randomMatrix(random, 3 + random.nextInt(10), 4, trial % 2 == 0));
+      int expandRegionLength = random.nextInt(3);
+      assertSameAsSingleScan(snvs, SequenceWithSNVMonoEncoded::encode,
+                             pwm.onBackground(new WordwiseBackground()), expandRegionLength, Double.NEGATIVE_INFINITY);
+    }
+  }
+
+  @Test
+  public void testDiPWM() {
+    Random random = new Random(17);
+    List<SequenceWithSNV> snvs = randomSNVs(random, 200);
+    for (int trial = 0; trial < 20; ++trial) {
+      DiPWM dipwm = new DiPWM(randomMatrix(random, 2 + random.nextInt(10), 16, trial % 2 == 0));
+      int expandRegionLength = random.nextInt(3);
+      assertSameAsSingleScan(snvs, SequenceWithSNVDiEncoded::encode,
+                             dipwm.onBackground(new DiWordwiseBackground()), expandRegionLength, Double.NEGATIVE_INFINITY);
+    }
+  }
+
+  // SNVs are skipped only when no allele can score above the bound; scores of the rest are exact
+  @Test
+  public void testInsignificantScoreBound() {
+    Random random = new Random(19);
+    List<SequenceWithSNV> snvs = randomSNVs(random, 200);
+    for (int trial = 0; trial < 20; ++trial) {
+      PWM pwm = new PWM(randomMatrix(random, 6, 4, trial % 2 == 0));
+      double bound = pwm.worst_score() + (pwm.best_score() - pwm.worst_score()) * random.nextDouble();
+      assertSameAsSingleScan(snvs, SequenceWithSNVMonoEncoded::encode,
+                             pwm.onBackground(new WordwiseBackground()), 0, bound);
+
+      DiPWM dipwm = new DiPWM(randomMatrix(random, 5, 16, trial % 2 == 0));
+      double diBound = dipwm.worst_score() + (dipwm.best_score() - dipwm.worst_score()) * random.nextDouble();
+      assertSameAsSingleScan(snvs, SequenceWithSNVDiEncoded::encode,
+                             dipwm.onBackground(new DiWordwiseBackground()), 0, diBound);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package ru.autosome.ape.test;
+
+import ru.autosome.ape.calculation.findPvalue.CanFindPvalue;
+import ru.autosome.ape.calculation.findPvalue.FoundedPvalueInfo;
+import ru.autosome.commons.cli.ReportListLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+// Random sequences and matrices and P-value stubs shared by scanning kernel tests
+class ScanFixtures {
+  static final String NUCLEOTIDES = "ACGT";
+
+  // P-value is the score itself, so that scores are compared exactly
+  static final CanFindPvalue scoreAsPvalue = pvalueByScore(score -> score);
+
+  // P-value decreases with score, so that sites with score >= threshold pass P-value cutoff -threshold
+  static final CanFindPvalue negatedScoreAsPvalue = pvalueByScore(score -> -score);
+
+  private static CanFindPvalue pvalueByScore(DoubleUnaryOperator pvalueOfScore) {
+    return new CanFindPvalue() {
+      @Override
+      public List<FoundedPvalueInfo> pvaluesByThresholds(List<Double> thresholds) {
+        List<FoundedPvalueInfo> result = new ArrayList<>();
+        for (double threshold: thresholds) {
+          result.add(pvalueByThreshold(threshold));
+        }
+        return result;
+      }
+
+      @Override
+      public FoundedPvalueInfo pvalueByThreshold(double threshold) {
+        return new FoundedPvalueInfo(threshold, pvalueOfScore.applyAsDouble(threshold));
+      }
+
+      @Override
+      public ReportListLayout<FoundedPvalueInfo> report_table_layout() {
+        return null;
+      }
+    };
+  }
+
+  static String randomSequence(Random random, int length) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < length; ++i) {
+      builder.append(NUCLEOTIDES.charAt(random.nextInt(4)));
+    }
+    return builder.toString();
+  }
+
+  // integer weights give lots of windows with equal scores (so that choice between them is checked too)
+  static double[][] randomMatrix(Random random, int length, int alphabetSize, boolean integerWeights) {
+    double[][] matrix = new double[length][alphabetSize];
+    for (int pos = 0; pos < length; ++pos) {
+      for (int letter = 0; letter < alphabetSize; ++letter) {
+        matrix[pos][letter] = integerWeights ? random.nextInt(3) : random.nextGaussian();
+      }
+    }
+    return matrix;
+  }
+}
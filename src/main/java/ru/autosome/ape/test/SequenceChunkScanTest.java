@@ -0,0 +1,134 @@
+package ru.autosome.ape.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.autosome.commons.backgroundModel.di.DiWordwiseBackground;
+import ru.autosome.commons.backgroundModel.mono.WordwiseBackground;
+import ru.autosome.commons.model.Alphabet;
+import ru.autosome.commons.model.Orientation;
+import ru.autosome.commons.motifModel.di.DiPWM;
+import ru.autosome.commons.motifModel.mono.PWM;
+import ru.autosome.commons.scoringModel.SequenceScoringModel;
+import ru.autosome.perfectosape.calculation.SequenceChunkScan;
+import ru.autosome.perfectosape.model.MotifSite;
+import ru.autosome.perfectosape.model.ThresholdEvaluator;
+
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+import static ru.autosome.ape.test.ScanFixtures.NUCLEOTIDES;
+import static ru.autosome.ape.test.ScanFixtures.negatedScoreAsPvalue;
+import static ru.autosome.ape.test.ScanFixtures.randomMatrix;
+import static ru.autosome.ape.test.ScanFixtures.randomSequence;
+
+// Sites found by ScanSequences kernel (SequenceChunkScan over consecutive chunks of a sequence) should be
+// exactly the windows whose naive scores (matrix elements summed letter by letter) pass the threshold,
+// each reported once even if it spans a chunk boundary
+public class SequenceChunkScanTest {
+  private static String reverseComplement(String sequence) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = sequence.length() - 1; i >= 0; --i) {
+      builder.append("TGCA".charAt(NUCLEOTIDES.indexOf(sequence.charAt(i))));
+    }
+    return builder.toString();
+  }
+
+  private static double naiveMonoScore(double[][] matrix, String word) {
+    double score = 0.0;
+    for (int pos = 0; pos < matrix.length; ++pos) {
+      score += matrix[pos][NUCLEOTIDES.indexOf(word.charAt(pos))];
+    }
+    return score;
+  }
+
+  // dinucleotide columns are ordered AA, AC, AG, AT, CA, ...
+  private static double naiveDiScore(double[][] matrix, String word) {
+    double score = 0.0;
+    for (int pos = 0; pos < matrix.length; ++pos) {
+      score += matrix[pos][4 * NUCLEOTIDES.indexOf(word.charAt(pos)) + NUCLEOTIDES.indexOf(word.charAt(pos + 1))];
+    }
+    return score;
+  }
+
+  private static String siteKey(long position, Orientation orientation) {
+    return position + " " + orientation;
+  }
+
+  // Site keys with their scores found by naive scoring of each window of both strands
+  private static Map<String, Double> naiveSites(String sequence, int motifLength, double threshold,
+                                                ToDoubleFunction<String> scorer) {
+    Map<String, Double> result = new HashMap<>();
+    for (int pos = 0; pos + motifLength <= sequence.length(); ++pos) {
+      String word = sequence.substring(pos, pos + motifLength);
+      double directScore = scorer.applyAsDouble(word);
+      if (directScore >= threshold) {
+        result.put(siteKey(pos, Orientation.direct), directScore);
+      }
+      double revcompScore = scorer.applyAsDouble(reverseComplement(word));
+      if (revcompScore >= threshold) {
+        result.put(siteKey(pos, Orientation.revcomp), revcompScore);
+      }
+    }
+    return result;
+  }
+
+  // Sequence is split into chunks as ScanSequences does: each chunk is followed by (motif length - 1) letters of the next one
+  private static <SequenceType, ModelType extends SequenceScoringModel<SequenceType>>
+  Map<String, Double> chunkedSites(Alphabet alphabet, String sequence, int chunkSize, ModelType pwm, double threshold) {
+    ThresholdEvaluator<SequenceType, ModelType> evaluator = new ThresholdEvaluator<>(pwm, negatedScoreAsPvalue, "motif");
+    Map<String, Double> result = new HashMap<>();
+    for (int chunkStart = 0; chunkStart < sequence.length(); chunkStart += chunkSize) {
+      int ownEnd = Math.min(chunkStart + chunkSize, sequence.length());
+      int end = Math.min(ownEnd + pwm.length() - 1, sequence.length());
+      byte[] letterCodes = new byte[end - chunkStart];
+      for (int i = chunkStart; i < end; ++i) {
+        letterCodes[i - chunkStart] = (byte) Alphabet.monoACGTN.singleLetterCode(sequence.charAt(i));
+      }
+      SequenceChunkScan<SequenceType, ModelType> scan = new SequenceChunkScan<>(alphabet, letterCodes, chunkStart, ownEnd - chunkStart);
+      List<MotifSite> sites = new ArrayList<>();
+      scan.findSites(0, evaluator, -threshold, sites);
+      for (MotifSite site: sites) {
+        String key = siteKey(site.position, site.orientation);
+        Assert.assertFalse("site " + key + " is reported twice", result.containsKey(key));
+        Assert.assertEquals(-site.score, site.pvalue, 0.0);
+        result.put(key, site.score);
+      }
+    }
+    return result;
+  }
+
+  private static void assertSameSites(Map<String, Double> expected, Map<String, Double> actual) {
+    Assert.assertEquals(new TreeSet<>(expected.keySet()), new TreeSet<>(actual.keySet()));
+    for (Map.Entry<String, Double> entry: expected.entrySet()) {
+      Assert.assertEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()), 1e-9);
+    }
+  }
+
+  @Test
+  public void testMonoPWM() {
+    Random random = new Random(23);
+    for (int trial = 0; trial < 30; ++trial) {
+      String sequence = randomSequence(random, 1 + random.nextInt(500));
+      double[][] matrix = randomMatrix(random, 1 + random.nextInt(15), 4, false);
+      double threshold = random.nextGaussian();
+      int chunkSize = 1 + random.nextInt(100);
+      PWM pwm = new PWM(matrix);
+      assertSameSites(naiveSites(sequence, matrix.length, threshold, (String word) -> naiveMonoScore(matrix, word)),
+                      chunkedSites(Alphabet.monoACGTN, sequence, chunkSize, pwm.onBackground(new WordwiseBackground()), threshold));
+    }
+  }
+
+  @Test
+  public void testDiPWM() {
+    Random random = new Random(29);
+    for (int trial = 0; trial < 30; ++trial) {
+      String sequence = randomSequence(random, 1 + random.nextInt(500));
+      double[][] matrix = randomMatrix(random, 1 + random.nextInt(15), 16, false);
+      double threshold = random.nextGaussian();
+      int chunkSize = 1 + random.nextInt(100);
+      DiPWM dipwm = new DiPWM(matrix);
+      assertSameSites(naiveSites(sequence, matrix.length + 1, threshold, (String word) -> naiveDiScore(matrix, word)),
+                      chunkedSites(Alphabet.diACGTN, sequence, chunkSize, dipwm.onBackground(new DiWordwiseBackground()), threshold));
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package ru.autosome.ape.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.autosome.commons.support.StringExtensions;
+
+import java.util.Random;
+
+// Fast scientific formatter should give exactly the same text as Formatter
+public class StringExtensionsTest {
+  private static void assertFormattedAsFormatter(double value, int precision) {
+    StringBuilder builder = new StringBuilder();
+    StringExtensions.appendScientific(builder, value, precision);
+    Assert.assertEquals("value " + value, String.format("%." + precision + "e", value), builder.toString());
+  }
+
+  @Test
+  public void testTies() {
+    // decimal ties of mantissa (in decimal representation of a double), rounded half-up by Formatter
+    double[] values = {1.125, 1.135, 2.345, 9.995, 9.985, 0.5, 1.5, 2.5, 1.005, 1.015,
+                       1.125e-5, 2.675e-3, 9.995e-10, 4.445e-100, 1.0005, 5.5e-7};
+    for (double value: values) {
+      for (int precision = 0; precision <= 3; ++precision) {
+        assertFormattedAsFormatter(value, precision);
+      }
+    }
+  }
+
+  @Test
+  public void testBoundaries() {
+    double[] values = {1.0, 10.0, 0.1, 9.99, 9.999, 9.9999999, 0.00099999, 0.000999, 1e-290, 1e290, 9.999e-291,
+                       Double.MIN_VALUE, Double.MIN_NORMAL, 1e-310, Double.MAX_VALUE, 0.0, -0.0, -1.5, -2.345e-5,
+                       Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                       Math.nextUp(1.0), Math.nextDown(1.0), Math.nextDown(10.0), Math.nextUp(9.995), Math.nextDown(9.995)};
+    for (double value: values) {
+      for (int precision = 0; precision <= 9; ++precision) {
+        assertFormattedAsFormatter(value, precision);
+      }
+    }
+  }
+
+  @Test
+  public void testRandomPvalues() {
+    Random random = new Random(42);
+    for (int i = 0; i < 200000; ++i) {
+      double value = Math.pow(10, -20 * random.nextDouble()) * random.nextDouble();
+      assertFormattedAsFormatter(value, 2);
+    }
+    // P-values are often ratios of integer counts
+    for (int i = 0; i < 100000; ++i) {
+      double value = (double) random.nextInt(100000) / (1 + random.nextInt(1000000));
+      assertFormattedAsFormatter(value, 2);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package ru.autosome.commons.cli;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// Columnar binary report driven by the same layout as the text one (to be read or memory-mapped by downstream tools).
+// All numbers are big-endian (as in DataOutputStream and default ByteBuffer), strings are (int length, UTF-8 bytes);
+// each section is padded to 8 bytes so that columns are aligned when a file is mapped.
+//
+// Header: bytes "LISTREPT", int version,
+//         int number of parameters, (name, description, value) strings for each,
+//         int number of columns, (name, description) strings and byte type for each.
+// Block (one per BLOCK_SIZE rows; the last one can be shorter): int number of rows, int 0, then columns:
+//   'D' - double[] values, 'L' - long[] values,
+//   'S' - int[] end offsets of values in data, then UTF-8 data of all values (padded).
+// Column type is chosen by a value in the first row: floating point numbers are stored as doubles,
+// integer ones as longs, anything else as strings (those given by toString). Missing descriptions are empty strings.
+public class BinaryListReporter<ResultInfo> implements ListReporter<ResultInfo> {
+  private static final byte[] MAGIC = "LISTREPT".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  private static final int BLOCK_SIZE = 4096;
+
+  private static final byte DOUBLE_COLUMN = 'D';
+  private static final byte LONG_COLUMN = 'L';
+  private static final byte STRING_COLUMN = 'S';
+
+  private DataOutputStream output;
+  private long bytesWritten;
+
+  @Override
+  public void write(Iterable<ResultInfo> data, ReportListLayout<ResultInfo> layout, OutputStream outputStream) throws IOException {
+    output = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+    bytesWritten = 0;
+    List<ParameterDescription<ResultInfo>> columns = layout.columns;
+    byte[] types = null; // known after the first row
+    Object[][] block = new Object[columns.size()][BLOCK_SIZE];
+    int numberOfRows = 0;
+    for (ResultInfo rowData : data) {
+      for (int columnIndex = 0; columnIndex < columns.size(); ++columnIndex) {
+        block[columnIndex][numberOfRows] = columns.get(columnIndex).callback.apply(rowData);
+      }
+      ++numberOfRows;
+      if (types == null) {
+        types = columnTypes(block);
+        writeHeader(layout, types);
+      }
+      if (numberOfRows == BLOCK_SIZE) {
+        writeBlock(columns, types, block, numberOfRows);
+        numberOfRows = 0;
+      }
+    }
+    if (types == null) { // no rows
+      types = new byte[columns.size()];
+      Arrays.fill(types, STRING_COLUMN);
+      writeHeader(layout, types);
+    }
+    if (numberOfRows > 0) {
+      writeBlock(columns, types, block, numberOfRows);
+    }
+    output.flush();
+  }
+
+  private static byte[] columnTypes(Object[][] block) {
+    byte[] types = new byte[block.length];
+    for (int columnIndex = 0; columnIndex < block.length; ++columnIndex) {
+      Object value = block[columnIndex][0];
+      if (value instanceof Double || value instanceof Float) {
+        types[columnIndex] = DOUBLE_COLUMN;
+      } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+        types[columnIndex] = LONG_COLUMN;
+      } else {
+        types[columnIndex] = STRING_COLUMN;
+      }
+    }
+    return types;
+  }
+
+  private void writeString(String string) throws IOException {
+    writeBytes(string.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void writeBytes(byte[] bytes) throws IOException {
+    output.writeInt(bytes.length);
+    output.write(bytes);
+    bytesWritten += 4 + bytes.length;
+  }
+
+  private void writePadding() throws IOException {
+    while (bytesWritten % 8 != 0) {
+      output.writeByte(0);
+      ++bytesWritten;
+    }
+  }
+
+  private void writeHeader(ReportListLayout<ResultInfo> layout, byte[] types) throws IOException {
+    output.write(MAGIC);
+    output.writeInt(VERSION);
+    bytesWritten += MAGIC.length + 4;
+    output.writeInt(layout.parameters.size());
+    bytesWritten += 4;
+    for (ValueWithDescription parameter : layout.parameters) {
+      writeString(parameter.name);
+      writeString(parameter.description == null ? "" : parameter.description);
+      writeString(parameter.value.toString());
+    }
+    output.writeInt(layout.columns.size());
+    bytesWritten += 4;
+    for (int columnIndex = 0; columnIndex < layout.columns.size(); ++columnIndex) {
+      ParameterDescription<ResultInfo> column = layout.columns.get(columnIndex);
+      writeString(column.name);
+      writeString(column.description == null ? "" : column.description);
+      output.writeByte(types[columnIndex]);
+      ++bytesWritten;
+    }
+    writePadding();
+  }
+
+  private void writeBlock(List<ParameterDescription<ResultInfo>> columns, byte[] types, Object[][] block, int numberOfRows) throws IOException {
+    output.writeInt(numberOfRows);
+    output.writeInt(0);
+    bytesWritten += 8;
+    for (int columnIndex = 0; columnIndex < columns.size(); ++columnIndex) {
+      Object[] values = block[columnIndex];
+      String columnName = columns.get(columnIndex).name;
+      switch (types[columnIndex]) {
+        case DOUBLE_COLUMN:
+          for (int i = 0; i < numberOfRows; ++i) {
+            output.writeDouble(numberValue(values[i], columnName).doubleValue());
+          }
+          bytesWritten += 8L * numberOfRows;
+          break;
+        case LONG_COLUMN:
+          for (int i = 0; i < numberOfRows; ++i) {
+            Number value = numberValue(values[i], columnName);
+            if (value instanceof Double || value instanceof Float) {
+              throw new IllegalArgumentException("Column " + columnName + " has both integer and floating point values");
+            }
+            output.writeLong(value.longValue());
+          }
+          bytesWritten += 8L * numberOfRows;
+          break;
+        default:
+          byte[][] encoded = new byte[numberOfRows][];
+          int offset = 0;
+          for (int i = 0; i < numberOfRows; ++i) {
+            encoded[i] = values[i].toString().getBytes(StandardCharsets.UTF_8);
+            offset += encoded[i].length;
+            output.writeInt(offset);
+          }
+          bytesWritten += 4L * numberOfRows;
+          for (byte[] bytes : encoded) {
+            output.write(bytes);
+          }
+          bytesWritten += offset;
+          writePadding();
+      }
+      Arrays.fill(values, 0, numberOfRows, null);
+    }
+  }
+
+  private static Number numberValue(Object value, String columnName) {
+    if (!(value instanceof Number)) {
+      throw new IllegalArgumentException("Column " + columnName + " has both numeric and non-numeric values");
+    }
+    return (Number) value;
+  }
+}
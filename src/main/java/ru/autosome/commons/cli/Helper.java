@@ -1,7 +1,12 @@
 package ru.autosome.commons.cli;
 
+import ru.autosome.commons.importer.InputExtensions;
 import ru.autosome.commons.support.ArrayExtensions;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Helper {
@@ -12,4 +17,22 @@ public class Helper {
       System.exit(1);
     }
   }
+
+  // Motif selection options `--motifs <name1,name2,...>` and `--motif-list <file>` (one name per line); both can be given several times.
+  // Returns selected names (null if nothing is selected yet) extended with names given by the option.
+  public static List<String> addSelectedMotifNames(List<String> selectedMotifNames, String opt, List<String> argv) throws FileNotFoundException {
+    List<String> result = (selectedMotifNames == null) ? new ArrayList<>() : selectedMotifNames;
+    if (opt.equals("--motifs")) {
+      Collections.addAll(result, argv.remove(0).split(","));
+    } else if (opt.equals("--motif-list")) {
+      for (String line: InputExtensions.readLinesFromFile(new File(argv.remove(0)))) {
+        if (!line.trim().isEmpty()) {
+          result.add(line.trim());
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("Unknown motif selection option '" + opt + "'");
+    }
+    return result;
+  }
 }
@@ -1,7 +1,39 @@
 package ru.autosome.commons.cli;
 
-import java.util.List;
+import java.io.*;
+import java.util.stream.StreamSupport;
 
 public interface ListReporter<ResultInfo> {
-  String report(List<ResultInfo> data, ReportListLayout<ResultInfo> layout);
+  // Rows are written to output as soon as data produces them, so the whole report is never kept in memory.
+  // Output stream is flushed but not closed.
+  void write(Iterable<ResultInfo> data, ReportListLayout<ResultInfo> layout, OutputStream output) throws IOException;
+
+  // Rows come in portions (e.g. results for portions of a stream); each portion can be flushed as soon as it's written
+  default void writeChunks(Iterable<? extends Iterable<ResultInfo>> chunks, ReportListLayout<ResultInfo> layout, OutputStream output) throws IOException {
+    Iterable<ResultInfo> data = () -> StreamSupport.stream(chunks.spliterator(), false)
+                                        .flatMap(chunk -> StreamSupport.stream(chunk.spliterator(), false))
+                                        .iterator();
+    write(data, layout, output);
+  }
+
+  // Text report to stdout or binary report to a file (when it's specified)
+  static <ResultInfo> void writeReport(Iterable<ResultInfo> data, ReportListLayout<ResultInfo> layout, File binaryOutputFile) throws IOException {
+    if (binaryOutputFile == null) {
+      new TextListReporter<ResultInfo>().write(data, layout, System.out);
+    } else {
+      try (OutputStream output = new FileOutputStream(binaryOutputFile)) {
+        new BinaryListReporter<ResultInfo>().write(data, layout, output);
+      }
+    }
+  }
+
+  static <ResultInfo> void writeChunkedReport(Iterable<? extends Iterable<ResultInfo>> chunks, ReportListLayout<ResultInfo> layout, File binaryOutputFile) throws IOException {
+    if (binaryOutputFile == null) {
+      new TextListReporter<ResultInfo>().writeChunks(chunks, layout, System.out);
+    } else {
+      try (OutputStream output = new FileOutputStream(binaryOutputFile)) {
+        new BinaryListReporter<ResultInfo>().writeChunks(chunks, layout, output);
+      }
+    }
+  }
 }
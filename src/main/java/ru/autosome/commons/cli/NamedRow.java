@@ -0,0 +1,42 @@
+package ru.autosome.commons.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Row of a combined report for several named objects (e.g. for each motif of a collection).
+// Row refers to a layout of its own object, because columns can depend on an object (like motif length).
+public class NamedRow<ResultInfo> {
+  public final String name;
+  public final ResultInfo info;
+  public final ReportListLayout<ResultInfo> layout;
+
+  public NamedRow(String name, ResultInfo info, ReportListLayout<ResultInfo> layout) {
+    this.name = name;
+    this.info = info;
+    this.layout = layout;
+  }
+
+  public static <ResultInfo> List<NamedRow<ResultInfo>> rows(String name, List<ResultInfo> infos, ReportListLayout<ResultInfo> layout) {
+    List<NamedRow<ResultInfo>> result = new ArrayList<>(infos.size());
+    for (ResultInfo info: infos) {
+      result.add(new NamedRow<>(name, info, layout));
+    }
+    return result;
+  }
+
+  // Parameters and columns are taken from a layout of any of objects (all of them should have the same parameters and columns),
+  // name goes into the first column
+  public static <ResultInfo> ReportListLayout<NamedRow<ResultInfo>> combinedLayout(String name_column, String description,
+                                                                                   ReportListLayout<ResultInfo> sampleLayout) {
+    ReportListLayout<NamedRow<ResultInfo>> layout = new ReportListLayout<>();
+    layout.parameters.addAll(sampleLayout.parameters);
+    layout.add_table_parameter(name_column, description, (NamedRow<ResultInfo> row) -> row.name);
+    for (int i = 0; i < sampleLayout.columns.size(); ++i) {
+      final int columnIndex = i;
+      ParameterDescription<ResultInfo> column = sampleLayout.columns.get(columnIndex);
+      layout.columns.add(new ParameterDescription<>(column.name, column.description,
+          (NamedRow<ResultInfo> row) -> row.layout.columns.get(columnIndex).callback.apply(row.info)));
+    }
+    return layout;
+  }
+}
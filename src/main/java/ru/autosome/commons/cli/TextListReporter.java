@@ -2,12 +2,13 @@ package ru.autosome.commons.cli;
 
 import ru.autosome.commons.support.StringExtensions;
 
+import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class TextListReporter<ResultInfo> implements ListReporter<ResultInfo> {
 
-  @Override
   public String report(List<ResultInfo> data, ReportListLayout<ResultInfo> layout) {
     List<String> sections = new ArrayList<>();
     sections.add(formatParameter(layout.parameters));
@@ -42,39 +43,92 @@ public class TextListReporter<ResultInfo> implements ListReporter<ResultInfo> {
   }
 
   protected String formatRow(List<ParameterDescription<ResultInfo>> columns, ResultInfo rowData) {
-    List<String> rowCells = new ArrayList<>();
+    StringBuilder builder = new StringBuilder();
+    appendRow(builder, columns, rowData);
+    return builder.toString();
+  }
+
+  protected void appendRow(StringBuilder builder, List<ParameterDescription<ResultInfo>> columns, ResultInfo rowData) {
+    for (int i = 0; i < columns.size(); ++i) {
+      if (i != 0) {
+        builder.append('\t');
+      }
+      builder.append(columns.get(i).callback.apply(rowData).toString());
+    }
+  }
+
+  // column descriptions and header
+  protected String formatTableHeader(List<ParameterDescription<ResultInfo>> columns) {
+    List<String> descriptionRows = new ArrayList<>();
+    List<String> table_headers = new ArrayList<>();
     for (ParameterDescription<ResultInfo> parameter : columns) {
-      rowCells.add(parameter.callback.apply(rowData).toString());
+      if (parameter.description != null) {
+        descriptionRows.add(parameter_description_string(parameter.name, parameter.description));
+      }
+      table_headers.add(parameter.name);
+    }
+    String header = "";
+    if (!table_headers.isEmpty()) {
+      header = "# " + StringExtensions.join(table_headers, "\t");
     }
-    return StringExtensions.join(rowCells, "\t");
+    return StringExtensions.glueSections(StringExtensions.join(descriptionRows, "\n"), header);
   }
 
   protected String formatTable(List<ParameterDescription<ResultInfo>> columns, List<ResultInfo> data) {
     if (data == null) {
       return "";
     } else {
-      List<String> descriptionRows = new ArrayList<>();
-      List<String> table_headers = new ArrayList<>();
-      for (ParameterDescription<ResultInfo> parameter : columns) {
-        if (parameter.description != null) {
-          descriptionRows.add(parameter_description_string(parameter.name, parameter.description));
-        }
-        table_headers.add(parameter.name);
-      }
-      String header = "";
-      if (!table_headers.isEmpty()) {
-        header = "# " + StringExtensions.join(table_headers, "\t");
-      }
       List<String> tableRows = new ArrayList<>();
       for (ResultInfo row : data) {
         tableRows.add(formatRow(columns, row));
       }
-
       return StringExtensions.glueSections(
-          StringExtensions.join(descriptionRows, "\n"),
-          header,
+          formatTableHeader(columns),
           StringExtensions.join(tableRows, "\n")
       );
     }
   }
+
+  // Writes the same text as report(...) followed by a line break
+  @Override
+  public void write(Iterable<ResultInfo> data, ReportListLayout<ResultInfo> layout, OutputStream output) throws IOException {
+    writeChunks(Collections.singletonList(data), layout, output);
+  }
+
+  // Output is flushed after each portion of rows (which ends with a line break)
+  @Override
+  public void writeChunks(Iterable<? extends Iterable<ResultInfo>> chunks, ReportListLayout<ResultInfo> layout, OutputStream output) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(output), 1 << 16);
+    String separator = ""; // goes before the next non-empty part of a report
+    String parameters = formatParameter(layout.parameters);
+    if (!parameters.isEmpty()) {
+      writer.write(parameters);
+      separator = "\n#\n";
+    }
+    String tableHeader = formatTableHeader(layout.columns);
+    if (!tableHeader.isEmpty()) {
+      writer.write(separator);
+      writer.write(tableHeader);
+      separator = "\n";
+    }
+    boolean hasRows = false;
+    StringBuilder row = new StringBuilder();
+    for (Iterable<ResultInfo> chunk : chunks) {
+      for (ResultInfo rowData : chunk) {
+        if (!hasRows) {
+          writer.write(separator);
+          hasRows = true;
+        }
+        row.setLength(0);
+        appendRow(row, layout.columns, rowData);
+        row.append('\n');
+        writer.append(row);
+      }
+      writer.flush();
+    }
+    if (!hasRows) {
+      writer.write("\n");
+    }
+    writer.flush();
+  }
 }
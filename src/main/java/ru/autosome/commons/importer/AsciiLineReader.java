@@ -0,0 +1,121 @@
+package ru.autosome.commons.importer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+// Reads lines of an ASCII text file as slices of a byte buffer, without decoding them into strings.
+// Plain files are read through a FileChannel in large blocks; compressed files are decompressed on the fly.
+// A slice is valid until the next call of nextLine().
+public class AsciiLineReader implements Closeable {
+  private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  private final ReadableByteChannel channel;
+  private byte[] buffer;
+  private int dataEnd;   // buffer[0; dataEnd) is filled
+  private int position;  // start of unread data
+  private boolean endOfInput;
+
+  private int lineStart;
+  private int lineEnd;   // exclusive, line terminator isn't included
+
+  public AsciiLineReader(ReadableByteChannel channel, int bufferSize) {
+    this.channel = channel;
+    this.buffer = new byte[bufferSize];
+    this.dataEnd = 0;
+    this.position = 0;
+    this.endOfInput = false;
+  }
+
+  public AsciiLineReader(ReadableByteChannel channel) {
+    this(channel, DEFAULT_BUFFER_SIZE);
+  }
+
+  public static AsciiLineReader open(File file) throws IOException {
+    if (InputExtensions.codecOf(file) != null) {
+      return new AsciiLineReader(Channels.newChannel(InputExtensions.openPossiblyCompressed(file)));
+    } else {
+      return new AsciiLineReader(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+  }
+
+  // Moves to the next line; returns false when input is over
+  public boolean nextLine() throws IOException {
+    int scanFrom = position;
+    while (true) {
+      for (int i = scanFrom; i < dataEnd; ++i) {
+        if (buffer[i] == '\n') {
+          setLine(position, i);
+          position = i + 1;
+          return true;
+        }
+      }
+      if (endOfInput) {
+        if (position < dataEnd) { // last line without trailing newline
+          setLine(position, dataEnd);
+          position = dataEnd;
+          return true;
+        }
+        return false;
+      }
+      scanFrom = dataEnd - position;
+      fill();
+    }
+  }
+
+  private void setLine(int start, int end) {
+    if (end > start && buffer[end - 1] == '\r') {
+      --end;
+    }
+    lineStart = start;
+    lineEnd = end;
+  }
+
+  // Moves unread data to the beginning of buffer (growing it if a line doesn't fit) and reads the next block
+  private void fill() throws IOException {
+    int unread = dataEnd - position;
+    if (position == 0 && dataEnd == buffer.length) {
+      byte[] grown = new byte[2 * buffer.length];
+      System.arraycopy(buffer, 0, grown, 0, unread);
+      buffer = grown;
+    } else {
+      System.arraycopy(buffer, position, buffer, 0, unread);
+    }
+    position = 0;
+    dataEnd = unread;
+
+    ByteBuffer target = ByteBuffer.wrap(buffer, dataEnd, buffer.length - dataEnd);
+    int bytesRead = channel.read(target);
+    if (bytesRead < 0) {
+      endOfInput = true;
+    } else {
+      dataEnd += bytesRead;
+    }
+  }
+
+  public byte[] buffer() {
+    return buffer;
+  }
+
+  public int lineStart() {
+    return lineStart;
+  }
+
+  public int lineEnd() {
+    return lineEnd;
+  }
+
+  public String lineString() {
+    return new String(buffer, lineStart, lineEnd - lineStart);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,166 @@
+package ru.autosome.commons.importer;
+
+import ru.autosome.commons.model.Named;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary motif collection with matrices already converted into PWMs (see CompileCollection tool),
+// so that it's loaded by mapping a file into memory without any parsing.
+// All numbers are big-endian (as in DataOutputStream and default ByteBuffer); strings are (int length, UTF-8 bytes).
+//
+// Header:  bytes "MOTIFCOL", int version, int alphabet size (number of matrix columns: 4 for PWMs, 16 for DiPWMs),
+//          int number of conversion parameters, (key, value) strings for each,
+//          int number of motifs, motif names, int[] numbers of matrix rows; padded to 8 bytes.
+// Matrices: double[] of all motifs one after another, row by row.
+public class CompiledCollection {
+  private static final byte[] MAGIC = "MOTIFCOL".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+
+  public final int alphabetSize;
+  public final Map<String, String> parameters; // parameters of conversion into PWMs; empty when nothing was converted
+  public final List<Named<double[][]>> matrices;
+
+  public CompiledCollection(int alphabetSize, Map<String, String> parameters, List<Named<double[][]>> matrices) {
+    this.alphabetSize = alphabetSize;
+    this.parameters = parameters;
+    this.matrices = matrices;
+  }
+
+  public static boolean isCompiledCollection(File file) {
+    if (!file.isFile()) {
+      return false;
+    }
+    byte[] magic = new byte[MAGIC.length];
+    try (DataInputStream input = new DataInputStream(InputExtensions.openPossiblyCompressed(file))) {
+      input.readFully(magic);
+    } catch (IOException e) {
+      return false;
+    }
+    return Arrays.equals(magic, MAGIC);
+  }
+
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  public void save(File file) throws IOException {
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      output.write(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(alphabetSize);
+      output.writeInt(parameters.size());
+      for (Map.Entry<String, String> parameter: parameters.entrySet()) {
+        writeString(output, parameter.getKey());
+        writeString(output, parameter.getValue());
+      }
+      output.writeInt(matrices.size());
+      for (Named<double[][]> matrix: matrices) {
+        writeString(output, matrix.getName());
+      }
+      for (Named<double[][]> matrix: matrices) {
+        output.writeInt(matrix.getObject().length);
+      }
+      while (output.size() % 8 != 0) {
+        output.writeByte(0);
+      }
+      for (Named<double[][]> matrix: matrices) {
+        for (double[] row: matrix.getObject()) {
+          if (row.length != alphabetSize) {
+            throw new IllegalArgumentException("Matrix of motif " + matrix.getName() + " doesn't have " + alphabetSize + " columns");
+          }
+          for (double value: row) {
+            output.writeDouble(value);
+          }
+        }
+      }
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // Plain file is mapped into memory; compressed one can't be mapped, so it's decompressed into memory
+  public static CompiledCollection load(File file) throws IOException {
+    if (InputExtensions.codecOf(file) != null) {
+      try (InputStream input = InputExtensions.openPossiblyCompressed(file)) {
+        return load(ByteBuffer.wrap(readFully(input, file)), file);
+      }
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Compiled collection `" + file + "` is too large");
+      }
+      return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+    }
+  }
+
+  private static byte[] readFully(InputStream input, File file) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 16);
+    byte[] block = new byte[1 << 16];
+    int bytesRead;
+    while ((bytesRead = input.read(block)) != -1) {
+      if (output.size() > Integer.MAX_VALUE - 8 - bytesRead) {
+        throw new IOException("Compiled collection `" + file + "` is too large");
+      }
+      output.write(block, 0, bytesRead);
+    }
+    return output.toByteArray();
+  }
+
+  private static CompiledCollection load(ByteBuffer buffer, File file) throws IOException {
+    byte[] magic = new byte[MAGIC.length];
+    buffer.get(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException("`" + file + "` is not a compiled motif collection");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Compiled collection `" + file + "` has unsupported version " + version);
+    }
+    int alphabetSize = buffer.getInt();
+
+    int numberOfParameters = buffer.getInt();
+    Map<String, String> parameters = new LinkedHashMap<>();
+    for (int i = 0; i < numberOfParameters; ++i) {
+      String key = readString(buffer);
+      parameters.put(key, readString(buffer));
+    }
+
+    int numberOfMotifs = buffer.getInt();
+    List<String> names = new ArrayList<>(numberOfMotifs);
+    for (int i = 0; i < numberOfMotifs; ++i) {
+      names.add(readString(buffer));
+    }
+    int[] lengths = new int[numberOfMotifs];
+    for (int i = 0; i < numberOfMotifs; ++i) {
+      lengths[i] = buffer.getInt();
+    }
+    buffer.position((buffer.position() + 7) / 8 * 8);
+
+    DoubleBuffer values = buffer.asDoubleBuffer();
+    List<Named<double[][]>> matrices = new ArrayList<>(numberOfMotifs);
+    for (int i = 0; i < numberOfMotifs; ++i) {
+      double[][] matrix = new double[lengths[i]][alphabetSize];
+      for (double[] row: matrix) {
+        values.get(row);
+      }
+      matrices.add(new Named<>(matrix, names.get(i)));
+    }
+    return new CompiledCollection(alphabetSize, parameters, matrices);
+  }
+}
@@ -5,9 +5,10 @@ import ru.autosome.commons.backgroundModel.mono.Background;
 import ru.autosome.commons.backgroundModel.mono.BackgroundModel;
 import ru.autosome.commons.model.PseudocountCalculator;
 import ru.autosome.commons.motifModel.di.DiPWM;
+import ru.autosome.commons.motifModel.mono.PWM;
 import ru.autosome.commons.motifModel.types.DataModel;
 
-import java.util.List;
+import java.util.Map;
 
 public class DiPWMFromMonoImporter extends MotifImporter<DiPWM> {
   final PWMImporter monoImporter;
@@ -30,7 +31,25 @@ public class DiPWMFromMonoImporter extends MotifImporter<DiPWM> {
   }
 
   @Override
-  public ParsingResult parse(List<String> strings) {
-    return monoImporter.parse(strings);
+  public double[][] compiledMatrix(DiPWM motif) {
+    return motif.getMatrix();
+  }
+
+  @Override
+  public DiPWM createCompiledMotif(int alphabetSize, double[][] matrix) {
+    if (alphabetSize == PWM.ALPHABET_SIZE) {
+      return DiPWM.fromPWM(monoImporter.createCompiledMotif(alphabetSize, matrix));
+    }
+    return new DiPWM(matrix);
+  }
+
+  @Override
+  public Map<String, String> conversionParameters() {
+    return monoImporter.conversionParameters();
+  }
+
+  @Override
+  protected MatrixParser matrixParser() {
+    return monoImporter.matrixParser();
   }
 }
@@ -5,10 +5,11 @@ import ru.autosome.commons.model.PseudocountCalculator;
 import ru.autosome.commons.motifModel.di.DiPCM;
 import ru.autosome.commons.motifModel.di.DiPPM;
 import ru.autosome.commons.motifModel.di.DiPWM;
+import ru.autosome.commons.motifModel.mono.PWM;
 import ru.autosome.commons.motifModel.types.DataModel;
-import ru.autosome.commons.support.StringExtensions;
 
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class DiPWMImporter extends MotifImporter<DiPWM> {
   final DataModel dataModel;
@@ -16,6 +17,7 @@ public class DiPWMImporter extends MotifImporter<DiPWM> {
   final PseudocountCalculator pseudocountCalculator;
   final DiBackgroundModel background;
   final boolean transpose;
+  final MatrixParser matrixParser;
 
   public DiPWMImporter() {
     this.dataModel = DataModel.PWM;
@@ -23,6 +25,7 @@ public class DiPWMImporter extends MotifImporter<DiPWM> {
     this.pseudocountCalculator = PseudocountCalculator.logPseudocount;
     this.background = null;
     this.transpose = false;
+    this.matrixParser = new MatrixParser(16, transpose, new ChIPMunkParser(16, "ru.autosome.di.ChIPMunk", "PWAA"));
   }
 
   public DiPWMImporter(DiBackgroundModel background, DataModel dataModel, Double effectiveCount, boolean transpose, PseudocountCalculator pseudocount) {
@@ -31,6 +34,7 @@ public class DiPWMImporter extends MotifImporter<DiPWM> {
     this.pseudocountCalculator = pseudocount;
     this.background = background;
     this.transpose = transpose;
+    this.matrixParser = new MatrixParser(16, transpose, new ChIPMunkParser(16, "ru.autosome.di.ChIPMunk", "PWAA"));
   }
 
   // constructs DiPWM from any source: pwm/pcm/ppm matrix
@@ -53,15 +57,36 @@ public class DiPWMImporter extends MotifImporter<DiPWM> {
     return dipwm;
   }
 
-  public ParsingResult parse(List<String> strings) {
-    if (StringExtensions.startWith(strings.get(0), "PROG|ru.autosome.di.ChIPMunk")) {
-      return new ChIPMunkParser(16, "ru.autosome.di.ChIPMunk", "PWAA").parse(strings);
-    } else { // load basic matrix
-      if (transpose) {
-        return new TransposedMatrixParser(16).parse(strings);
-      } else {
-        return new NormalMatrixParser(16).parse(strings);
+  @Override
+  public double[][] compiledMatrix(DiPWM motif) {
+    return motif.getMatrix();
+  }
+
+  // mononucleotide PWMs are converted into dinucleotide ones
+  @Override
+  public DiPWM createCompiledMotif(int alphabetSize, double[][] matrix) {
+    if (alphabetSize == PWM.ALPHABET_SIZE) {
+      return DiPWM.fromPWM(new PWM(matrix));
+    }
+    return new DiPWM(matrix);
+  }
+
+  @Override
+  public Map<String, String> conversionParameters() {
+    Map<String, String> result = new LinkedHashMap<>();
+    if (dataModel != DataModel.PWM) {
+      result.put("data model", dataModel.toString());
+      result.put("background", background.toString());
+      result.put("pseudocount", pseudocountCalculator.toString());
+      if (dataModel == DataModel.PPM) {
+        result.put("effective count", String.valueOf(effectiveCount));
       }
     }
+    return result;
+  }
+
+  @Override
+  protected MatrixParser matrixParser() {
+    return matrixParser;
   }
 }
@@ -0,0 +1,106 @@
+package ru.autosome.commons.importer;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Random access to a FASTA file indexed with `samtools faidx` (index is looked for in <fasta>.fai).
+// Each sequence is memory-mapped on first access, so only touched parts of reference are read from disk.
+public class IndexedFasta implements Closeable {
+  private static class IndexEntry {
+    final long length;
+    final long offset;
+    final int lineBases;
+    final int lineWidth;
+
+    IndexEntry(long length, long offset, int lineBases, int lineWidth) {
+      this.length = length;
+      this.offset = offset;
+      this.lineBases = lineBases;
+      this.lineWidth = lineWidth;
+    }
+
+    long spanInFile() {
+      long numFullLines = length / lineBases;
+      return numFullLines * lineWidth + (length % lineBases);
+    }
+  }
+
+  private final RandomAccessFile file;
+  private final Map<String, IndexEntry> index;
+  private final Map<String, MappedByteBuffer> mappedSequences;
+
+  public IndexedFasta(File fastaFile) throws IOException {
+    this(fastaFile, new File(fastaFile.getPath() + ".fai"));
+  }
+
+  public IndexedFasta(File fastaFile, File indexFile) throws IOException {
+    if (!indexFile.exists()) {
+      throw new FileNotFoundException("FASTA index `" + indexFile + "` not exists (use `samtools faidx` to build it)");
+    }
+    this.index = loadIndex(indexFile);
+    this.file = new RandomAccessFile(fastaFile, "r");
+    this.mappedSequences = new HashMap<>();
+  }
+
+  private static Map<String, IndexEntry> loadIndex(File indexFile) throws IOException {
+    Map<String, IndexEntry> result = new HashMap<>();
+    List<String> lines = InputExtensions.readLinesFromFile(indexFile);
+    for (String line: lines) {
+      if (line.trim().isEmpty()) continue;
+      String[] tokens = line.trim().split("\t");
+      if (tokens.length < 5) {
+        throw new IOException("Corrupted FASTA index `" + indexFile + "`: " + line);
+      }
+      result.put(tokens[0], new IndexEntry(Long.valueOf(tokens[1]), Long.valueOf(tokens[2]),
+                                           Integer.valueOf(tokens[3]), Integer.valueOf(tokens[4])));
+    }
+    return result;
+  }
+
+  public boolean hasSequence(String name) {
+    return index.containsKey(name);
+  }
+
+  public long sequenceLength(String name) {
+    return index.get(name).length;
+  }
+
+  private synchronized MappedByteBuffer mappedSequence(String name) throws IOException {
+    MappedByteBuffer buffer = mappedSequences.get(name);
+    if (buffer == null) {
+      IndexEntry entry = index.get(name);
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.spanInFile());
+      mappedSequences.put(name, buffer);
+    }
+    return buffer;
+  }
+
+  // Subsequence [start; end) (0-based) of a named sequence. Interval is clipped by sequence boundaries.
+  public String fetch(String name, long start, long end) throws IOException {
+    IndexEntry entry = index.get(name);
+    if (entry == null) {
+      throw new IllegalArgumentException("Sequence `" + name + "` is absent in FASTA index");
+    }
+    start = Math.max(start, 0);
+    end = Math.min(end, entry.length);
+    if (start >= end) {
+      return "";
+    }
+    MappedByteBuffer buffer = mappedSequence(name);
+    char[] result = new char[(int)(end - start)];
+    for (long pos = start; pos < end; ++pos) {
+      long offsetInFile = (pos / entry.lineBases) * entry.lineWidth + (pos % entry.lineBases);
+      result[(int)(pos - start)] = (char)buffer.get((int)offsetInFile);
+    }
+    return new String(result);
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
@@ -0,0 +1,75 @@
+package ru.autosome.commons.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+// Compression format of input files. Format is recognized by magic bytes at the start of a file,
+// so that compressed files are decompressed on the fly while being read (see InputExtensions.openPossiblyCompressed).
+// Gzip is supported by JDK, zstd - when zstd-jni library is on classpath. Other formats can be plugged in
+// with InputExtensions.registerCodec or as services (listed in META-INF/services/ru.autosome.commons.importer.InputCodec).
+public interface InputCodec {
+  String name();
+  // Extension of compressed files (like `.gz`), so that `motif.thr.gz` can stand for `motif.thr`
+  String extension();
+  // header contains the first `length` bytes of a file (fewer than MAX_MAGIC_LENGTH for a short file)
+  boolean recognizes(byte[] header, int length);
+  InputStream decompress(InputStream compressed) throws IOException;
+
+  int MAX_MAGIC_LENGTH = 16;
+
+  static boolean startsWith(byte[] header, int length, int... magic) {
+    if (length < magic.length) {
+      return false;
+    }
+    for (int i = 0; i < magic.length; ++i) {
+      if ((header[i] & 0xFF) != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Plain gzip as well as block-gzip (concatenated gzip members, e.g. bgzip-compressed VCF)
+  class Gzip implements InputCodec {
+    @Override public String name() { return "gzip"; }
+    @Override public String extension() { return ".gz"; }
+
+    @Override
+    public boolean recognizes(byte[] header, int length) {
+      return startsWith(header, length, 0x1f, 0x8b);
+    }
+
+    @Override
+    public InputStream decompress(InputStream compressed) throws IOException {
+      return new GZIPInputStream(compressed, 1 << 16);
+    }
+  }
+
+  // Decompressor is taken from zstd-jni (com.github.luben:zstd-jni) which isn't a dependency of the project,
+  // so it's looked up at runtime.
+  class Zstd implements InputCodec {
+    @Override public String name() { return "zstd"; }
+    @Override public String extension() { return ".zst"; }
+
+    @Override
+    public boolean recognizes(byte[] header, int length) {
+      return startsWith(header, length, 0x28, 0xb5, 0x2f, 0xfd);
+    }
+
+    @Override
+    public InputStream decompress(InputStream compressed) throws IOException {
+      try {
+        Class<?> streamClass = Class.forName("com.github.luben.zstd.ZstdInputStream");
+        return (InputStream) streamClass.getConstructor(InputStream.class).newInstance(compressed);
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Reading zstd-compressed input requires zstd-jni library on classpath", e);
+      } catch (ReflectiveOperationException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Can't create zstd decompressor", e);
+      }
+    }
+  }
+}
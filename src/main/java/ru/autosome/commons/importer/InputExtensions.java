@@ -3,24 +3,102 @@ package ru.autosome.commons.importer;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.ServiceLoader;
 import java.util.StringTokenizer;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class InputExtensions {
 
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final List<InputCodec> codecs = new CopyOnWriteArrayList<>();
+  static {
+    codecs.add(new InputCodec.Gzip());
+    codecs.add(new InputCodec.Zstd());
+    for (InputCodec codec: ServiceLoader.load(InputCodec.class)) {
+      codecs.add(codec);
+    }
+  }
+
+  public static void registerCodec(InputCodec codec) {
+    codecs.add(codec);
+  }
+
+  // Lines without line separators (all the parsers trim lines anyway); file is closed after reading
   static public List<String> readLinesFromFile(File file) throws FileNotFoundException {
-    InputStream reader = new FileInputStream(file);
-    return readLinesFromInputStream(reader);
+    try (BufferedReader reader = openReader(file)) {
+      List<String> result = new ArrayList<>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        result.add(line);
+      }
+      return result;
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Compression is detected by magic bytes; returns null for a file which isn't compressed
+  static public InputCodec codecOf(File file) throws IOException {
+    byte[] header = new byte[InputCodec.MAX_MAGIC_LENGTH];
+    int length = 0;
+    try (InputStream input = new FileInputStream(file)) {
+      int bytesRead;
+      while (length < header.length && (bytesRead = input.read(header, length, header.length - length)) != -1) {
+        length += bytesRead;
+      }
+    }
+    for (InputCodec codec: codecs) {
+      if (codec.recognizes(header, length)) {
+        return codec;
+      }
+    }
+    return null;
+  }
+
+  // Plain or compressed file (decompressed on the fly, see InputCodec); read with large buffers
+  static public InputStream openPossiblyCompressed(File file) throws IOException {
+    InputCodec codec = codecOf(file);
+    InputStream input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+    if (codec == null) {
+      return input;
+    }
+    try {
+      return new BufferedInputStream(codec.decompress(input), BUFFER_SIZE);
+    } catch (IOException | RuntimeException e) {
+      input.close();
+      throw e;
+    }
   }
 
-  static public List<String> readLinesFromInputStream(InputStream in) {
-    String newline = System.getProperty("line.separator");
-    BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-    return reader.lines().map(line -> line + newline).collect(Collectors.toList());
+  static public BufferedReader openReader(File file) throws IOException {
+    return new BufferedReader(new InputStreamReader(openPossiblyCompressed(file)), BUFFER_SIZE);
   }
 
-  public static boolean startWithDouble(String s) {
-    return isDouble(s.replaceAll("\\s+", " ").split(" ")[0]);
+  // The file itself if it exists, otherwise its compressed version (like `motif.thr.gz` for `motif.thr`) if there's one
+  static public File possiblyCompressedFile(File file) {
+    if (!file.exists()) {
+      for (InputCodec codec: codecs) {
+        File compressedFile = new File(file.getPath() + codec.extension());
+        if (compressedFile.exists()) {
+          return compressedFile;
+        }
+      }
+    }
+    return file;
+  }
+
+  // File name without extension, ignoring extension of compression format (`motif.pwm.gz` --> `motif`)
+  static public String fileBaseName(File file) {
+    String name = file.getName();
+    for (InputCodec codec: codecs) {
+      if (name.endsWith(codec.extension()) && name.length() > codec.extension().length()) {
+        name = name.substring(0, name.length() - codec.extension().length());
+        break;
+      }
+    }
+    return name.replaceAll("\\.[^.]+$", "");
   }
 
   public static boolean isDouble(String s) {
@@ -32,17 +110,6 @@ public class InputExtensions {
     }
   }
 
-  static public List<String> beforeEmptyLine(List<String> lines) {
-    List<String> result = new ArrayList<>();
-    for (String line: lines) {
-      if (line.trim().isEmpty()) {
-        return result;
-      }
-      result.add(line);
-    }
-    return result;
-  }
-
   static public List<String> trimAll(List<String> lines) {
     List<String> result = new ArrayList<>(lines.size());
     for (String line: lines) {
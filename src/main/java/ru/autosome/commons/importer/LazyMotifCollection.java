@@ -0,0 +1,106 @@
+package ru.autosome.commons.importer;
+
+import ru.autosome.commons.model.Named;
+import ru.autosome.commons.support.Lazy;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Motif collection indexed by motif names; each motif is loaded only when it's used for the first time.
+// Names of motifs in a folder are taken from headers of motif files (without parsing matrices);
+// when a folder is filtered by names, files named after requested motifs are checked first, so that other files
+// are read only when some requested motif isn't found this way.
+// Motifs which can't be loaded are reported and skipped just as by MotifImporter.loadMotifCollectionWithNames.
+public class LazyMotifCollection<ModelType> {
+  public static class Entry<ModelType> {
+    private final String fileBaseName; // file name without extension for motifs of a folder, null otherwise
+    private final Lazy<String> name;
+    private final Lazy<Named<ModelType>> motif;
+
+    Entry(String fileBaseName, Supplier<String> nameLoader, Supplier<Named<ModelType>> motifLoader) {
+      this.fileBaseName = fileBaseName;
+      this.motif = Lazy.of(motifLoader);
+      // name of a motif which is already loaded is known
+      this.name = Lazy.of(() -> (motif.isEvaluated() && motif.get() != null) ? motif.get().getName() : nameLoader.get());
+    }
+
+    public String name() {
+      return name.get();
+    }
+
+    // null if motif can't be loaded
+    public Named<ModelType> motif() {
+      return motif.get();
+    }
+  }
+
+  private final List<Entry<ModelType>> entries;
+
+  LazyMotifCollection(List<Entry<ModelType>> entries) {
+    this.entries = entries;
+  }
+
+  public static <ModelType> LazyMotifCollection<ModelType> of(List<Named<ModelType>> motifs) {
+    List<Entry<ModelType>> entries = new ArrayList<>(motifs.size());
+    for (Named<ModelType> motif: motifs) {
+      entries.add(new Entry<>(null, motif::getName, () -> motif));
+    }
+    return new LazyMotifCollection<>(entries);
+  }
+
+  public List<Entry<ModelType>> entries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public List<String> names() {
+    return entries.stream().map(Entry::name).collect(Collectors.toList());
+  }
+
+  // Motifs with given names in order of collection. Motifs are matched only by their names (the ones which are reported),
+  // file base names are used just to find likely candidates: file `<name>.*` is taken if its motif is named <name>.
+  public LazyMotifCollection<ModelType> filter(Collection<String> motifNames) {
+    Set<String> requested = new HashSet<>(motifNames);
+    Set<String> found = new HashSet<>();
+    boolean[] selected = new boolean[entries.size()];
+    for (int i = 0; i < entries.size(); ++i) {
+      String fileBaseName = entries.get(i).fileBaseName;
+      if (fileBaseName != null && requested.contains(fileBaseName) && fileBaseName.equals(entries.get(i).name())) {
+        selected[i] = true;
+        found.add(fileBaseName);
+      }
+    }
+    if (found.size() < requested.size()) {
+      for (int i = 0; i < entries.size(); ++i) {
+        if (!selected[i] && requested.contains(entries.get(i).name())) {
+          selected[i] = true;
+          found.add(entries.get(i).name());
+        }
+      }
+    }
+    for (String motifName: motifNames) {
+      if (!found.contains(motifName)) {
+        throw new IllegalArgumentException("Motif `" + motifName + "` not found in collection");
+      }
+    }
+    List<Entry<ModelType>> result = new ArrayList<>();
+    for (int i = 0; i < entries.size(); ++i) {
+      if (selected[i]) {
+        result.add(entries.get(i));
+      }
+    }
+    return new LazyMotifCollection<>(result);
+  }
+
+  // Loads all motifs which aren't loaded yet (in parallel, in fork-join pool of the caller, common pool by default); motifs which can't be loaded are skipped
+  public List<Named<ModelType>> loadAll() {
+    return entries.parallelStream()
+             .map(Entry::motif)
+             .filter(Objects::nonNull)
+             .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,182 @@
+package ru.autosome.commons.importer;
+
+import ru.autosome.commons.support.FastDoubleParser;
+import ru.autosome.commons.support.StringExtensions;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+// Single-pass matrix parser: lines are consumed one by one and tokenized in place (without regex splitting),
+// so a motif can be read right from a stream and reading stops at the end of a matrix.
+// Format is recognized by the first lines:
+//   ChIPMunk output (when ChIPMunk parser is given) - by `PROG|<section>` first line;
+//   header - by `>` at the start or by a first word which is not a number;
+//   transposed matrix (nucleotides in lines) - when requested or when the first row doesn't have alphabet_size weights.
+// Matrix ends at an empty line or at the end of input.
+public class MatrixParser {
+  public final int alphabet_size;
+  public final boolean transpose;
+  private final ChIPMunkParser chipmunkParser; // null if ChIPMunk format isn't recognized
+
+  public MatrixParser(int alphabet_size, boolean transpose, ChIPMunkParser chipmunkParser) {
+    this.alphabet_size = alphabet_size;
+    this.transpose = transpose;
+    this.chipmunkParser = chipmunkParser;
+  }
+
+  public ParsingResult parse(List<String> lines) {
+    ParsingState state = new ParsingState();
+    for (String line: lines) {
+      if (!state.addLine(line)) {
+        break;
+      }
+    }
+    return state.result();
+  }
+
+  public ParsingResult parse(BufferedReader reader) throws IOException {
+    ParsingState state = new ParsingState();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (!state.addLine(line)) {
+        break;
+      }
+    }
+    return state.result();
+  }
+
+  // Name given in a header; only lines up to the first row of a matrix are read
+  // (except for ChIPMunk format which is parsed as a whole). Returns null for a matrix without header.
+  public String parseName(List<String> lines) {
+    return parseName(lines.iterator());
+  }
+
+  public String parseName(BufferedReader reader) throws IOException {
+    try {
+      return parseName(reader.lines().iterator());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private String parseName(Iterator<String> lines) {
+    ParsingState state = new ParsingState();
+    while (!state.started && lines.hasNext()) {
+      state.addLine(lines.next());
+      if (state.chipmunkLines != null) {
+        while (lines.hasNext()) {
+          state.addLine(lines.next());
+        }
+        return state.result().getName();
+      }
+    }
+    return state.name;
+  }
+
+  private class ParsingState {
+    private boolean started = false;
+    private List<String> chipmunkLines = null; // non-null in ChIPMunk mode
+    private String name = null;
+    private final List<double[]> rows = new ArrayList<>();
+    private boolean transposed = transpose;
+    private double[] rowBuffer = new double[Math.max(alphabet_size, 16)];
+
+    // returns false when the rest of input isn't needed
+    boolean addLine(String line) {
+      if (chipmunkLines != null) {
+        chipmunkLines.add(line);
+        return true;
+      }
+      int start = StringExtensions.skipWhitespace(line, 0);
+      if (!started) {
+        if (chipmunkParser != null && StringExtensions.startWith(line, "PROG|" + chipmunkParser.section)) {
+          chipmunkLines = new ArrayList<>();
+          chipmunkLines.add(line);
+          return true;
+        }
+        if (start == line.length()) {
+          return true; // leading empty lines are skipped
+        }
+        started = true;
+        if (line.charAt(start) == '>') {
+          name = line.substring(start + 1).trim();
+          return true;
+        } else if (!startsWithNumber(line, start)) {
+          name = line.trim();
+          return true;
+        }
+      } else if (start == line.length()) {
+        return false;
+      }
+      addRow(line, start);
+      return true;
+    }
+
+    private void addRow(String line, int start) {
+      int numberOfWeights = 0;
+      int pos = start;
+      while (pos < line.length()) {
+        int tokenEnd = StringExtensions.skipToken(line, pos);
+        if (numberOfWeights == rowBuffer.length) {
+          rowBuffer = Arrays.copyOf(rowBuffer, 2 * rowBuffer.length);
+        }
+        rowBuffer[numberOfWeights++] = FastDoubleParser.parseDouble(line, pos, tokenEnd);
+        pos = StringExtensions.skipWhitespace(line, tokenEnd);
+      }
+      if (rows.isEmpty() && numberOfWeights != alphabet_size) {
+        transposed = true;
+      }
+      if (transposed) {
+        if (rows.size() == alphabet_size) {
+          throw new RuntimeException("Incorrect number of weight lines in the transposed matrix input file.");
+        }
+        if (!rows.isEmpty() && numberOfWeights != rows.get(0).length) {
+          throw new RuntimeException("Different number of elements in positions of transposed matrix input file.");
+        }
+      } else if (numberOfWeights != alphabet_size) {
+        throw new RuntimeException("Incorrect number of weights per line in the matrix input file.");
+      }
+      rows.add(Arrays.copyOf(rowBuffer, numberOfWeights));
+    }
+
+    ParsingResult result() {
+      if (chipmunkLines != null) {
+        return chipmunkParser.parse(chipmunkLines);
+      }
+      if (!transposed) {
+        return new ParsingResult(rows, name);
+      }
+      if (rows.size() != alphabet_size) {
+        throw new RuntimeException("Incorrect number of weight lines in the transposed matrix input file.");
+      }
+      double[][] matrix = new double[rows.get(0).length][alphabet_size];
+      for (int letterIndex = 0; letterIndex < alphabet_size; ++letterIndex) {
+        double[] weights = rows.get(letterIndex);
+        for (int positionIndex = 0; positionIndex < weights.length; ++positionIndex) {
+          matrix[positionIndex][letterIndex] = weights[positionIndex];
+        }
+      }
+      return new ParsingResult(matrix, name);
+    }
+  }
+
+  // Header (motif name) is distinguished from the first row of a matrix by its first word
+  private static boolean startsWithNumber(String line, int start) {
+    char firstLetter = line.charAt(start);
+    // any number (even NaN or Infinity) starts with one of these letters
+    if ("+-.0123456789NI".indexOf(firstLetter) == -1) {
+      return false;
+    }
+    try {
+      FastDoubleParser.parseDouble(line, start, StringExtensions.skipToken(line, start));
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+}
@@ -1,16 +1,31 @@
 package ru.autosome.commons.importer;
 
 import ru.autosome.commons.model.Named;
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
+import ru.autosome.commons.support.SharedCache;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
 
 public abstract class MotifImporter<ModelType> {
   abstract public ModelType createMotif(double matrix[][]);
-  abstract public ParsingResult parse(List<String> strings);
+  abstract protected MatrixParser matrixParser();
+
+  public ParsingResult parse(List<String> strings) {
+    return matrixParser().parse(strings);
+  }
+  public ParsingResult parse(BufferedReader reader) throws IOException {
+    return matrixParser().parse(reader);
+  }
+
+  // Compiled collections store matrices of final models (already converted into PWMs)
+  abstract public double[][] compiledMatrix(ModelType motif);
+  abstract public ModelType createCompiledMotif(int alphabetSize, double[][] matrix);
+  // Parameters of conversion into PWM (empty when matrices are used as is)
+  abstract public Map<String, String> conversionParameters();
 
   public ModelType loadMotif(List<String> lines){
     return loadMotifWithName(lines).getObject();
@@ -29,16 +44,17 @@ public abstract class MotifImporter<ModelType> {
 
 
   public Named<ModelType> loadMotifWithName(File file) {
-    List<String> lines;
-    try {
-      lines = InputExtensions.readLinesFromFile(file);
+    ParsingResult parsingInfo;
+    try (BufferedReader reader = InputExtensions.openReader(file)) {
+      parsingInfo = parse(reader);
     } catch (FileNotFoundException e) {
       return null;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
-    ParsingResult parsingInfo = parse(lines);
     String name;
     if (parsingInfo.getName() == null || parsingInfo.getName().isEmpty()) {
-      name = file.getName().replaceAll("\\.[^.]+$", "");
+      name = InputExtensions.fileBaseName(file);
     } else {
       name = parsingInfo.getName();
     }
@@ -57,40 +73,190 @@ public abstract class MotifImporter<ModelType> {
     return result;
   }
 
+  // When cache is enabled, collection loaded with the same importer settings is reused (motifs themselves are shared)
   public List<Named<ModelType>> loadMotifCollectionWithNames(File pathToMotifs) {
+    return new ArrayList<>(SharedCache.get(() -> Arrays.asList("motif collection", getClass().getName(), matrixParser().transpose,
+                                                               conversionParameters(), SharedCache.fileKey(pathToMotifs)),
+                                           () -> loadMotifCollectionWithNamesUncached(pathToMotifs)));
+  }
+
+  private List<Named<ModelType>> loadMotifCollectionWithNamesUncached(File pathToMotifs) {
     if (pathToMotifs.isDirectory()) {
       return loadMotifCollectionWithNamesFromFolder(pathToMotifs);
+    } else if (CompiledCollection.isCompiledCollection(pathToMotifs)) {
+      return loadMotifCollectionWithNamesFromCompiled(pathToMotifs);
     } else {
       return loadMotifCollectionWithNamesFromFile(pathToMotifs);
     }
   }
 
+  // Collection which loads motifs on first use; with cache enabled it's shared (together with motifs loaded so far)
+  public LazyMotifCollection<ModelType> lazyMotifCollection(File pathToMotifs) {
+    return SharedCache.get(() -> Arrays.asList("lazy motif collection", getClass().getName(), matrixParser().transpose,
+                                               conversionParameters(), SharedCache.fileKey(pathToMotifs)),
+                           () -> lazyMotifCollectionUncached(pathToMotifs));
+  }
+
+  private LazyMotifCollection<ModelType> lazyMotifCollectionUncached(File pathToMotifs) {
+    if (pathToMotifs.isDirectory()) {
+      return lazyMotifCollectionFromFolder(pathToMotifs);
+    } else if (CompiledCollection.isCompiledCollection(pathToMotifs)) {
+      return LazyMotifCollection.of(loadMotifCollectionWithNamesFromCompiled(pathToMotifs));
+    } else {
+      return lazyMotifCollectionFromFile(pathToMotifs);
+    }
+  }
+
+  public LazyMotifCollection<ModelType> lazyMotifCollectionFromFolder(File pathToPWMs) {
+    File[] files = pathToPWMs.listFiles();
+    List<LazyMotifCollection.Entry<ModelType>> entries = new ArrayList<>();
+    if (files != null) {
+      Arrays.sort(files, Comparator.comparing(File::getName));
+      for (File file: files) {
+        if (file.isFile()) {
+          String fileBaseName = InputExtensions.fileBaseName(file);
+          entries.add(new LazyMotifCollection.Entry<>(fileBaseName,
+                                                      () -> loadMotifNameOrDefault(file, fileBaseName),
+                                                      () -> loadMotifWithNameOrSkip(file)));
+        }
+      }
+    }
+    return new LazyMotifCollection<>(entries);
+  }
+
+  // Motif name is read from a header (as in loadMotifWithName); if it can't be read, motif will be skipped on loading anyway
+  private String loadMotifNameOrDefault(File file, String defaultName) {
+    String name;
+    try (BufferedReader reader = InputExtensions.openReader(file)) {
+      name = matrixParser().parseName(reader);
+    } catch (Exception exception) {
+      name = null;
+    }
+    return (name == null || name.isEmpty()) ? defaultName : name;
+  }
+
+  // File is split into motifs at once, but motifs are parsed on first use
+  public LazyMotifCollection<ModelType> lazyMotifCollectionFromFile(File pathToPWMs) {
+    String defaultNamePrefix = InputExtensions.fileBaseName(pathToPWMs) + "_";
+    List<LazyMotifCollection.Entry<ModelType>> entries = new ArrayList<>();
+    try (BufferedReader reader = InputExtensions.openReader(pathToPWMs)) {
+      MotifSplitter.headerOrEmptyLineSplitter.split(reader, (List<String> lines) -> {
+        String defaultName = defaultNamePrefix + (entries.size() + 1);
+        entries.add(new LazyMotifCollection.Entry<>(null,
+                                                    () -> loadMotifNameOrDefault(lines, defaultName),
+                                                    () -> loadMotifFromChunk(lines, defaultName, pathToPWMs)));
+      });
+    } catch (IOException e) {
+      throw new RuntimeException("Can't read motif collection `" + pathToPWMs + "`", e);
+    }
+    return new LazyMotifCollection<>(entries);
+  }
+
+  private String loadMotifNameOrDefault(List<String> lines, String defaultName) {
+    String name;
+    try {
+      name = matrixParser().parseName(lines);
+    } catch (Exception exception) {
+      name = null;
+    }
+    return (name == null || name.isEmpty()) ? defaultName : name;
+  }
+
+  // Files are read, parsed and converted into motifs in parallel (in fork-join pool of the caller, common pool by default).
+  // Motifs are ordered by file name, so that order doesn't depend on file system.
   public List<Named<ModelType>> loadMotifCollectionWithNamesFromFolder(File pathToPWMs) {
-    List<Named<ModelType>> result = new ArrayList<>();
     File[] files = pathToPWMs.listFiles();
     if (files == null) {
-      return result;
-    }
-    for (File file : files) {
-      if (!file.isFile()) continue;
-      try {
-        Named<ModelType> motif = loadMotifWithName(file);
-        if (motif != null) {
-          result.add(motif);
+      return new ArrayList<>();
+    }
+    Arrays.sort(files, Comparator.comparing(File::getName));
+    return Arrays.stream(files)
+             .parallel()
+             .filter(File::isFile)
+             .map(this::loadMotifWithNameOrSkip)
+             .filter(Objects::nonNull)
+             .collect(Collectors.toList());
+  }
+
+  // returns null if motif can't be loaded
+  private Named<ModelType> loadMotifWithNameOrSkip(File file) {
+    try {
+      return loadMotifWithName(file);
+    } catch (Exception exception) {
+      System.err.println("Skip file " + file.getAbsolutePath() + ". Exception ignored:");
+      exception.printStackTrace(System.err);
+      return null;
+    }
+  }
+
+
+  // Motifs are split while file is being read; splitted motifs are parsed in parallel (in fork-join pool of the caller, common pool by default, if it's parallel).
+  // Motifs without names are named after the file and motif index (1-based), like `collection_3`.
+  public List<Named<ModelType>> loadMotifCollectionWithNamesFromFile(File pathToPWMs) {
+    String defaultNamePrefix = InputExtensions.fileBaseName(pathToPWMs) + "_";
+    List<CompletableFuture<Named<ModelType>>> parsedMotifs = new ArrayList<>();
+    // tasks go to the pool of the caller just as parallel streams do
+    ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    boolean parallel = pool.getParallelism() > 1;
+    try (BufferedReader reader = InputExtensions.openReader(pathToPWMs)) {
+      MotifSplitter.headerOrEmptyLineSplitter.split(reader, (List<String> lines) -> {
+        String defaultName = defaultNamePrefix + (parsedMotifs.size() + 1);
+        if (parallel) {
+          parsedMotifs.add(CompletableFuture.supplyAsync(() -> loadMotifFromChunk(lines, defaultName, pathToPWMs), pool));
+        } else {
+          parsedMotifs.add(CompletableFuture.completedFuture(loadMotifFromChunk(lines, defaultName, pathToPWMs)));
         }
-      } catch (Exception exception) {
-        System.err.println("Skip file " + file.getAbsolutePath() + ". Exception ignored:");
-        exception.printStackTrace(System.err);
+      });
+    } catch (IOException e) {
+      throw new RuntimeException("Can't read motif collection `" + pathToPWMs + "`", e);
+    }
+
+    List<Named<ModelType>> result = new ArrayList<>(parsedMotifs.size());
+    for (CompletableFuture<Named<ModelType>> parsedMotif: parsedMotifs) {
+      Named<ModelType> motif = parsedMotif.join();
+      if (motif != null) {
+        result.add(motif);
       }
     }
     return result;
   }
 
+  // returns null if motif can't be parsed (just as folder loader skips such files)
+  private Named<ModelType> loadMotifFromChunk(List<String> lines, String defaultName, File pathToPWMs) {
+    try {
+      ParsingResult parsingInfo = parse(lines);
+      String name;
+      if (parsingInfo.getName() == null || parsingInfo.getName().isEmpty()) {
+        name = defaultName;
+      } else {
+        name = parsingInfo.getName();
+      }
+      return new Named<>(createMotif(parsingInfo.getMatrix()), name);
+    } catch (Exception exception) {
+      System.err.println("Skip motif " + defaultName + " of " + pathToPWMs.getAbsolutePath() + ". Exception ignored:");
+      exception.printStackTrace(System.err);
+      return null;
+    }
+  }
 
-  public List<Named<ModelType>> loadMotifCollectionWithNamesFromFile(File pathToPWMs) {
-    throw new NotImplementedException();
-    // TODO: fix!!!!!
-    // TODO: make use of MotifSplitter
-    // return new ArrayList<Named<ModelType>>();
+  // Matrices of a compiled collection are taken as they are; conversion options of importer
+  // are only checked against those used at compilation.
+  public List<Named<ModelType>> loadMotifCollectionWithNamesFromCompiled(File pathToCollection) {
+    CompiledCollection collection;
+    try {
+      collection = CompiledCollection.load(pathToCollection);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Can't read compiled motif collection `" + pathToCollection + "`", e);
+    }
+    Map<String, String> requiredParameters = conversionParameters();
+    if (!requiredParameters.isEmpty() && !requiredParameters.equals(collection.parameters)) {
+      System.err.println("Warning! Motifs of compiled collection " + pathToCollection + " were converted into PWMs with parameters " +
+                         collection.parameters + " instead of " + requiredParameters);
+    }
+    List<Named<ModelType>> result = new ArrayList<>(collection.matrices.size());
+    for (Named<double[][]> matrix: collection.matrices) {
+      result.add(new Named<>(createCompiledMotif(collection.alphabetSize, matrix.getObject()), matrix.getName()));
+    }
+    return result;
   }
 }
@@ -1,38 +1,76 @@
 package ru.autosome.commons.importer;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class MotifSplitter {
   public final String splitter_pattern; // splitter between motifs
   public final String first_line_pattern; // start of line can become a line of cut, line itself is included in a motif
+  private final Pattern splitter;
+  private final Pattern firstLine;
+
+  // Motifs start with a header line `>name` or are separated by empty lines (e.g. HOCOMOCO collection in a single file)
+  public static final MotifSplitter headerOrEmptyLineSplitter = new MotifSplitter("\\s*", "\\s*>.*");
+
   MotifSplitter(String splitter_pattern, String first_line_pattern) {
     this.splitter_pattern = splitter_pattern;
     this.first_line_pattern = first_line_pattern;
+    this.splitter = Pattern.compile(splitter_pattern);
+    this.firstLine = Pattern.compile(first_line_pattern);
   }
-  public List<List<String>> split(List<String> strings) {
-    List<List<String>> result = new ArrayList<>();
-    List<String> chunk;
-    chunk = new ArrayList<>();
-    for (String string : strings) {
-      if (string.matches(splitter_pattern)) {
-        if (!chunk.isEmpty()) {
-          result.add(chunk);
-        }
-        chunk = new ArrayList<>();
-      } else if (string.matches(first_line_pattern)) {
-        if (!chunk.isEmpty()) {
-          result.add(chunk);
-        }
-        chunk = new ArrayList<>();
-        chunk.add(string);
+
+  // Feeds lines one by one, passes each complete motif to consumer as soon as its last line is met
+  private class SplitState {
+    private final Consumer<List<String>> consumer;
+    private List<String> chunk = new ArrayList<>();
+    private final Matcher splitterMatcher = splitter.matcher("");
+    private final Matcher firstLineMatcher = firstLine.matcher("");
+
+    SplitState(Consumer<List<String>> consumer) {
+      this.consumer = consumer;
+    }
+
+    void addLine(String line) {
+      if (splitterMatcher.reset(line).matches()) {
+        finishChunk();
+      } else if (firstLineMatcher.reset(line).matches()) {
+        finishChunk();
+        chunk.add(line);
       } else {
-        chunk.add(string);
+        chunk.add(line);
       }
     }
-    if (!chunk.isEmpty()) {
-      result.add(chunk);
+
+    void finishChunk() {
+      if (!chunk.isEmpty()) {
+        consumer.accept(chunk);
+        chunk = new ArrayList<>();
+      }
     }
+  }
+
+  public List<List<String>> split(List<String> strings) {
+    List<List<String>> result = new ArrayList<>();
+    SplitState state = new SplitState(result::add);
+    for (String string : strings) {
+      state.addLine(string);
+    }
+    state.finishChunk();
     return result;
   }
+
+  // Streaming version: lines aren't materialized all at once
+  public void split(BufferedReader reader, Consumer<List<String>> consumer) throws IOException {
+    SplitState state = new SplitState(consumer);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      state.addLine(line);
+    }
+    state.finishChunk();
+  }
 }
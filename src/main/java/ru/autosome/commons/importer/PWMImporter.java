@@ -6,9 +6,9 @@ import ru.autosome.commons.motifModel.mono.PCM;
 import ru.autosome.commons.motifModel.mono.PPM;
 import ru.autosome.commons.motifModel.mono.PWM;
 import ru.autosome.commons.motifModel.types.DataModel;
-import ru.autosome.commons.support.StringExtensions;
 
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class PWMImporter extends MotifImporter<PWM> {
   final DataModel dataModel;
@@ -16,6 +16,7 @@ public class PWMImporter extends MotifImporter<PWM> {
   final PseudocountCalculator pseudocountCalculator;
   final BackgroundModel background;
   final boolean transpose;
+  final MatrixParser matrixParser;
 
   public PWMImporter() {
     this.dataModel = DataModel.PWM;
@@ -23,6 +24,7 @@ public class PWMImporter extends MotifImporter<PWM> {
     this.pseudocountCalculator = PseudocountCalculator.logPseudocount;
     this.background = null;
     this.transpose = false;
+    this.matrixParser = new MatrixParser(4, transpose, new ChIPMunkParser(4, "ru.autosome.ChIPMunk", "PWMA"));
   }
 
   public PWMImporter(BackgroundModel background, DataModel dataModel, Double effectiveCount, boolean transpose, PseudocountCalculator pseudocount) {
@@ -31,6 +33,7 @@ public class PWMImporter extends MotifImporter<PWM> {
     this.pseudocountCalculator = pseudocount;
     this.background = background;
     this.transpose = transpose;
+    this.matrixParser = new MatrixParser(4, transpose, new ChIPMunkParser(4, "ru.autosome.ChIPMunk", "PWMA"));
   }
 
   // constructs PWM from any source: pwm/pcm/ppm matrix
@@ -53,16 +56,35 @@ public class PWMImporter extends MotifImporter<PWM> {
     return pwm;
   }
 
-  public ParsingResult parse(List<String> strings) {
-    if (StringExtensions.startWith(strings.get(0), "PROG|ru.autosome.ChIPMunk")) {
-      return new ChIPMunkParser(4, "ru.autosome.ChIPMunk", "PWMA").parse(strings);
-    } else { // load basic matrix
-      if (transpose) {
-        // TODO: make help strings about transposition in exceptions
-        return new TransposedMatrixParser(4).parse(strings);
-      } else {
-        return new NormalMatrixParser(4).parse(strings);
+  @Override
+  public double[][] compiledMatrix(PWM motif) {
+    return motif.getMatrix();
+  }
+
+  @Override
+  public PWM createCompiledMotif(int alphabetSize, double[][] matrix) {
+    if (alphabetSize != PWM.ALPHABET_SIZE) {
+      throw new IllegalArgumentException("Compiled collection doesn't consist of mononucleotide PWMs");
+    }
+    return new PWM(matrix);
+  }
+
+  @Override
+  public Map<String, String> conversionParameters() {
+    Map<String, String> result = new LinkedHashMap<>();
+    if (dataModel != DataModel.PWM) {
+      result.put("data model", dataModel.toString());
+      result.put("background", background.toString());
+      result.put("pseudocount", pseudocountCalculator.toString());
+      if (dataModel == DataModel.PPM) {
+        result.put("effective count", String.valueOf(effectiveCount));
       }
     }
+    return result;
+  }
+
+  @Override
+  protected MatrixParser matrixParser() {
+    return matrixParser;
   }
 }
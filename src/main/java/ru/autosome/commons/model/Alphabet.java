@@ -1,5 +1,6 @@
 package ru.autosome.commons.model;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -9,9 +10,12 @@ public class Alphabet {
   protected final String[] letters; // AA, AC,... NN codes indexed
   protected final Map<String, Byte> letterIndices;
   protected final Map<Byte, Byte> reverseComplements;
+  protected final byte[] singleLetterCodes; // character (of any case) --> index of single letter; -1 for unknown characters
+  protected final byte[] singleLetterComplements; // index of single letter --> index of its complement
 
   // Private constructor for safety reasons (to easy to create invalid alphabet). Use Alphabet.byLetters instead
-  private Alphabet(int codeLength, int alphabetSize, String[] letters, Map<String, Byte> letterIndices, Map<Byte, Byte> reverseComplements) {
+  private Alphabet(int codeLength, int alphabetSize, String[] letters, Map<String, Byte> letterIndices, Map<Byte, Byte> reverseComplements,
+                   byte[] singleLetterCodes, byte[] singleLetterComplements) {
     if (Math.pow(alphabetSize, codeLength) != letters.length) {
       throw new IllegalArgumentException("letters array size should be equal to alphabetSize ** codeLength");
     }
@@ -36,6 +40,22 @@ public class Alphabet {
     this.letters = letters;
     this.letterIndices = letterIndices;
     this.reverseComplements = reverseComplements;
+    this.singleLetterCodes = singleLetterCodes;
+    this.singleLetterComplements = singleLetterComplements;
+  }
+
+  // Index of a single letter (case insensitive) or -1 if character is not in alphabet
+  public int singleLetterCode(char letter) {
+    return (letter < singleLetterCodes.length) ? singleLetterCodes[letter] : -1;
+  }
+
+  // Index of a single letter given by an ASCII byte or -1 if it's not in alphabet
+  public int singleLetterCode(byte letter) {
+    return singleLetterCodes[letter & 0xFF];
+  }
+
+  public byte singleLetterComplement(byte letterCode) {
+    return singleLetterComplements[letterCode];
   }
 
   // Converts string, using overlapping (if codeLength>1) positions, uses shift of 1 nt each time.
@@ -43,10 +63,40 @@ public class Alphabet {
     if (seq.length() < codeLength) {
       throw new IllegalArgumentException("Sequence '" + seq + "' is not compatible with alphabet of length " + codeLength);
     }
-    final String normalizedSeq = seq.toUpperCase();
-    byte[] result = new byte[normalizedSeq.length() + 1 - codeLength];
+    byte[] letterCodes = new byte[seq.length()];
+    for (int i = 0; i < letterCodes.length; ++i) {
+      int code = singleLetterCode(seq.charAt(i));
+      if (code < 0) {
+        throw new IllegalArgumentException("Sequence '" + seq + "' contains character '" + seq.charAt(i) + "' which is not in alphabet");
+      }
+      letterCodes[i] = (byte)code;
+    }
+    return convertLetterCodes(letterCodes);
+  }
+
+  // Converts sequence of single letter codes (see singleLetterCode) in the same way as convertString does
+  public byte[] convertLetterCodes(byte[] letterCodes) {
+    byte[] result = new byte[letterCodes.length + 1 - codeLength];
     for (int i = 0; i < result.length; ++i) {
-      result[i] = letterIndices.get( normalizedSeq.substring(i, i + codeLength) );
+      int code = 0;
+      for (int k = 0; k < codeLength; ++k) {
+        code = code * alphabetSize + letterCodes[i + k];
+      }
+      result[i] = (byte)code;
+    }
+    return result;
+  }
+
+  // Converts reverse complement of sequence of single letter codes
+  public byte[] convertLetterCodesReverseComplement(byte[] letterCodes) {
+    int len = letterCodes.length;
+    byte[] result = new byte[len + 1 - codeLength];
+    for (int i = 0; i < result.length; ++i) {
+      int code = 0;
+      for (int k = 0; k < codeLength; ++k) {
+        code = code * alphabetSize + singleLetterComplements[letterCodes[len - 1 - i - k]];
+      }
+      result[i] = (byte)code;
     }
     return result;
   }
@@ -94,7 +144,17 @@ public class Alphabet {
       complements.put(ind, letterIndices.get(revcompSeq));
     }
 
-    return new Alphabet(codeLength, letters.length(), separateLetters, letterIndices, complements);
+    byte[] singleLetterCodes = new byte[256];
+    Arrays.fill(singleLetterCodes, (byte)-1);
+    byte[] singleLetterComplements = new byte[letters.length()];
+    for (byte ind = 0; ind < letters.length(); ++ind) {
+      singleLetterCodes[letters.charAt(ind)] = ind;
+      singleLetterCodes[Character.toLowerCase(letters.charAt(ind))] = ind;
+      singleLetterComplements[ind] = (byte)letters.indexOf(complementLetters.charAt(ind));
+    }
+
+    return new Alphabet(codeLength, letters.length(), separateLetters, letterIndices, complements,
+                        singleLetterCodes, singleLetterComplements);
   }
 
   public int getCodeLength() {
@@ -43,4 +43,12 @@ public class Position {
     return String.valueOf(position) + "\t" + orientation.toStringShort();
   }
 
+  public StringBuilder appendTo(StringBuilder builder) {
+    return builder.append(position).append('\t').append(orientation);
+  }
+
+  public StringBuilder appendShortTo(StringBuilder builder) {
+    return builder.append(position).append('\t').append(orientation.toStringShort());
+  }
+
 }
@@ -8,8 +8,8 @@ public class PositionInterval {
   public final int left; // [left; right]
   public final int right; // both left and right included
   PositionInterval(int left, int right) {
-    if (left>= right) {
-      throw new IllegalArgumentException("Left should be less than right");
+    if (left > right) {
+      throw new IllegalArgumentException("Left should be not greater than right");
     }
     this.left = left;
     this.right = right;
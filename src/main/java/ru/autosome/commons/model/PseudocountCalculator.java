@@ -7,6 +7,11 @@ public abstract class PseudocountCalculator {
     public Double calculatePseudocount(double count) {
       return Math.log(Math.max(count, 2));
     }
+
+    @Override
+    public String toString() {
+      return "log";
+    }
   };
 
   static public final PseudocountCalculator sqrtPseudocount = new PseudocountCalculator() {
@@ -14,6 +19,11 @@ public abstract class PseudocountCalculator {
     public Double calculatePseudocount(double count) {
       return Math.sqrt(count);
     }
+
+    @Override
+    public String toString() {
+      return "sqrt";
+    }
   };
   static public PseudocountCalculator constPseudocount(final double pseudocount){
     return new PseudocountCalculator() {
@@ -21,6 +31,11 @@ public abstract class PseudocountCalculator {
       public Double calculatePseudocount(double count) {
         return pseudocount;
       }
+
+      @Override
+      public String toString() {
+        return String.valueOf(pseudocount);
+      }
     };
   }
 
@@ -8,6 +8,8 @@ import ru.autosome.commons.motifModel.ScoreStatistics;
 import ru.autosome.commons.motifModel.di.DiPWM;
 import ru.autosome.perfectosape.model.encoded.di.SequenceDiEncoded;
 
+import java.util.Arrays;
+
 import static ru.autosome.commons.model.indexingScheme.DiIndexingSchemeIUPAC.N_index;
 
 public class DiPWMSequenceScoring implements ScoreStatistics, SequenceScoringModel<SequenceDiEncoded> {
@@ -15,10 +17,13 @@ public class DiPWMSequenceScoring implements ScoreStatistics, SequenceScoringMod
   private final DiPWM dipwm;
   private final DiBackgroundModel dibackground;
   private final double[][] matrixIUPAC;
+  private static final int COLUMNS_PER_BOUND_CHECK = 8;
+  private final double[] bestSuffixScores; // best score of matrix columns starting from given one
   public DiPWMSequenceScoring(DiPWM dipwm, DiBackgroundModel dibackground) {
     this.dipwm = dipwm;
     this.dibackground = dibackground;
     this.matrixIUPAC = calculateMatrixIUPAC();
+    this.bestSuffixScores = calculateBestSuffixScores();
   }
 
   // Extract merging scheme
@@ -47,6 +52,18 @@ public class DiPWMSequenceScoring implements ScoreStatistics, SequenceScoringMod
     return result;
   }
 
+  private double[] calculateBestSuffixScores() {
+    double[] result = new double[matrixIUPAC.length + 1];
+    for (int posIndex = matrixIUPAC.length - 1; posIndex >= 0; --posIndex) {
+      double best = Double.NEGATIVE_INFINITY;
+      for (double score: matrixIUPAC[posIndex]) {
+        best = Math.max(best, score);
+      }
+      result[posIndex] = result[posIndex + 1] + best;
+    }
+    return result;
+  }
+
   @Override
   public int length() {
     return dipwm.length(); // It is model length, not matrix length
@@ -67,15 +84,61 @@ public class DiPWMSequenceScoring implements ScoreStatistics, SequenceScoringMod
       seq = word.revcompSequence;
       startPos = word.length() - (position + length());
     }
+    return scoreEncodedWindow(seq, startPos);
+  }
 
+  @Override
+  public int encodedWindowLength() {
+    return matrixIUPAC.length;
+  }
+
+  @Override
+  public double scoreEncodedWindow(byte[] codes, int offset) {
     double sum = 0.0;
     for (int pos_index = 0; pos_index < matrixIUPAC.length; ++pos_index) {
-      byte letter = seq[startPos + pos_index];
-      sum += matrixIUPAC[pos_index][letter];
+      sum += matrixIUPAC[pos_index][codes[offset + pos_index]];
     }
     return sum;
   }
 
+  @Override
+  public double scoreEncodedWindowIfAbove(byte[] codes, int offset, double threshold) {
+    double sum = 0.0;
+    int pos_index = 0;
+    while (pos_index < matrixIUPAC.length) {
+      int blockEnd = Math.min(pos_index + COLUMNS_PER_BOUND_CHECK, matrixIUPAC.length);
+      for (; pos_index < blockEnd; ++pos_index) {
+        sum += matrixIUPAC[pos_index][codes[offset + pos_index]];
+      }
+      double upperBound = sum + bestSuffixScores[pos_index];
+      if (upperBound < threshold) {
+        return upperBound;
+      }
+    }
+    return sum;
+  }
+
+  @Override
+  public void scoreEncodedWindows(byte[] codes, int offset, int numberOfWindows, double[] scores) {
+    Arrays.fill(scores, 0, numberOfWindows, 0.0);
+    for (int pos_index = 0; pos_index < matrixIUPAC.length; ++pos_index) {
+      double[] column = matrixIUPAC[pos_index];
+      int shift = offset + pos_index;
+      for (int window = 0; window < numberOfWindows; ++window) {
+        scores[window] += column[codes[shift + window]];
+      }
+    }
+  }
+
+  @Override
+  public double encodedWindowScoreDelta(byte[] codes, int offset, int baseOffset, int fromColumn, int toColumn) {
+    double delta = 0.0;
+    for (int pos_index = fromColumn; pos_index < toColumn; ++pos_index) {
+      delta += matrixIUPAC[pos_index][codes[offset + pos_index]] - matrixIUPAC[pos_index][codes[baseOffset + pos_index]];
+    }
+    return delta;
+  }
+
   @Override
   public double score_mean() {
     double result = 0.0;
@@ -6,16 +6,21 @@ import ru.autosome.commons.motifModel.ScoreStatistics;
 import ru.autosome.commons.motifModel.mono.PWM;
 import ru.autosome.perfectosape.model.encoded.mono.SequenceMonoEncoded;
 
+import java.util.Arrays;
+
 public class PWMSequenceScoring implements ScoreStatistics, SequenceScoringModel<SequenceMonoEncoded> {
   private final PWM pwm;
   private final BackgroundModel background;
   private final double[][] matrixIUPAC;
+  private static final int COLUMNS_PER_BOUND_CHECK = 8;
+  private final double[] bestSuffixScores; // best score of matrix columns starting from given one
   private final int length;
 
   public PWMSequenceScoring(PWM pwm, BackgroundModel background) {
     this.pwm = pwm;
     this.background = background;
     this.matrixIUPAC = calculateMatrixIUPAC();
+    this.bestSuffixScores = calculateBestSuffixScores();
     this.length = pwm.length();
   }
 
@@ -29,6 +34,18 @@ public class PWMSequenceScoring implements ScoreStatistics, SequenceScoringModel
     return result;
   }
 
+  private double[] calculateBestSuffixScores() {
+    double[] result = new double[matrixIUPAC.length + 1];
+    for (int posIndex = matrixIUPAC.length - 1; posIndex >= 0; --posIndex) {
+      double best = Double.NEGATIVE_INFINITY;
+      for (double score: matrixIUPAC[posIndex]) {
+        best = Math.max(best, score);
+      }
+      result[posIndex] = result[posIndex + 1] + best;
+    }
+    return result;
+  }
+
   @Override
   public int length() {
     return this.length;
@@ -50,15 +67,64 @@ public class PWMSequenceScoring implements ScoreStatistics, SequenceScoringModel
       seq = word.revcompSequence;
       startPos = seq.length - (position + length());
     }
+    return scoreEncodedWindow(seq, startPos);
+  }
+
+  @Override
+  public int encodedWindowLength() {
+    return length;
+  }
+
+  @Override
+  public double scoreEncodedWindow(byte[] codes, int offset) {
+    double sum = 0.0;
+    for (int pos_index = 0; pos_index < length; ++pos_index) {
+      sum += matrixIUPAC[pos_index][codes[offset + pos_index]];
+    }
+    return sum;
+  }
 
+  @Override
+  public double scoreEncodedWindowIfAbove(byte[] codes, int offset, double threshold) {
     double sum = 0.0;
-    for (int pos_index = 0; pos_index < length(); ++pos_index) {
-      byte letter = seq[startPos + pos_index];
-      sum += matrixIUPAC[pos_index][letter];
+    int pos_index = 0;
+    // bound is checked once per several columns: branching at each column costs more than it saves
+    while (pos_index < length) {
+      int blockEnd = Math.min(pos_index + COLUMNS_PER_BOUND_CHECK, length);
+      for (; pos_index < blockEnd; ++pos_index) {
+        sum += matrixIUPAC[pos_index][codes[offset + pos_index]];
+      }
+      double upperBound = sum + bestSuffixScores[pos_index];
+      if (upperBound < threshold) {
+        return upperBound;
+      }
     }
     return sum;
   }
 
+  // Scores are accumulated column by column: inner loop runs over neighbouring windows
+  // with a single matrix column, which is much more cache- and pipeline-friendly than scoring window by window
+  @Override
+  public void scoreEncodedWindows(byte[] codes, int offset, int numberOfWindows, double[] scores) {
+    Arrays.fill(scores, 0, numberOfWindows, 0.0);
+    for (int pos_index = 0; pos_index < length; ++pos_index) {
+      double[] column = matrixIUPAC[pos_index];
+      int shift = offset + pos_index;
+      for (int window = 0; window < numberOfWindows; ++window) {
+        scores[window] += column[codes[shift + window]];
+      }
+    }
+  }
+
+  @Override
+  public double encodedWindowScoreDelta(byte[] codes, int offset, int baseOffset, int fromColumn, int toColumn) {
+    double delta = 0.0;
+    for (int pos_index = fromColumn; pos_index < toColumn; ++pos_index) {
+      delta += matrixIUPAC[pos_index][codes[offset + pos_index]] - matrixIUPAC[pos_index][codes[baseOffset + pos_index]];
+    }
+    return delta;
+  }
+
   @Override
   public double score_mean() {
     double result = 0.0;
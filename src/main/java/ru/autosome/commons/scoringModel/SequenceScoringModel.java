@@ -6,4 +6,20 @@ import ru.autosome.commons.motifModel.HasLength;
 public interface SequenceScoringModel<SequenceType> extends HasLength {
   double score(SequenceType word);
   double score(SequenceType word, Orientation orientation, int position);
+
+  // Number of symbol codes covered by a window (number of matrix columns)
+  int encodedWindowLength();
+  // Score of a window starting at given offset of an array of symbol codes
+  // (e.g. of an arena where many encoded sequences are packed together)
+  double scoreEncodedWindow(byte[] codes, int offset);
+  // The same score if it's not less than threshold. Otherwise summation can stop as soon as
+  // the best possible score of the rest of the window can't bring partial score up to threshold;
+  // in that case an upper bound of the score (less than threshold) is returned.
+  double scoreEncodedWindowIfAbove(byte[] codes, int offset, double threshold);
+  // Scores of consecutive windows starting at offset, offset + 1, ..., offset + numberOfWindows - 1
+  // are stored into scores[0], ..., scores[numberOfWindows - 1] (e.g. for scanning a long sequence).
+  void scoreEncodedWindows(byte[] codes, int offset, int numberOfWindows, double[] scores);
+  // Difference of scores of two windows (starting at offset and at baseOffset of an array of codes)
+  // which differ only in codes of matrix columns [fromColumn; toColumn); other columns aren't looked at.
+  double encodedWindowScoreDelta(byte[] codes, int offset, int baseOffset, int fromColumn, int toColumn);
 }
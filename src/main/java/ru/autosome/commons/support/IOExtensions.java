@@ -2,18 +2,66 @@ package ru.autosome.commons.support;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 public class IOExtensions {
-  public static void extract_doubles_from_input_stream(InputStream inputStream, List<Double> thresholds_list) throws IOException {
-    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-    String line;
-    while ((line = reader.readLine()) != null){
-      for (String token: line.split("\\s+")) {
-        thresholds_list.add(Double.valueOf(token));
+  // Reads whitespace-separated numbers portion by portion (lines are tokenized in place).
+  // A portion ends after maxChunkSize numbers or when no more input is available at the moment,
+  // so that it can be processed before the rest of a stream arrives. Empty portions are never returned.
+  public static Iterator<List<Double>> double_chunks(BufferedReader reader, int maxChunkSize) {
+    return new Iterator<List<Double>>() {
+      private String line = ""; // current line and position of its unread part
+      private int pos = 0;
+      private List<Double> chunk = null; // next portion if it's already read
+
+      @Override
+      public boolean hasNext() {
+        if (chunk == null) {
+          try {
+            chunk = readChunk();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+        return !chunk.isEmpty();
+      }
+
+      @Override
+      public List<Double> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        List<Double> result = chunk;
+        chunk = null;
+        return result;
+      }
+
+      private List<Double> readChunk() throws IOException {
+        List<Double> result = new ArrayList<>();
+        while (result.size() < maxChunkSize) {
+          pos = StringExtensions.skipWhitespace(line, pos);
+          if (pos < line.length()) {
+            int tokenEnd = StringExtensions.skipToken(line, pos);
+            result.add(FastDoubleParser.parseDouble(line, pos, tokenEnd));
+            pos = tokenEnd;
+          } else {
+            if (!result.isEmpty() && !reader.ready()) {
+              break; // don't wait for the rest of input
+            }
+            line = reader.readLine();
+            pos = 0;
+            if (line == null) {
+              line = "";
+              break;
+            }
+          }
+        }
+        return result;
       }
-    }
+    };
   }
 }
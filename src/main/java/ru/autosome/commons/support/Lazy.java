@@ -0,0 +1,43 @@
+package ru.autosome.commons.support;
+
+import java.util.function.Supplier;
+
+// Value which is calculated on first request, only once even if it's requested by several threads simultaneously
+public class Lazy<T> implements Supplier<T> {
+  private Supplier<? extends T> supplier; // released after calculation
+  private volatile boolean evaluated = false;
+  private T value;
+
+  public Lazy(Supplier<? extends T> supplier) {
+    this.supplier = supplier;
+  }
+
+  public static <T> Lazy<T> of(Supplier<? extends T> supplier) {
+    return new Lazy<>(supplier);
+  }
+
+  public static <T> Lazy<T> evaluated(T value) {
+    Lazy<T> result = new Lazy<>(null);
+    result.value = value;
+    result.evaluated = true;
+    return result;
+  }
+
+  @Override
+  public T get() {
+    if (!evaluated) {
+      synchronized (this) {
+        if (!evaluated) {
+          value = supplier.get();
+          evaluated = true;
+          supplier = null;
+        }
+      }
+    }
+    return value;
+  }
+
+  public boolean isEvaluated() {
+    return evaluated;
+  }
+}
@@ -0,0 +1,140 @@
+package ru.autosome.commons.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+// Objects which can be reused by subsequent runs of tools in the same JVM (loaded collections, precalculated thresholds etc).
+// Disabled by default, so that one-shot runs don't keep anything; enabled by server mode.
+// Keys are compared by equals, so a key should include everything the object depends on
+// (file-based keys are made with fileKey, so that changed files are loaded again).
+// Keys are passed as suppliers so that nothing is made for a key (e.g. files aren't stat-ed) when cache is disabled.
+// Each object is created once even if it's requested by several threads simultaneously.
+// Entries made for a previous state of a file are dropped as soon as the changed file is requested;
+// besides that, the least recently used entries are dropped when the number of entries exceeds capacity.
+public class SharedCache {
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  private static volatile boolean enabled = false;
+  private static volatile int capacity = DEFAULT_CAPACITY;
+  // access-ordered; guarded by itself
+  private static final Map<Object, Future<Object>> cache = new LinkedHashMap<Object, Future<Object>>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Object, Future<Object>> eldest) {
+      return size() > capacity;
+    }
+  };
+  // last seen state of each file used in keys; guarded by cache
+  private static final Map<String, List<Object>> fileStates = new HashMap<>();
+
+  public static void enable() {
+    enabled = true;
+  }
+
+  public static void setCapacity(int numberOfEntries) {
+    if (numberOfEntries <= 0) {
+      throw new IllegalArgumentException("Cache capacity should be positive");
+    }
+    capacity = numberOfEntries;
+  }
+
+  public static int getCapacity() {
+    return capacity;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void clear() {
+    synchronized (cache) {
+      cache.clear();
+      fileStates.clear();
+    }
+  }
+
+  public static int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public interface Loader<T, E extends Exception> {
+    T load() throws E;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T, E extends Exception> T get(Supplier<?> keySupplier, Loader<T, E> loader) throws E {
+    if (!enabled) {
+      return loader.load();
+    }
+    Object key = keySupplier.get();
+    FutureTask<Object> task = new FutureTask<>(loader::load);
+    Future<Object> future;
+    synchronized (cache) {
+      future = cache.get(key); // marks entry as recently used
+      if (future == null) {
+        cache.put(key, task);
+      }
+    }
+    if (future == null) {
+      future = task;
+      task.run();
+    }
+    try {
+      return (T) future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      synchronized (cache) {
+        cache.remove(key, future); // failures aren't cached
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw (E) e.getCause(); // either a runtime exception or the one declared by loader
+    }
+  }
+
+  // Identifies file (or folder) together with its state.
+  // State of a folder is the latest modification time and the total size of its files
+  // (editing a file inside a folder doesn't change modification time of the folder itself).
+  public static List<Object> fileKey(File file) {
+    String path;
+    try {
+      path = file.getCanonicalPath();
+    } catch (IOException e) {
+      path = file.getAbsolutePath();
+    }
+    long lastModified = file.lastModified();
+    long size = file.length();
+    File[] folderFiles = file.listFiles();
+    if (folderFiles != null) {
+      size = folderFiles.length;
+      for (File folderFile: folderFiles) {
+        lastModified = Math.max(lastModified, folderFile.lastModified());
+        size += folderFile.length();
+      }
+    }
+    List<Object> state = Arrays.asList(path, lastModified, size);
+    if (enabled) {
+      forgetPreviousState(path, state);
+    }
+    return state;
+  }
+
+  // Entries whose keys include a previous state of the file can't be requested anymore
+  private static void forgetPreviousState(String path, List<Object> state) {
+    synchronized (cache) {
+      List<Object> previousState = fileStates.put(path, state);
+      if (previousState != null && !previousState.equals(state)) {
+        cache.keySet().removeIf(key -> (key instanceof List) && ((List<?>) key).contains(previousState));
+      }
+    }
+  }
+}
@@ -1,9 +1,13 @@
 package ru.autosome.commons.support;
 
+import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class StringExtensions {
+  private static final DecimalFormatSymbols formatSymbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+
   public static String join(List<?> array, String separator) {
     StringBuilder result = new StringBuilder();
     for (int i = 0; i < array.size(); ++i) {
@@ -19,6 +23,25 @@ public class StringExtensions {
     return (string.length() >= stringStart.length()) && string.subSequence(0, stringStart.length()).equals(stringStart);
   }
 
+  // Whitespace (as in regex \s) and tokens between whitespaces, for tokenizing lines in place
+  public static boolean isWhitespace(char letter) {
+    return letter == ' ' || letter == '\t' || letter == '\n' || letter == '\r' || letter == '\f' || letter == '\u000B';
+  }
+
+  public static int skipWhitespace(String line, int pos) {
+    while (pos < line.length() && isWhitespace(line.charAt(pos))) {
+      ++pos;
+    }
+    return pos;
+  }
+
+  public static int skipToken(String line, int pos) {
+    while (pos < line.length() && !isWhitespace(line.charAt(pos))) {
+      ++pos;
+    }
+    return pos;
+  }
+
   public static String glueSections(String... sections) {
     List<String> nonEmptySections = new ArrayList<>();
     for (String section : sections) {
@@ -28,4 +51,124 @@ public class StringExtensions {
     }
     return join(nonEmptySections, "\n");
   }
+
+  // Appends the same text as String.format("%.<precision>e", value) but much faster.
+  // Mantissa is rounded arithmetically unless the value is too close to a rounding boundary.
+  // Then decimal digits of a double (the ones Double.toString gives) are rounded half-up just as Formatter does.
+  // Cases which are rare for P-values (exact ties, non-positive and infinite values) are passed to Formatter.
+  public static void appendScientific(StringBuilder builder, double value, int precision) {
+    if (!(value > 0) || Double.isInfinite(value) || formatSymbols.getZeroDigit() != '0') {
+      builder.append(String.format("%." + precision + "e", value));
+      return;
+    }
+    if (precision <= 8 && value > 1e-290 && value < 1e290) {
+      long upperMantissa = LONG_POWERS_OF_TEN[precision + 1];
+      int exponent = (int)Math.floor(Math.log10(value));
+      double scaled = value * Math.pow(10, precision - exponent);
+      if (scaled >= upperMantissa) {
+        ++exponent;
+        scaled = value * Math.pow(10, precision - exponent);
+      } else if (scaled < upperMantissa / 10) {
+        --exponent;
+        scaled = value * Math.pow(10, precision - exponent);
+      }
+      double truncated = Math.floor(scaled);
+      double fraction = scaled - truncated;
+      // errors of scaling are far less than the margin
+      if (Math.abs(fraction - 0.5) > 1e-6) {
+        long mantissa = (long)truncated + ((fraction > 0.5) ? 1 : 0);
+        if (mantissa == upperMantissa) {
+          mantissa /= 10;
+          ++exponent;
+        }
+        appendScientific(builder, mantissa, exponent, precision);
+        return;
+      }
+    }
+    appendScientificByDigits(builder, value, precision);
+  }
+
+  private static final long[] LONG_POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+
+  // mantissa has exactly precision + 1 digits
+  private static void appendScientific(StringBuilder builder, long mantissa, int exponent, int precision) {
+    String digits = Long.toString(mantissa);
+    builder.append(digits.charAt(0));
+    if (precision > 0) {
+      builder.append(formatSymbols.getDecimalSeparator()).append(digits, 1, digits.length());
+    }
+    appendExponent(builder, exponent);
+  }
+
+  private static void appendExponent(StringBuilder builder, int exponent) {
+    builder.append('e').append(exponent < 0 ? '-' : '+');
+    int absExponent = Math.abs(exponent);
+    if (absExponent < 10) {
+      builder.append('0');
+    }
+    builder.append(absExponent);
+  }
+
+  private static void appendScientificByDigits(StringBuilder builder, double value, int precision) {
+    String repr = Double.toString(value);
+    char[] digits = new char[repr.length()]; // significant digits: value = 0.<digits> * 10^exponent
+    int numDigits = 0;
+    int exponent = 0;
+    int pointPos = repr.indexOf('.');
+    int pos = 0;
+    for (; pos < repr.length() && repr.charAt(pos) != 'E'; ++pos) {
+      char letter = repr.charAt(pos);
+      if (letter == '.') {
+        continue;
+      }
+      if (numDigits == 0 && letter == '0') { // leading zero
+        if (pointPos < pos) {
+          --exponent;
+        }
+        continue;
+      }
+      digits[numDigits++] = letter;
+      if (pointPos > pos) {
+        ++exponent;
+      }
+    }
+    if (pos < repr.length()) {
+      exponent += Integer.parseInt(repr.substring(pos + 1));
+    }
+    while (numDigits > 0 && digits[numDigits - 1] == '0') {
+      --numDigits;
+    }
+
+    int numSignificant = precision + 1;
+    char[] rounded = new char[numSignificant];
+    for (int i = 0; i < numSignificant; ++i) {
+      rounded[i] = (i < numDigits) ? digits[i] : '0';
+    }
+    if (numDigits > numSignificant) {
+      char nextDigit = digits[numSignificant];
+      if (nextDigit == '5' && numDigits == numSignificant + 1) {
+        builder.append(String.format("%." + precision + "e", value));
+        return;
+      }
+      if (nextDigit >= '5') {
+        int i = numSignificant - 1;
+        while (i >= 0 && rounded[i] == '9') {
+          rounded[i] = '0';
+          --i;
+        }
+        if (i >= 0) {
+          ++rounded[i];
+        } else {
+          rounded[0] = '1';
+          ++exponent;
+        }
+      }
+    }
+
+    builder.append(rounded[0]);
+    if (precision > 0) {
+      builder.append(formatSymbols.getDecimalSeparator()).append(rounded, 1, precision);
+    }
+    appendExponent(builder, exponent - 1);
+  }
 }
@@ -0,0 +1,61 @@
+package ru.autosome.macroape;
+
+import ru.autosome.commons.backgroundModel.mono.Background;
+import ru.autosome.commons.backgroundModel.mono.BackgroundModel;
+import ru.autosome.commons.backgroundModel.mono.WordwiseBackground;
+import ru.autosome.commons.importer.MotifImporter;
+import ru.autosome.commons.importer.PWMImporter;
+import ru.autosome.commons.motifModel.mono.PWM;
+import ru.autosome.macroape.calculation.mono.AlignedModelIntersection;
+import ru.autosome.macroape.model.PairAligned;
+
+import java.util.function.Function;
+
+public class BuildCollectionIndex extends ru.autosome.macroape.cli.generalized.BuildCollectionIndex<PWM, BackgroundModel> {
+  @Override
+  protected String DOC_background_option() {
+    return "ACGT - 4 numbers, comma-delimited(spaces not allowed), sum should be equal to 1, like 0.25,0.24,0.26,0.25";
+  }
+  @Override
+  protected String DOC_run_string() {
+    return "java ru.autosome.macroape.BuildCollectionIndex";
+  }
+
+  @Override
+  protected void initialize_default_background() {
+    background = new WordwiseBackground();
+  }
+
+  @Override
+  protected BackgroundModel extract_background(String str) {
+    return Background.fromString(str);
+  }
+
+  private static BuildCollectionIndex from_arglist(String[] args) {
+    BuildCollectionIndex result = new BuildCollectionIndex();
+    result.setup_from_arglist(args);
+    return result;
+  }
+
+  @Override
+  protected MotifImporter<PWM> collectionImporter() {
+    return new PWMImporter(background, dataModel, effectiveCount, transpose, pseudocount);
+  }
+
+  @Override
+  protected Function<PairAligned<PWM>, AlignedModelIntersection> calc_alignment() {
+    return (PairAligned<PWM> alignment)-> new AlignedModelIntersection(alignment, background);
+  }
+
+  public static void main(String[] args) {
+    try {
+      BuildCollectionIndex cli = BuildCollectionIndex.from_arglist(args);
+      cli.process();
+    } catch (Exception err) {
+      System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
+      err.printStackTrace();
+      System.err.println("\n--------------------------------------\nUse --help option for help\n\n" + new BuildCollectionIndex().documentString());
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package ru.autosome.macroape;
+
+import ru.autosome.commons.backgroundModel.mono.Background;
+import ru.autosome.commons.backgroundModel.mono.BackgroundModel;
+import ru.autosome.commons.backgroundModel.mono.WordwiseBackground;
+import ru.autosome.commons.importer.MotifImporter;
+import ru.autosome.commons.importer.PWMImporter;
+import ru.autosome.commons.motifModel.mono.PWM;
+
+public class CompileCollection extends ru.autosome.macroape.cli.generalized.CompileCollection<PWM, BackgroundModel> {
+  @Override
+  protected String DOC_background_option() {
+    return "ACGT - 4 numbers, comma-delimited(spaces not allowed), sum should be equal to 1, like 0.25,0.24,0.26,0.25";
+  }
+  @Override
+  protected String DOC_run_string() {
+    return "java ru.autosome.macroape.CompileCollection";
+  }
+
+  @Override
+  protected void initialize_default_background() {
+    background = new WordwiseBackground();
+  }
+
+  @Override
+  protected BackgroundModel extract_background(String str) {
+    return Background.fromString(str);
+  }
+
+  @Override
+  protected MotifImporter<PWM> motifImporter() {
+    return new PWMImporter(background, dataModel, effectiveCount, transpose, pseudocount);
+  }
+
+  @Override
+  protected int compiledAlphabetSize() {
+    return PWM.ALPHABET_SIZE;
+  }
+
+  private static CompileCollection from_arglist(String[] args) {
+    CompileCollection result = new CompileCollection();
+    result.setup_from_arglist(args);
+    return result;
+  }
+
+  public static void main(String[] args) {
+    try {
+      CompileCollection cli = CompileCollection.from_arglist(args);
+      cli.process();
+    } catch (Exception err) {
+      System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
+      err.printStackTrace();
+      System.err.println("\n--------------------------------------\nUse --help option for help\n\n" + new CompileCollection().documentString());
+      System.exit(1);
+    }
+  }
+}
@@ -56,14 +56,18 @@ public class EvalSimilarity extends ru.autosome.macroape.cli.generalized.EvalSim
     return (PairAligned<PWM> alignment) -> new AlignedModelIntersection(alignment, background);
   }
 
+  public static void run(String[] args) throws Exception {
+    EvalSimilarity cli = EvalSimilarity.from_arglist(args);
+
+    ComparisonSimilarityInfo result = cli.results();
+    ReportLayout<ComparisonSimilarityInfo> layout = cli.report_table_layout();
+    Reporter<ComparisonSimilarityInfo> reporter = new TextReporter<>();
+    System.out.println(reporter.report(result, layout));
+  }
+
   public static void main(String[] args) {
     try {
-      EvalSimilarity cli = EvalSimilarity.from_arglist(args);
-
-      ComparisonSimilarityInfo result = cli.results();
-      ReportLayout<ComparisonSimilarityInfo> layout = cli.report_table_layout();
-      Reporter<ComparisonSimilarityInfo> reporter = new TextReporter<>();
-      System.out.println(reporter.report(result, layout));
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
@@ -3,15 +3,13 @@ package ru.autosome.macroape;
 import ru.autosome.commons.backgroundModel.mono.Background;
 import ru.autosome.commons.backgroundModel.mono.BackgroundModel;
 import ru.autosome.commons.backgroundModel.mono.WordwiseBackground;
+import ru.autosome.commons.importer.MotifImporter;
 import ru.autosome.commons.importer.PWMImporter;
-import ru.autosome.commons.model.Named;
 import ru.autosome.commons.motifModel.mono.PWM;
 import ru.autosome.macroape.calculation.mono.AlignedModelIntersection;
 import ru.autosome.macroape.model.PairAligned;
-import ru.autosome.macroape.model.ScanningSimilarityInfo;
 
 import java.io.FileNotFoundException;
-import java.util.List;
 import java.util.function.Function;
 
 public class ScanCollection extends ru.autosome.macroape.cli.generalized.ScanCollection<PWM, BackgroundModel> {
@@ -41,14 +39,13 @@ public class ScanCollection extends ru.autosome.macroape.cli.generalized.ScanCol
     return result;
   }
 
-  protected List<Named<PWM>> loadMotifCollection() {
-    PWMImporter importer = new PWMImporter(background, collectionDataModel, collectionEffectiveCount, collectionTranspose, collectionPseudocount);
-    return importer.loadMotifCollectionWithNames(pathToCollectionOfPWMs);
+  protected MotifImporter<PWM> collectionImporter() {
+    return new PWMImporter(background, collectionDataModel, collectionEffectiveCount, collectionTranspose, collectionPseudocount);
   }
 
-  protected PWM loadQueryMotif() {
-    PWMImporter importer = new PWMImporter(background, queryDataModel, queryEffectiveCount, queryTranspose, queryPseudocount);
-    return importer.loadMotif(queryPMFilename);
+  @Override
+  protected MotifImporter<PWM> queryImporter() {
+    return new PWMImporter(background, queryDataModel, queryEffectiveCount, queryTranspose, queryPseudocount);
   }
 
 
@@ -57,11 +54,14 @@ public class ScanCollection extends ru.autosome.macroape.cli.generalized.ScanCol
     return (PairAligned<PWM> alignment) -> new AlignedModelIntersection(alignment, background);
   }
 
+  public static void run(String[] args) throws Exception {
+    ScanCollection calculation = ScanCollection.from_arglist(args);
+    calculation.process_and_report();
+  }
+
   public static void main(String[] args) {
     try {
-      ScanCollection calculation = ScanCollection.from_arglist(args);
-      List<ScanningSimilarityInfo> infos = calculation.process();
-      System.out.println(calculation.report(infos));
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
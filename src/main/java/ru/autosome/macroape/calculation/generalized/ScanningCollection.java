@@ -13,13 +13,17 @@ import ru.autosome.commons.motifModel.Alignable;
 import ru.autosome.commons.motifModel.Discretable;
 import ru.autosome.commons.motifModel.ScoreDistribution;
 import ru.autosome.macroape.model.ComparisonSimilarityInfo;
+import ru.autosome.macroape.model.MotifIndex;
 import ru.autosome.macroape.model.PairAligned;
 import ru.autosome.macroape.model.ScanningSimilarityInfo;
 import ru.autosome.macroape.model.ThresholdEvaluator;
 
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleSupplier;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class ScanningCollection<ModelType extends Alignable<ModelType> & Discretable<ModelType> & ScoreDistribution<BackgroundType>,
@@ -35,6 +39,10 @@ public class ScanningCollection<ModelType extends Alignable<ModelType> & Discret
   public BoundaryType pvalueBoundaryType;
   public Double similarityCutoff;
   public Double preciseRecalculationCutoff; // null means that no recalculation will be performed
+  public Integer topCount; // null means that all motifs passing similarity cutoff are reported
+  public MotifIndex motifIndex; // null means that all motifs are compared with query
+  public double indexSlack;
+  public int numberOfThreads = 1;
   public final Function<PairAligned<ModelType>, ? extends AlignedModelIntersection> calculatorOfAligned;
 
   public ScanningCollection(List<ThresholdEvaluator<ModelType>> thresholdEvaluators, ModelType queryPWM, Function<PairAligned<ModelType>, ? extends AlignedModelIntersection> calculatorOfAligned) {
@@ -43,37 +51,84 @@ public class ScanningCollection<ModelType extends Alignable<ModelType> & Discret
     this.calculatorOfAligned = calculatorOfAligned;
   }
 
+  // Query discretized once per scan; models are never modified, so they are shared among threads
+  private ModelType roughDiscretedQuery, preciseDiscretedQuery;
+
+  private ModelType discretedQuery(Discretizer discretizer) {
+    if (discretizer == roughDiscretizer && roughDiscretedQuery != null) {
+      return roughDiscretedQuery;
+    } else if (discretizer == preciseDiscretizer && preciseDiscretedQuery != null) {
+      return preciseDiscretedQuery;
+    } else {
+      return queryPWM.discrete(discretizer);
+    }
+  }
+
   public ComparisonSimilarityInfo comparisonInfo(FoundedPvalueInfo countByThresholdQuery,
                                                  ModelType pwmKnown,
                                                  CanFindThreshold thresholdCalculatorKnown,
                                                  Discretizer discretizer) {
-    CompareModels<ModelType> calc;
-    calc = new CompareModels<>(queryPWM, pwmKnown, background.volume(), discretizer, calculatorOfAligned);
+    return comparisonInfo(countByThresholdQuery, pwmKnown, knownPvalueInfo(thresholdCalculatorKnown), discretizer);
+  }
 
+  public ComparisonSimilarityInfo comparisonInfo(FoundedPvalueInfo countByThresholdQuery,
+                                                 ModelType pwmKnown,
+                                                 FoundedPvalueInfo countByThresholdKnown,
+                                                 Discretizer discretizer) {
+    CompareModelsExact<ModelType> calc;
+    calc = new CompareModelsExact<>(discretedQuery(discretizer), pwmKnown.discrete(discretizer), background.volume(), calculatorOfAligned);
+    return calc.jaccard(countByThresholdQuery.upscale(discretizer), countByThresholdKnown.upscale(discretizer));
+  }
+
+  FoundedPvalueInfo knownPvalueInfo(CanFindThreshold thresholdCalculatorKnown) {
     FoundedThresholdInfo knownInfo = thresholdCalculatorKnown.thresholdByPvalue(pvalue, pvalueBoundaryType);
-    FoundedPvalueInfo countByThresholdKnown = knownInfo.toFoundedPvalueInfo();
-    return calc.jaccard(countByThresholdQuery, countByThresholdKnown);
+    return knownInfo.toFoundedPvalueInfo();
   }
 
   public ScanningSimilarityInfo similarityInfo(FoundedPvalueInfo roughCountByThresholdQuery,
                                                FoundedPvalueInfo preciseCountByThresholdQuery,
                                                ThresholdEvaluator<ModelType> knownMotifEvaluator) {
+    return similarityInfo(roughCountByThresholdQuery, preciseCountByThresholdQuery, knownMotifEvaluator,
+                          knownPvalueInfo(knownMotifEvaluator.rough), null);
+  }
+
+  // roughCountByThresholdKnown should be given; preciseCountByThresholdKnown is calculated on demand if not given
+  ScanningSimilarityInfo similarityInfo(FoundedPvalueInfo roughCountByThresholdQuery,
+                                        FoundedPvalueInfo preciseCountByThresholdQuery,
+                                        ThresholdEvaluator<ModelType> knownMotifEvaluator,
+                                        FoundedPvalueInfo roughCountByThresholdKnown,
+                                        FoundedPvalueInfo preciseCountByThresholdKnown) {
+    ScanningSimilarityInfo info = unfilteredSimilarityInfo(roughCountByThresholdQuery, preciseCountByThresholdQuery,
+                                                           knownMotifEvaluator,
+                                                           roughCountByThresholdKnown, preciseCountByThresholdKnown);
+    return passesSimilarityCutoff(info) ? info : null;
+  }
+
+  boolean passesSimilarityCutoff(ScanningSimilarityInfo info) {
+    return similarityCutoff == null || info.similarity() >= similarityCutoff;
+  }
+
+  // similarity info which is not checked against similarity cutoff
+  ScanningSimilarityInfo unfilteredSimilarityInfo(FoundedPvalueInfo roughCountByThresholdQuery,
+                                                  FoundedPvalueInfo preciseCountByThresholdQuery,
+                                                  ThresholdEvaluator<ModelType> knownMotifEvaluator,
+                                                  FoundedPvalueInfo roughCountByThresholdKnown,
+                                                  FoundedPvalueInfo preciseCountByThresholdKnown) {
     ComparisonSimilarityInfo info;
     boolean precise = false;
 
-    info = comparisonInfo(roughCountByThresholdQuery, knownMotifEvaluator.pwm, knownMotifEvaluator.rough, roughDiscretizer);
+    info = comparisonInfo(roughCountByThresholdQuery, knownMotifEvaluator.pwm, roughCountByThresholdKnown, roughDiscretizer);
 
     if (preciseRecalculationCutoff != null &&
             info.similarity() >= preciseRecalculationCutoff &&
             knownMotifEvaluator.precise != null) {
-      info = comparisonInfo(preciseCountByThresholdQuery, knownMotifEvaluator.pwm, knownMotifEvaluator.precise, preciseDiscretizer);
+      if (preciseCountByThresholdKnown == null) {
+        preciseCountByThresholdKnown = knownPvalueInfo(knownMotifEvaluator.precise);
+      }
+      info = comparisonInfo(preciseCountByThresholdQuery, knownMotifEvaluator.pwm, preciseCountByThresholdKnown, preciseDiscretizer);
       precise = true;
     }
-    if (similarityCutoff == null || info.similarity() >= similarityCutoff) {
-      return new ScanningSimilarityInfo(knownMotifEvaluator.name, info, precise);
-    } else {
-      return null;
-    }
+    return new ScanningSimilarityInfo(knownMotifEvaluator.name, info, precise);
   }
 
   public Stream<ScanningSimilarityInfo> similarityInfos() {
@@ -86,12 +141,191 @@ public class ScanningCollection<ModelType extends Alignable<ModelType> & Discret
     FoundedPvalueInfo roughCountByThresholdQuery = roughQueryPvalueEvaluator.pvalueByThreshold(roughQueryThreshold);
     FoundedPvalueInfo preciseCountByThresholdQuery = preciseQueryPvalueEvaluator.pvalueByThreshold(preciseQueryThreshold);
 
+    roughDiscretedQuery = queryPWM.discrete(roughDiscretizer);
+    preciseDiscretedQuery = queryPWM.discrete(preciseDiscretizer);
+
+    if (motifIndex != null) {
+      List<ScanningSimilarityInfo> infos = indexedSimilarityInfos(roughCountByThresholdQuery, preciseCountByThresholdQuery);
+      if (topCount != null && infos.size() > topCount) {
+        infos.sort(Comparator.comparing(ScanningSimilarityInfo::similarity).reversed());
+        infos = infos.subList(0, topCount);
+      }
+      return infos.stream();
+    }
+
+    if (topCount != null) {
+      return topSimilarityInfos(roughCountByThresholdQuery, preciseCountByThresholdQuery, topCount).stream();
+    }
+
+    if (numberOfThreads > 1) {
+      return parallelSimilarityInfos(roughCountByThresholdQuery, preciseCountByThresholdQuery).stream();
+    }
+
     return thresholdEvaluators.stream()
         .map((ThresholdEvaluator<ModelType> knownMotifEvaluator)->
             similarityInfo(roughCountByThresholdQuery, preciseCountByThresholdQuery, knownMotifEvaluator))
         .filter(Objects::nonNull);
   }
 
+  // Motifs are compared in a dedicated pool of numberOfThreads workers.
+  // Results go in the same order as motifs in collection, so output doesn't depend on scheduling.
+  public List<ScanningSimilarityInfo> parallelSimilarityInfos(FoundedPvalueInfo roughCountByThresholdQuery,
+                                                              FoundedPvalueInfo preciseCountByThresholdQuery) {
+    ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+    try {
+      return pool.submit(() ->
+          thresholdEvaluators.parallelStream()
+              .map((ThresholdEvaluator<ModelType> knownMotifEvaluator)->
+                  similarityInfo(roughCountByThresholdQuery, preciseCountByThresholdQuery, knownMotifEvaluator))
+              .filter(Objects::nonNull)
+              .collect(Collectors.toList())
+      ).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // Jaccard index can't exceed ratio of sizes of recognized word sets: |A & B| / |A | B| <= min(|A|,|B|) / max(|A|,|B|).
+  // For any alignment both sets are counted over the same vocabulary, so the ratio of P-values gives that bound
+  // without running the dynamic programming on alignments.
+  static double similarityUpperBound(FoundedPvalueInfo queryInfo, FoundedPvalueInfo knownInfo) {
+    double minPvalue = Math.min(queryInfo.pvalue, knownInfo.pvalue);
+    double maxPvalue = Math.max(queryInfo.pvalue, knownInfo.pvalue);
+    if (maxPvalue == 0) {
+      return 0.0;
+    }
+    return minPvalue / maxPvalue;
+  }
+
+  private class Candidate {
+    final ThresholdEvaluator<ModelType> evaluator;
+    final FoundedPvalueInfo roughInfo;
+    final double upperBound; // bound of rough similarity
+    ComparisonSimilarityInfo roughComparison;
+
+    Candidate(ThresholdEvaluator<ModelType> evaluator, FoundedPvalueInfo roughCountByThresholdQuery) {
+      this.evaluator = evaluator;
+      this.roughInfo = knownPvalueInfo(evaluator.rough);
+      this.upperBound = similarityUpperBound(roughCountByThresholdQuery, roughInfo);
+    }
+
+    Double roughSimilarity() {
+      return roughComparison.similarity();
+    }
+  }
+
+  // Best `count` motifs. Top is selected by rough similarity: motifs are evaluated in order of decreasing
+  // similarity upper bound; scanning stops when no remaining motif can beat the worst of retained ones.
+  // Only motifs which got into the rough top are recalculated in precise mode (so precise thresholds
+  // are calculated for them only) and then checked against similarity cutoff.
+  public List<ScanningSimilarityInfo> topSimilarityInfos(FoundedPvalueInfo roughCountByThresholdQuery,
+                                                         FoundedPvalueInfo preciseCountByThresholdQuery,
+                                                         int count) {
+    List<Candidate> candidates = new ArrayList<>(thresholdEvaluators.size());
+    for (ThresholdEvaluator<ModelType> evaluator: thresholdEvaluators) {
+      candidates.add(new Candidate(evaluator, roughCountByThresholdQuery));
+    }
+    candidates.sort(Comparator.comparingDouble((Candidate candidate) -> candidate.upperBound).reversed());
+
+    PriorityQueue<Candidate> bestCandidates = new PriorityQueue<>(Math.max(count, 1), Comparator.comparing(Candidate::roughSimilarity));
+    for (Candidate candidate: candidates) {
+      if (similarityCutoff != null && candidate.upperBound < similarityCutoff) {
+        break;
+      }
+      if (bestCandidates.size() >= count && candidate.upperBound <= bestCandidates.peek().roughSimilarity()) {
+        break;
+      }
+      candidate.roughComparison = comparisonInfo(roughCountByThresholdQuery, candidate.evaluator.pwm, candidate.roughInfo, roughDiscretizer);
+      if (candidate.roughSimilarity() != null) {
+        bestCandidates.add(candidate);
+        if (bestCandidates.size() > count) {
+          bestCandidates.poll();
+        }
+      }
+    }
+
+    List<ScanningSimilarityInfo> result = new ArrayList<>(bestCandidates.size());
+    for (Candidate candidate: bestCandidates) {
+      ComparisonSimilarityInfo info = candidate.roughComparison;
+      boolean precise = false;
+      if (preciseRecalculationCutoff != null &&
+              info.similarity() >= preciseRecalculationCutoff &&
+              candidate.evaluator.precise != null) {
+        FoundedPvalueInfo preciseInfo = knownPvalueInfo(candidate.evaluator.precise);
+        info = comparisonInfo(preciseCountByThresholdQuery, candidate.evaluator.pwm, preciseInfo, preciseDiscretizer);
+        precise = true;
+      }
+      ScanningSimilarityInfo similarityInfo = new ScanningSimilarityInfo(candidate.evaluator.name, info, precise);
+      if (similarityInfo.similarity() != null && passesSimilarityCutoff(similarityInfo)) {
+        result.add(similarityInfo);
+      }
+    }
+    return result;
+  }
+
+  // Exactly evaluates motifs shortlisted by the index (motifs visited while searching for
+  // motifs within distance of 1 - similarityCutoff from query). Motifs which are absent in the index are always evaluated.
+  // When only top motifs are requested, search radius shrinks to 1 - (similarity of the worst of top motifs found so far).
+  public List<ScanningSimilarityInfo> indexedSimilarityInfos(FoundedPvalueInfo roughCountByThresholdQuery,
+                                                             FoundedPvalueInfo preciseCountByThresholdQuery) {
+    Map<String, ThresholdEvaluator<ModelType>> evaluatorsByName = new HashMap<>();
+    for (ThresholdEvaluator<ModelType> evaluator: thresholdEvaluators) {
+      evaluatorsByName.put(evaluator.name, evaluator);
+    }
+
+    Map<String, ScanningSimilarityInfo> calculatedInfos = new HashMap<>();
+    double radius = (similarityCutoff == null) ? 1.0 : 1.0 - similarityCutoff;
+    PriorityQueue<Double> topSimilarities = new PriorityQueue<>();
+    DoubleSupplier currentRadius = () -> {
+      if (topCount == null || topSimilarities.size() < topCount) {
+        return radius;
+      }
+      return Math.min(radius, 1.0 - topSimilarities.peek());
+    };
+    motifIndex.search((String name) -> {
+      ThresholdEvaluator<ModelType> evaluator = evaluatorsByName.get(name);
+      if (evaluator == null) { // motif was removed from collection after index had been built
+        return 1.0;
+      }
+      ScanningSimilarityInfo info = unfilteredSimilarityInfo(roughCountByThresholdQuery, preciseCountByThresholdQuery,
+                                                             evaluator, knownPvalueInfo(evaluator.rough), null);
+      calculatedInfos.put(name, info);
+      if (topCount != null && info.similarity() != null && passesSimilarityCutoff(info)) {
+        topSimilarities.add(info.similarity());
+        if (topSimilarities.size() > topCount) {
+          topSimilarities.poll();
+        }
+      }
+      Double distance = info.distance();
+      return (distance == null) ? 1.0 : distance;
+    }, currentRadius, indexSlack);
+
+    Set<String> indexedNames = motifIndex.names();
+    List<ScanningSimilarityInfo> result = new ArrayList<>();
+    for (ThresholdEvaluator<ModelType> evaluator: thresholdEvaluators) {
+      ScanningSimilarityInfo info = calculatedInfos.get(evaluator.name);
+      if (info == null) {
+        if (indexedNames.contains(evaluator.name)) {
+          continue; // pruned by index
+        }
+        info = unfilteredSimilarityInfo(roughCountByThresholdQuery, preciseCountByThresholdQuery,
+                                        evaluator, knownPvalueInfo(evaluator.rough), null);
+      }
+      if (info.similarity() != null && passesSimilarityCutoff(info)) {
+        result.add(info);
+      }
+    }
+    return result;
+  }
 
   double queryThreshold(Discretizer discretizer) {
     if (queryPredefinedThreshold != null) {
@@ -0,0 +1,97 @@
+package ru.autosome.macroape.cli.generalized;
+
+import ru.autosome.commons.backgroundModel.GeneralizedBackgroundModel;
+import ru.autosome.commons.importer.MotifImporter;
+import ru.autosome.commons.model.Named;
+import ru.autosome.commons.motifModel.Alignable;
+import ru.autosome.commons.motifModel.Discretable;
+import ru.autosome.commons.motifModel.ScoreDistribution;
+import ru.autosome.macroape.model.MotifIndex;
+import ru.autosome.macroape.model.PWMWithThreshold;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public abstract class BuildCollectionIndex<ModelType extends Discretable<ModelType> & ScoreDistribution<BackgroundType> & Alignable<ModelType>,
+                                           BackgroundType extends GeneralizedBackgroundModel> extends CollectDistanceMatrix<ModelType, BackgroundType> {
+
+  protected File indexFile;
+
+  @Override
+  protected String documentString() {
+    return "Command-line format:\n" +
+            DOC_run_string() + " <folder with PWMs> <output index file> [options]\n" +
+            "\n" +
+            "Builds an index of a motif collection to be used by ScanCollection (--index option).\n" +
+            "Index is valid only for the P-value, boundary, background, rough discretization and PWM conversion\n" +
+            "parameters it was built with. Approximation error of the index (used by ScanCollection as default\n" +
+            "index slack) is estimated while building.\n" +
+            "\n" +
+            "Options:\n" +
+            "  [--rough-discretization <discretization level>] or [-d]\n" +
+            "  [--precise-discretization <discretization level>]\n" +
+            "  [--precise [<level>]] minimal similarity to check on the second pass in precise mode, off by default\n" +
+            "  [--pvalue <P-value>] or [-p]\n" +
+            "  [--boundary lower|upper] Upper boundary (default) means that the obtained P-value is greater than or equal to the requested P-value\n" +
+            "  [--pcm] - treat the input file as Position Count Matrix. PCM-to-PWM transformation to be done internally.\n" +
+            "  [--ppm] or [--pfm] - treat the input file as Position Frequency Matrix. PPM-to-PWM transformation to be done internally.\n" +
+            "  [--effective-count <count>] - effective samples set size for PPM-to-PWM conversion (default: 100). \n" +
+            "  [--background <background probabilities>] or [-b] " + DOC_background_option() + "\n" +
+            "  [--transpose] - load motif from transposed matrix (nucleotides in lines).\n" +
+            DOC_additional_options() +
+            "\n" +
+            "Examples:\n" +
+            "  " + DOC_run_string() + " ./hocomoco/ ./hocomoco.index\n";
+  }
+
+  abstract protected MotifImporter<ModelType> collectionImporter();
+
+  @Override
+  protected List<Named<ModelType>> loadMotifCollection(File path_to_collection) {
+    return collectionImporter().loadMotifCollectionWithNames(path_to_collection);
+  }
+
+  // Index is built in a single run, so distance matrix options for distributed calculation aren't applicable
+  @Override
+  protected void extract_option(List<String> argv) {
+    String opt = argv.get(0);
+    if (opt.equals("--parallelize") || opt.equals("--checkpoint") || opt.equals("--checkpoint-shard")) {
+      throw new IllegalArgumentException("Option '" + opt + "' is not supported when building an index");
+    }
+    super.extract_option(argv);
+  }
+
+  @Override
+  protected void extract_path_to_collection_of_pwms(List<String> argv) {
+    super.extract_path_to_collection_of_pwms(argv);
+    try {
+      indexFile = new File(argv.remove(0));
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Specify output index file", e);
+    }
+  }
+
+  @Override
+  public void process() throws IOException {
+    List<PWMWithThreshold<ModelType>> thresholds = collectThreshold();
+    thresholds.sort(Comparator.comparing(o -> o.name));
+    List<String> names = new ArrayList<>(thresholds.size());
+    for (PWMWithThreshold<ModelType> motif: thresholds) {
+      names.add(motif.name);
+    }
+
+    MotifIndex index = MotifIndex.build(MotifIndex.parametersOf(pvalue, pvalueBoundary, background, roughDiscretizer,
+                                                                collectionImporter().conversionParameters()),
+                                        names,
+                                        (Integer firstIndex, Integer secondIndex) -> {
+                                          Double distance = calculateSimilarityInfo(thresholds.get(firstIndex), thresholds.get(secondIndex)).distance();
+                                          return (distance == null) ? 1.0 : distance;
+                                        });
+    index.save_to_file(indexFile);
+    System.err.println("Index of " + index.size() + " motifs saved to " + indexFile +
+                       " (approximation error: " + index.approximationError + ")");
+  }
+}
@@ -16,10 +16,13 @@ import ru.autosome.commons.motifModel.types.DataModel;
 import ru.autosome.macroape.calculation.generalized.AlignedModelIntersection;
 import ru.autosome.macroape.calculation.generalized.CompareModels;
 import ru.autosome.macroape.model.ComparisonSimilarityInfo;
+import ru.autosome.macroape.model.DistanceMatrixCheckpoint;
 import ru.autosome.macroape.model.PWMWithThreshold;
 import ru.autosome.macroape.model.PairAligned;
+import ru.autosome.macroape.model.ScanningSimilarityInfo;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -51,6 +54,10 @@ public abstract class CollectDistanceMatrix<ModelType extends Discretable<ModelT
             "  [--background <background probabilities>] or [-b] " + DOC_background_option() + "\n" +
             "  [--transpose] - load motif from transposed matrix (nucleotides in lines).\n" +
             "  [--parallelize <num of threads> <thread number>] - run only one task per numOfThreads (those equal to thread number modulo numOfThreads)\n" +
+            "  [--checkpoint <file>] - store calculated pairs in a binary file and resume calculation from it on restart.\n" +
+            "                          Resulting matrix is printed when all pairs are calculated.\n" +
+            "  [--checkpoint-shard <file>] - merge pairs from another checkpoint file (e.g. calculated on another node with --parallelize)\n" +
+            "                                into the checkpoint. Can be specified several times.\n" +
             DOC_additional_options() +
             "\n" +
             "Examples:\n" +
@@ -71,6 +78,8 @@ public abstract class CollectDistanceMatrix<ModelType extends Discretable<ModelT
   protected double pvalue;
   protected Double preciseRecalculationCutoff; // null means that no recalculation will be performed
   protected boolean transpose;
+  protected File checkpointFile; // null means that calculated pairs are not stored
+  protected List<File> checkpointShards;
 
   protected int numOfThreads, numThread;
   protected List<Named<ModelType>> pwmCollection;
@@ -105,6 +114,8 @@ public abstract class CollectDistanceMatrix<ModelType extends Discretable<ModelT
     pvalueBoundary = BoundaryType.WEAK;
     preciseRecalculationCutoff = null;
     transpose = false;
+    checkpointFile = null;
+    checkpointShards = new ArrayList<>();
 
     numOfThreads = 1;
     numThread = 0;
@@ -140,6 +151,10 @@ public abstract class CollectDistanceMatrix<ModelType extends Discretable<ModelT
       numThread = Integer.valueOf(argv.remove(0));
     } else if (opt.equals("--transpose")) {
       transpose = true;
+    } else if (opt.equals("--checkpoint")) {
+      checkpointFile = new File(argv.remove(0));
+    } else if (opt.equals("--checkpoint-shard")) {
+      checkpointShards.add(new File(argv.remove(0)));
     } else {
       if (failed_to_recognize_additional_options(opt, argv)) {
         throw new IllegalArgumentException("Unknown option '" + opt + "'");
@@ -173,18 +188,33 @@ public abstract class CollectDistanceMatrix<ModelType extends Discretable<ModelT
     return result;
   }
 
-  protected double calculateDistance(PWMWithThreshold<ModelType> first, PWMWithThreshold<ModelType> second) {
+  protected ScanningSimilarityInfo calculateSimilarityInfo(PWMWithThreshold<ModelType> first, PWMWithThreshold<ModelType> second) {
     CompareModels<ModelType> calc = new CompareModels<>(first.pwm, second.pwm, background.volume(), roughDiscretizer, calc_alignment());
     ComparisonSimilarityInfo info = calc.jaccard(first.roughInfos, second.roughInfos);
+    boolean precise = false;
 
     if (preciseRecalculationCutoff != null && info.similarity() > preciseRecalculationCutoff) {
       calc = new CompareModels<>(first.pwm, second.pwm, background.volume(), preciseDiscretizer, calc_alignment());
       info = calc.jaccard(first.preciseInfos, second.preciseInfos);
+      precise = true;
     }
-    return info.distance();
+    return new ScanningSimilarityInfo(second.name, info, precise);
+  }
+
+  protected double calculateDistance(PWMWithThreshold<ModelType> first, PWMWithThreshold<ModelType> second) {
+    return calculateSimilarityInfo(first, second).distance();
   }
 
-  public void process() {
+  protected boolean isOwnTask(int taskNum) {
+    // so that numThread in range 0..(n-1) was equal to 1..n
+    return taskNum % numOfThreads == numThread % numOfThreads;
+  }
+
+  public void process() throws IOException {
+    if (checkpointFile != null) {
+      processWithCheckpoint();
+      return;
+    }
     int taskNum = 0;
     List<PWMWithThreshold<ModelType>> thresholds = collectThreshold();
     thresholds.sort(Comparator.comparing(o -> o.name));
@@ -198,8 +228,7 @@ public abstract class CollectDistanceMatrix<ModelType extends Discretable<ModelT
       System.out.print(first.name + "\t");
       for(PWMWithThreshold<ModelType> second: thresholds) {
 
-        if (taskNum % numOfThreads == numThread % numOfThreads) {
-          // so that numThread in range 0..(n-1) was equal to 1..n
+        if (isOwnTask(taskNum)) {
           int cmp = first.name.compareTo(second.name);
           if (cmp == 0) {
             System.out.print("0.0\t");
@@ -220,6 +249,74 @@ public abstract class CollectDistanceMatrix<ModelType extends Discretable<ModelT
     }
   }
 
+  // Calculates pairs which are absent in a checkpoint, appending them to it.
+  // Each finished row is flushed to disk, so at most one row is lost when the process is killed.
+  protected void processWithCheckpoint() throws IOException {
+    List<PWMWithThreshold<ModelType>> thresholds = collectThreshold();
+    thresholds.sort(Comparator.comparing(o -> o.name));
+    List<String> names = new ArrayList<>(thresholds.size());
+    for (PWMWithThreshold<ModelType> motif: thresholds) {
+      names.add(motif.name);
+    }
+
+    try (DistanceMatrixCheckpoint checkpoint = DistanceMatrixCheckpoint.open(checkpointFile, names)) {
+      mergeShards(checkpoint, names);
+      int taskNum = 0;
+      for (int firstIndex = 0; firstIndex < thresholds.size(); ++firstIndex) {
+        PWMWithThreshold<ModelType> first = thresholds.get(firstIndex);
+        for (int secondIndex = 0; secondIndex < thresholds.size(); ++secondIndex) {
+          PWMWithThreshold<ModelType> second = thresholds.get(secondIndex);
+          if (isOwnTask(taskNum) && first.name.compareTo(second.name) > 0 && !checkpoint.contains(firstIndex, secondIndex)) {
+            ScanningSimilarityInfo info = calculateSimilarityInfo(first, second);
+            checkpoint.append(new DistanceMatrixCheckpoint.PairInfo(firstIndex, secondIndex, info));
+          }
+          taskNum += 1;
+        }
+        checkpoint.flush();
+        System.err.print(".");
+      }
+      printMatrix(names, checkpoint);
+    }
+  }
+
+  protected void mergeShards(DistanceMatrixCheckpoint checkpoint, List<String> names) throws IOException {
+    if (checkpointShards.isEmpty()) {
+      return;
+    }
+    DistanceMatrixCheckpoint shards = DistanceMatrixCheckpoint.merged(checkpointShards, names);
+    for (int firstIndex = 0; firstIndex < names.size(); ++firstIndex) {
+      for (int secondIndex = 0; secondIndex < names.size(); ++secondIndex) {
+        if (shards.contains(firstIndex, secondIndex) && !checkpoint.contains(firstIndex, secondIndex)) {
+          checkpoint.append(shards.get(firstIndex, secondIndex));
+        }
+      }
+    }
+    checkpoint.flush();
+  }
+
+  // Prints matrix in the same layout as a calculation without checkpoint does
+  protected void printMatrix(List<String> names, DistanceMatrixCheckpoint checkpoint) {
+    StringBuilder line = new StringBuilder("Motif name\t");
+    for (String name: names) {
+      line.append(name).append("\t");
+    }
+    System.out.println(line);
+    for (int firstIndex = 0; firstIndex < names.size(); ++firstIndex) {
+      line = new StringBuilder(names.get(firstIndex)).append("\t");
+      for (int secondIndex = 0; secondIndex < names.size(); ++secondIndex) {
+        DistanceMatrixCheckpoint.PairInfo info = checkpoint.get(firstIndex, secondIndex);
+        if (firstIndex == secondIndex) {
+          line.append("0.0\t");
+        } else if (info == null) {
+          line.append("x\t");
+        } else {
+          line.append(info.distance).append("\t");
+        }
+      }
+      System.out.println(line);
+    }
+  }
+
   abstract protected Function<PairAligned<ModelType>, ? extends AlignedModelIntersection> calc_alignment();
   abstract protected BackgroundType extract_background(String str);
 }
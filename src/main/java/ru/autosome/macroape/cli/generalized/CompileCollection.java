@@ -0,0 +1,135 @@
+package ru.autosome.macroape.cli.generalized;
+
+import ru.autosome.commons.backgroundModel.GeneralizedBackgroundModel;
+import ru.autosome.commons.cli.Helper;
+import ru.autosome.commons.importer.CompiledCollection;
+import ru.autosome.commons.importer.MotifImporter;
+import ru.autosome.commons.model.Named;
+import ru.autosome.commons.model.PseudocountCalculator;
+import ru.autosome.commons.motifModel.types.DataModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public abstract class CompileCollection<ModelType, BackgroundType extends GeneralizedBackgroundModel> {
+
+  protected CompileCollection() {
+    initialize_defaults();
+  }
+
+  abstract protected String DOC_background_option();
+  abstract protected String DOC_run_string();
+  protected String documentString() {
+    return "Command-line format:\n" +
+            DOC_run_string() + " <folder or file with PWMs> <output file> [options]\n" +
+            "\n" +
+            "Converts a motif collection into PWMs and stores it in a binary file which can be used instead of\n" +
+            "a collection folder or file by any tool. Compiled collection is loaded without parsing.\n" +
+            "\n" +
+            "Options:\n" +
+            "  [--pcm] - treat the input file as Position Count Matrix. PCM-to-PWM transformation to be done internally.\n" +
+            "  [--ppm] or [--pfm] - treat the input file as Position Frequency Matrix. PPM-to-PWM transformation to be done internally.\n" +
+            "  [--effective-count <count>] - effective samples set size for PPM-to-PWM conversion (default: 100). \n" +
+            "  [--pseudocount <value>] - pseudocount for PCM/PPM-to-PWM conversion: log (default), sqrt or a number.\n" +
+            "  [--background <background probabilities>] or [-b] " + DOC_background_option() + "\n" +
+            "  [--transpose] - load motif from transposed matrix (nucleotides in lines).\n" +
+            DOC_additional_options() +
+            "\n" +
+            "Examples:\n" +
+            "  " + DOC_run_string() + " ./hocomoco/ ./hocomoco.bin --pcm\n";
+  }
+
+  protected String DOC_additional_options() {
+    return "";
+  }
+
+  protected File pathToCollectionOfPWMs;
+  protected File outputFile;
+  protected BackgroundType background;
+  protected DataModel dataModel;
+  protected double effectiveCount;
+  protected PseudocountCalculator pseudocount;
+  protected boolean transpose;
+
+  protected void setup_from_arglist(String[] args) {
+    ArrayList<String> argv = new ArrayList<>();
+    Collections.addAll(argv, args);
+    setup_from_arglist(argv);
+  }
+
+  protected void setup_from_arglist(List<String> argv) {
+    Helper.print_help_if_requested(argv, documentString());
+    extract_paths(argv);
+    while (argv.size() > 0) {
+      extract_option(argv);
+    }
+  }
+
+  protected abstract MotifImporter<ModelType> motifImporter();
+  protected abstract int compiledAlphabetSize();
+
+  protected abstract void initialize_default_background();
+  protected abstract BackgroundType extract_background(String str);
+
+  protected void initialize_defaults() {
+    initialize_default_background();
+    dataModel = DataModel.PWM;
+    effectiveCount = 100;
+    pseudocount = PseudocountCalculator.logPseudocount;
+    transpose = false;
+    pathToCollectionOfPWMs = null;
+    outputFile = null;
+  }
+
+  protected void extract_option(List<String> argv) {
+    String opt = argv.remove(0);
+    if (opt.equals("-b") || opt.equals("--background")) {
+      background = extract_background(argv.remove(0));
+    } else if (opt.equals("--pcm")) {
+      dataModel = DataModel.PCM;
+    } else if (opt.equals("--ppm") || opt.equals("--pfm")) {
+      dataModel = DataModel.PPM;
+    } else if (opt.equals("--effective-count")) {
+      effectiveCount = Double.valueOf(argv.remove(0));
+    } else if (opt.equals("--pseudocount")) {
+      pseudocount = PseudocountCalculator.fromString(argv.remove(0));
+    } else if (opt.equals("--transpose")) {
+      transpose = true;
+    } else {
+      if (failed_to_recognize_additional_options(opt, argv)) {
+        throw new IllegalArgumentException("Unknown option '" + opt + "'");
+      }
+    }
+  }
+
+  protected boolean failed_to_recognize_additional_options(String opt, List<String> argv) {
+    return true;
+  }
+
+  protected void extract_paths(List<String> argv) {
+    try {
+      pathToCollectionOfPWMs = new File(argv.remove(0));
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Specify PWM-collection folder or file", e);
+    }
+    try {
+      outputFile = new File(argv.remove(0));
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Specify output file", e);
+    }
+  }
+
+  public void process() throws IOException {
+    MotifImporter<ModelType> importer = motifImporter();
+    List<Named<ModelType>> motifs = importer.loadMotifCollectionWithNames(pathToCollectionOfPWMs);
+    List<Named<double[][]>> matrices = new ArrayList<>(motifs.size());
+    for (Named<ModelType> motif: motifs) {
+      matrices.add(new Named<>(importer.compiledMatrix(motif.getObject()), motif.getName()));
+    }
+    new CompiledCollection(compiledAlphabetSize(), importer.conversionParameters(), matrices).save(outputFile);
+    System.err.println("Collection of " + matrices.size() + " motifs compiled into " + outputFile);
+  }
+}
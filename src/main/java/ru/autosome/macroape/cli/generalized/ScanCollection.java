@@ -3,12 +3,17 @@ package ru.autosome.macroape.cli.generalized;
 import ru.autosome.ape.calculation.findThreshold.CanFindThreshold;
 import ru.autosome.ape.calculation.findThreshold.FindThresholdAPE;
 import ru.autosome.ape.calculation.findThreshold.FindThresholdBsearch;
+import ru.autosome.ape.calculation.findThreshold.FindThresholdCached;
+import ru.autosome.ape.calculation.findThreshold.FindThresholdLazy;
 import ru.autosome.commons.backgroundModel.GeneralizedBackgroundModel;
+import ru.autosome.commons.cli.BinaryListReporter;
 import ru.autosome.commons.cli.Helper;
 import ru.autosome.commons.cli.ListReporter;
 import ru.autosome.commons.cli.ReportListLayout;
 import ru.autosome.commons.cli.TextListReporter;
 import ru.autosome.commons.importer.InputExtensions;
+import ru.autosome.commons.importer.LazyMotifCollection;
+import ru.autosome.commons.importer.MotifImporter;
 import ru.autosome.commons.model.BoundaryType;
 import ru.autosome.commons.model.Discretizer;
 import ru.autosome.commons.model.Named;
@@ -17,18 +22,22 @@ import ru.autosome.commons.motifModel.Alignable;
 import ru.autosome.commons.motifModel.Discretable;
 import ru.autosome.commons.motifModel.ScoreDistribution;
 import ru.autosome.commons.motifModel.types.DataModel;
+import ru.autosome.commons.support.SharedCache;
 import ru.autosome.macroape.calculation.generalized.AlignedModelIntersection;
 import ru.autosome.macroape.calculation.generalized.ScanningCollection;
+import ru.autosome.macroape.model.MotifIndex;
 import ru.autosome.macroape.model.PairAligned;
 import ru.autosome.macroape.model.ScanningSimilarityInfo;
 import ru.autosome.macroape.model.ThresholdEvaluator;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -48,23 +57,51 @@ public abstract class ScanCollection<ModelType extends Discretable<ModelType> &
   protected Double queryPredefinedThreshold;
   protected Double similarityCutoff;
   protected Double preciseRecalculationCutoff; // null means that no recalculation will be performed
+  protected Integer topCount; // null means that all motifs are reported
+  protected File indexFile; // null means that collection is scanned without index
+  protected Double indexSlack; // null means that approximation error estimated on index building is used
+  protected int numberOfThreads;
   protected BoundaryType pvalueBoundaryType;
   protected String queryPMFilename;
+  protected boolean queryIsList; // query file is a list of query motif files (one per line)
+  protected File outputFolder; // null means that results for all queries are printed to stdout
+  protected File binaryOutputFile; // null means that results are reported as text
   protected File pathToCollectionOfPWMs;
   protected File thresholds_folder;
   protected ModelType queryPWM;
   protected List<ThresholdEvaluator<ModelType>> pwmCollection;
+  protected MotifIndex motifIndex;
   protected boolean queryTranspose, collectionTranspose;
+  protected List<String> selectedMotifNames; // null means that all motifs of collection are used
 
   abstract protected String DOC_background_option();
   abstract protected String DOC_run_string();
   protected String documentString() {
     return "Command-line format:\n" +
      DOC_run_string() + " <query PWM file> <folder with PWMs> [options]\n" +
+     DOC_run_string() + " <folder with query PWMs> <folder with PWMs> [options]\n" +
+     DOC_run_string() + " <file with list of query PWM files> <folder with PWMs> --query-list [options]\n" +
+     "\n" +
+     "In batch mode (many queries) the collection is loaded and thresholded only once.\n" +
      "\n" +
      "Options:\n" +
      "  [--pvalue <P-value>] or [-p]\n" +
      "  [--similarity-cutoff <similarity cutoff>] or [-c] minimal similarity to be included in output, '--similarity-cutoff 0.05' by default, [--all] to print all results\n" +
+     "  [--top <count>] - report only <count> motifs with the best similarity. Motifs which can't get into top\n" +
+     "                    (due to similarity upper bound) are skipped without calculation. Top is selected by rough similarity;\n" +
+     "                    with [--precise] only motifs of that top are recalculated precisely.\n" +
+     "  [--index <file>] - use collection index (built by BuildCollectionIndex) to shortlist motifs for exact comparison.\n" +
+     "                     Index built for different P-value, boundary, background or rough discretization is ignored.\n" +
+     "  [--index-slack <value>] - widen index search to improve recall (default: approximation error of the index, 0.1 for\n" +
+     "                           indices which don't store it). Index prunes nothing when (1 - similarity cutoff) + slack >= 1,\n" +
+     "                           so it's useful with high similarity cutoff or with [--top] (which narrows search as top is filled).\n" +
+     "  [--query-list] - query file contains paths to query motif files, one per line.\n" +
+     "  [--output-folder <folder>] - in batch mode store results for each query into <folder>/<query name>.txt\n" +
+     "                               instead of printing all results to stdout (each preceded by `> <query name>` line).\n" +
+     "                               Characters other than letters, digits, `.`, `_` and `-` in query names are replaced by `_`;\n" +
+     "                               queries which would be stored into the same file are reported as an error.\n" +
+     "  [--binary-output <file>] - write results for a single query into a columnar binary file instead of text output to stdout.\n" +
+     "  [--threads <number>] - number of threads to compare motifs in parallel (default: 1)\n" +
      "  [--precise [<level>]] minimal similarity to check on the second pass in precise mode, off by default, '--precise 0.01' if level is not set\n" +
      "  [--rough-discretization <discretization level>] or [-d]\n" +
      "  [--precise-discretization <discretization level>]\n" +
@@ -75,6 +112,10 @@ public abstract class ScanCollection<ModelType extends Discretable<ModelType> &
      "  [--background <background probabilities>] or [-b] " + DOC_background_option() + "\n" +
      "  [--precalc <folder>] - specify folder with thresholds for PWM collection (for fast-and-rough calculation).\n" +
      "                         Attention! Don't use threshold lists calculated for a different discretization (or background)!\n" +
+     "  [--motifs <name1,name2,...>] - compare query only with collection motifs with given names (names from motif\n" +
+     "                                 headers, as in output). Other motifs aren't loaded; in a folder, files named\n" +
+     "                                 <name>.* are checked first, other files are read only if a motif isn't found there.\n" +
+     "  [--motif-list <file>] - compare query only with collection motifs listed in a file, one name per line.\n" +
      "  [--[query-|collection-]transpose] - load motif from transposed matrix (nucleotides in lines).\n" +
      DOC_additional_options() +
      "\n" +
@@ -128,8 +169,16 @@ public abstract class ScanCollection<ModelType extends Discretable<ModelType> &
     pvalue = 0.0005;
     similarityCutoff = 0.05;
     preciseRecalculationCutoff = null;
+    topCount = null;
+    indexFile = null;
+    indexSlack = null;
+    numberOfThreads = 1;
+    queryIsList = false;
+    outputFolder = null;
+    binaryOutputFile = null;
     queryTranspose = false;
     collectionTranspose = false;
+    selectedMotifNames = null;
   }
 
   protected void extract_option(List<String> argv) throws FileNotFoundException {
@@ -187,12 +236,37 @@ public abstract class ScanCollection<ModelType extends Discretable<ModelType> &
       similarityCutoff = Double.valueOf(argv.remove(0));
     } else if(opt.equals("--all")) {
       similarityCutoff = 0.0;
+    } else if(opt.equals("--index")) {
+      indexFile = new File(argv.remove(0));
+      if (!indexFile.exists()) {
+        throw new FileNotFoundException("Specified collection index `" + indexFile + "` not exists");
+      }
+    } else if(opt.equals("--index-slack")) {
+      indexSlack = Double.valueOf(argv.remove(0));
+    } else if(opt.equals("--query-list")) {
+      queryIsList = true;
+    } else if(opt.equals("--output-folder")) {
+      outputFolder = new File(argv.remove(0));
+    } else if(opt.equals("--binary-output")) {
+      binaryOutputFile = new File(argv.remove(0));
+    } else if(opt.equals("--threads")) {
+      numberOfThreads = Integer.valueOf(argv.remove(0));
+      if (numberOfThreads <= 0) {
+        throw new IllegalArgumentException("Number of threads should be positive");
+      }
+    } else if(opt.equals("--top")) {
+      topCount = Integer.valueOf(argv.remove(0));
+      if (topCount <= 0) {
+        throw new IllegalArgumentException("Number of top motifs should be positive");
+      }
     } else if(opt.equals("--precise")) {
       if (!argv.isEmpty() && InputExtensions.isDouble(argv.get(0))) {
         preciseRecalculationCutoff = Double.valueOf(argv.remove(0));
       } else {
         preciseRecalculationCutoff = 0.01;
       }
+    } else if(opt.equals("--motifs") || opt.equals("--motif-list")) {
+      selectedMotifNames = Helper.addSelectedMotifNames(selectedMotifNames, opt, argv);
     } else if(opt.equals("--transpose")) {
       queryTranspose = true;
       collectionTranspose = true;
@@ -214,6 +288,9 @@ public abstract class ScanCollection<ModelType extends Discretable<ModelType> &
   public ReportListLayout<ScanningSimilarityInfo> report_table_layout() {
     ReportListLayout<ScanningSimilarityInfo> infos = new ReportListLayout<>();
     infos.add_parameter("MS", "minimal similarity to show", similarityCutoff);
+    if (topCount != null) {
+      infos.add_parameter("TOP", "number of best motifs to show", topCount);
+    }
     infos.add_parameter("P", "P-value", pvalue);
     infos.add_parameter("PB", "P-value boundary", pvalueBoundaryType);
     if (preciseRecalculationCutoff != null) {
@@ -236,42 +313,185 @@ public abstract class ScanCollection<ModelType extends Discretable<ModelType> &
     return infos;
   }
 
-  protected String report(List<ScanningSimilarityInfo> data) {
+  protected void report(List<ScanningSimilarityInfo> data, ListReporter<ScanningSimilarityInfo> reporter, OutputStream output) throws IOException {
     data.sort(Comparator.comparing(ScanningSimilarityInfo::similarity));
-    ReportListLayout<ScanningSimilarityInfo> layout = report_table_layout();
-    ListReporter<ScanningSimilarityInfo> reporter = new TextListReporter<>();
-    return reporter.report(data, layout);
+    reporter.write(data, report_table_layout(), output);
   }
 
   protected List<ScanningSimilarityInfo> process() {
-    return calculator().similarityInfos().collect(Collectors.toList());
+    return process(queryPWM);
+  }
+
+  protected List<ScanningSimilarityInfo> process(ModelType query) {
+    return calculator(query).similarityInfos().collect(Collectors.toList());
+  }
+
+  protected boolean isBatchMode() {
+    return queryIsList || new File(queryPMFilename).isDirectory();
+  }
+
+  protected void process_and_report() throws IOException {
+    if (!isBatchMode()) {
+      if (binaryOutputFile == null) {
+        report(process(), new TextListReporter<>(), System.out);
+      } else {
+        try (OutputStream output = new FileOutputStream(binaryOutputFile)) {
+          report(process(), new BinaryListReporter<>(), output);
+        }
+      }
+      return;
+    }
+    if (binaryOutputFile != null) {
+      throw new IllegalArgumentException("Binary output can't be used in batch mode");
+    }
+    List<Named<ModelType>> queries = loadQueryMotifs();
+    List<File> outputFiles = null;
+    if (outputFolder != null) {
+      outputFiles = outputFiles(queries);
+      outputFolder.mkdirs();
+    }
+    for (int i = 0; i < queries.size(); ++i) {
+      Named<ModelType> query = queries.get(i);
+      List<ScanningSimilarityInfo> result = process(query.getObject());
+      if (outputFolder == null) {
+        System.out.println("> " + query.getName());
+        report(result, new TextListReporter<>(), System.out);
+      } else {
+        try (OutputStream output = new FileOutputStream(outputFiles.get(i))) {
+          report(result, new TextListReporter<>(), output);
+        }
+      }
+    }
+  }
+
+  // Query names come from motif headers, so they can't be used as file names as is:
+  // characters other than letters, digits, '.', '_' and '-' are replaced and name can't point outside of output folder.
+  protected static String outputFileBasename(String queryName) {
+    String result = queryName.replaceAll("[^A-Za-z0-9._-]", "_");
+    if (result.isEmpty() || result.startsWith(".")) {
+      result = "_" + result;
+    }
+    return result;
+  }
+
+  // Fails before anything is written if results of different queries would go into the same file
+  // (names are compared case-insensitively as file system can be case-insensitive)
+  protected List<File> outputFiles(List<Named<ModelType>> queries) {
+    List<File> result = new ArrayList<>(queries.size());
+    Map<String, String> queryNameByBasename = new HashMap<>();
+    for (Named<ModelType> query: queries) {
+      String basename = outputFileBasename(query.getName());
+      String previousQueryName = queryNameByBasename.put(basename.toLowerCase(), query.getName());
+      if (previousQueryName != null) {
+        throw new IllegalArgumentException("Queries `" + previousQueryName + "` and `" + query.getName() + "` " +
+                                           "would be stored into the same file `" + basename + ".txt` of output folder");
+      }
+      result.add(new File(outputFolder, basename + ".txt"));
+    }
+    return result;
+  }
+
+  protected List<Named<ModelType>> loadQueryMotifs() throws FileNotFoundException {
+    MotifImporter<ModelType> importer = queryImporter();
+    File queryFile = new File(queryPMFilename);
+    if (!queryIsList) {
+      return importer.loadMotifCollectionWithNames(queryFile);
+    }
+    List<Named<ModelType>> result = new ArrayList<>();
+    for (String line: InputExtensions.readLinesFromFile(queryFile)) {
+      if (line.trim().isEmpty()) continue;
+      File motifFile = new File(line.trim());
+      if (!motifFile.isAbsolute() && queryFile.getParentFile() != null && !motifFile.exists()) {
+        motifFile = new File(queryFile.getParentFile(), line.trim());
+      }
+      Named<ModelType> motif = importer.loadMotifWithName(motifFile);
+      if (motif == null) {
+        throw new FileNotFoundException("Query motif file `" + motifFile + "` not exists");
+      }
+      result.add(motif);
+    }
+    return result;
   }
 
   // TODO: Refactor usage of one-stage and two-stage search
   protected List<ThresholdEvaluator<ModelType>> load_collection_of_pwms() throws FileNotFoundException {
     List<Named<ModelType>> pwmList = loadMotifCollection();
+    // collection is stat-ed once (and only if cache is enabled), not for each motif
+    List<Object> collectionKey = SharedCache.isEnabled() ? SharedCache.fileKey(pathToCollectionOfPWMs) : null;
     List<ThresholdEvaluator<ModelType>> result;
     result = new ArrayList<>();
     for (Named<ModelType> namedModel: pwmList) {
       ModelType pwm = namedModel.getObject();
       if (thresholds_folder == null) {
-        CanFindThreshold roughEvaluator = new FindThresholdAPE<>(pwm, background, roughDiscretizer);
-        CanFindThreshold preciseEvaluator = new FindThresholdAPE<>(pwm, background, preciseDiscretizer);
+        // thresholds are cached so that in batch mode they are calculated once for all queries
+        // (and in server mode - once for all requests to the same collection)
+        CanFindThreshold roughEvaluator = cachedThresholdCalculator(collectionKey, pwm, roughDiscretizer);
+        CanFindThreshold preciseEvaluator = cachedThresholdCalculator(collectionKey, pwm, preciseDiscretizer);
         result.add(new ThresholdEvaluator<>(namedModel.getName(), pwm, roughEvaluator, preciseEvaluator));
       } else {
-        File thresholds_file = new File(thresholds_folder, namedModel.getName() + ".thr");
-        result.add(new ThresholdEvaluator<>(namedModel.getName(), pwm, new FindThresholdBsearch(thresholds_file), null));
+        File thresholds_file = InputExtensions.possiblyCompressedFile(new File(thresholds_folder, namedModel.getName() + ".thr"));
+        if (!thresholds_file.exists()) {
+          throw new FileNotFoundException("Thresholds file `" + thresholds_file + "` for motif " + namedModel.getName() + " not exists");
+        }
+        // thresholds list is loaded only if motif is compared with a query (with index most motifs aren't)
+        CanFindThreshold roughEvaluator = new FindThresholdLazy(() -> {
+          try {
+            return new FindThresholdBsearch(thresholds_file);
+          } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        result.add(new ThresholdEvaluator<>(namedModel.getName(), pwm, roughEvaluator, null));
       }
     }
     return result;
   }
 
+  protected CanFindThreshold cachedThresholdCalculator(List<Object> collectionKey, ModelType pwm, Discretizer discretizer) {
+    // motifs are compared by identity, so calculators are shared only for motifs of a shared collection;
+    // collection file state in the key lets the cache drop calculators together with a changed collection
+    return SharedCache.get(() -> Arrays.asList("thresholds", collectionKey, pwm, background.toString(), discretizer.toString()),
+                           () -> new FindThresholdCached(new FindThresholdAPE<>(pwm, background, discretizer)));
+  }
+
   protected void setup_from_arglist(String[] args) throws FileNotFoundException {
     ArrayList<String> argv = new ArrayList<>();
     Collections.addAll(argv, args);
     setup_from_arglist(argv);
   }
 
+  // Index is used only if it was built with the same parameters. Otherwise exact scan is performed.
+  protected MotifIndex load_motif_index() {
+    if (indexFile == null) {
+      return null;
+    }
+    MotifIndex index;
+    try {
+      index = MotifIndex.load_from_file(indexFile);
+    } catch (IOException e) {
+      System.err.println("Can't load collection index `" + indexFile + "` (" + e.getMessage() + "). Exact scan will be performed.");
+      return null;
+    }
+    if (!index.compatibleWith(MotifIndex.parametersOf(pvalue, pvalueBoundaryType, background, roughDiscretizer,
+                                                      collectionImporter().conversionParameters()))) {
+      System.err.println("Collection index `" + indexFile + "` was built with different parameters. Exact scan will be performed.");
+      return null;
+    }
+    double radius = (similarityCutoff == null) ? 1.0 : 1.0 - similarityCutoff;
+    if (topCount == null && radius + effectiveIndexSlack(index) >= 1.0) {
+      System.err.println("Warning! Search radius (1 - similarity cutoff) plus index slack " + effectiveIndexSlack(index) +
+                         " is not less than 1, so index won't prune any motif. Raise similarity cutoff or use --top.");
+    }
+    return index;
+  }
+
+  protected double effectiveIndexSlack(MotifIndex index) {
+    if (indexSlack != null) {
+      return indexSlack;
+    }
+    return (index.approximationError != null) ? index.approximationError : 0.1;
+  }
+
   protected void setup_from_arglist(List<String> argv) throws FileNotFoundException {
     Helper.print_help_if_requested(argv, documentString());
     extract_query_pm_filename(argv);
@@ -280,13 +500,20 @@ public abstract class ScanCollection<ModelType extends Discretable<ModelType> &
       extract_option(argv);
     }
 
-    queryPWM = loadQueryMotif();
+    if (!isBatchMode()) {
+      queryPWM = loadQueryMotif();
+    }
     pwmCollection = load_collection_of_pwms();
+    motifIndex = load_motif_index();
   }
 
   protected ScanningCollection<ModelType, BackgroundType> calculator() {
+    return calculator(queryPWM);
+  }
+
+  protected ScanningCollection<ModelType, BackgroundType> calculator(ModelType query) {
     ScanningCollection<ModelType, BackgroundType> calculator;
-    calculator = new ScanningCollection<>(pwmCollection, queryPWM, calc_alignment());
+    calculator = new ScanningCollection<>(pwmCollection, query, calc_alignment());
     calculator.pvalue = pvalue;
     calculator.queryPredefinedThreshold = queryPredefinedThreshold;
     calculator.roughDiscretizer = roughDiscretizer;
@@ -295,10 +522,27 @@ public abstract class ScanCollection<ModelType extends Discretable<ModelType> &
     calculator.pvalueBoundaryType = pvalueBoundaryType;
     calculator.similarityCutoff = similarityCutoff;
     calculator.preciseRecalculationCutoff = preciseRecalculationCutoff;
+    calculator.topCount = topCount;
+    calculator.motifIndex = motifIndex;
+    calculator.indexSlack = (motifIndex != null) ? effectiveIndexSlack(motifIndex) : 0.0;
+    calculator.numberOfThreads = numberOfThreads;
     return calculator;
   }
 
   protected abstract Function<PairAligned<ModelType>, ? extends AlignedModelIntersection> calc_alignment();
-  protected abstract List<Named<ModelType>> loadMotifCollection();
-  protected abstract ModelType loadQueryMotif();
+  protected abstract MotifImporter<ModelType> collectionImporter();
+
+  // Only selected motifs are loaded (other files of a collection folder aren't even read)
+  protected List<Named<ModelType>> loadMotifCollection() {
+    LazyMotifCollection<ModelType> collection = collectionImporter().lazyMotifCollection(pathToCollectionOfPWMs);
+    if (selectedMotifNames != null) {
+      collection = collection.filter(selectedMotifNames);
+    }
+    return collection.loadAll();
+  }
+  protected abstract MotifImporter<ModelType> queryImporter();
+
+  protected ModelType loadQueryMotif() {
+    return queryImporter().loadMotif(queryPMFilename);
+  }
 }
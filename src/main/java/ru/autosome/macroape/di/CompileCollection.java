@@ -0,0 +1,86 @@
+package ru.autosome.macroape.di;
+
+import ru.autosome.commons.backgroundModel.di.DiBackground;
+import ru.autosome.commons.backgroundModel.di.DiBackgroundModel;
+import ru.autosome.commons.backgroundModel.di.DiWordwiseBackground;
+import ru.autosome.commons.importer.DiPWMFromMonoImporter;
+import ru.autosome.commons.importer.DiPWMImporter;
+import ru.autosome.commons.importer.MotifImporter;
+import ru.autosome.commons.motifModel.di.DiPWM;
+
+import java.util.List;
+
+public class CompileCollection extends ru.autosome.macroape.cli.generalized.CompileCollection<DiPWM, DiBackgroundModel> {
+  @Override
+  protected String DOC_background_option() {
+    return "ACGT - 16 numbers, comma-delimited(spaces not allowed), sum should be equal to 1, like 0.02,0.03,0.03,0.02,0.08,0.12,0.12,0.08,0.08,0.12,0.12,0.08,0.02,0.03,0.03,0.02";
+  }
+  @Override
+  protected String DOC_run_string() {
+    return "java ru.autosome.macroape.di.CompileCollection";
+  }
+
+  @Override
+  protected String DOC_additional_options() {
+    return "  [--from-mono]  - obtain DiPWMs from mononucleotide PWM/PCM/PPMs.\n";
+  }
+
+  protected boolean failed_to_recognize_additional_options(String opt, List<String> argv) {
+    if (opt.equals("--from-mono")) {
+      fromMononucleotide= true;
+      return false;
+    } else {
+      return true;
+    }
+  }
+
+  boolean fromMononucleotide;
+
+  @Override
+  protected MotifImporter<DiPWM> motifImporter() {
+    if (fromMononucleotide) {
+      return new DiPWMFromMonoImporter(background, dataModel, effectiveCount, transpose, pseudocount);
+    } else {
+      return new DiPWMImporter(background, dataModel, effectiveCount, transpose, pseudocount);
+    }
+  }
+
+  @Override
+  protected int compiledAlphabetSize() {
+    return DiPWM.ALPHABET_SIZE;
+  }
+
+  @Override
+  protected void initialize_defaults() {
+    super.initialize_defaults();
+    fromMononucleotide = false;
+  }
+
+  @Override
+  protected void initialize_default_background() {
+    background = new DiWordwiseBackground();
+  }
+
+  @Override
+  protected DiBackgroundModel extract_background(String str) {
+    return DiBackground.fromString(str);
+  }
+
+  private static CompileCollection from_arglist(String[] args) {
+    CompileCollection result = new CompileCollection();
+    result.setup_from_arglist(args);
+    return result;
+  }
+
+  public static void main(String[] args) {
+    try {
+      CompileCollection cli = CompileCollection.from_arglist(args);
+      cli.process();
+    } catch (Exception err) {
+      System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
+      err.printStackTrace();
+      System.err.println("\n--------------------------------------\nUse --help option for help\n\n" + new CompileCollection().documentString());
+      System.exit(1);
+    }
+  }
+}
@@ -6,11 +6,9 @@ import ru.autosome.commons.backgroundModel.di.DiWordwiseBackground;
 import ru.autosome.commons.importer.DiPWMFromMonoImporter;
 import ru.autosome.commons.importer.DiPWMImporter;
 import ru.autosome.commons.importer.MotifImporter;
-import ru.autosome.commons.model.Named;
 import ru.autosome.commons.motifModel.di.DiPWM;
 import ru.autosome.macroape.calculation.di.AlignedModelIntersection;
 import ru.autosome.macroape.model.PairAligned;
-import ru.autosome.macroape.model.ScanningSimilarityInfo;
 
 import java.io.FileNotFoundException;
 import java.util.List;
@@ -72,25 +70,21 @@ public class ScanCollection extends ru.autosome.macroape.cli.generalized.ScanCol
   }
 
   @Override
-  protected List<Named<DiPWM>> loadMotifCollection() {
-    MotifImporter<DiPWM> importer;
+  protected MotifImporter<DiPWM> collectionImporter() {
     if (collectionFromMononucleotide) {
-      importer = new DiPWMFromMonoImporter(background, collectionDataModel, collectionEffectiveCount, collectionTranspose, collectionPseudocount);
+      return new DiPWMFromMonoImporter(background, collectionDataModel, collectionEffectiveCount, collectionTranspose, collectionPseudocount);
     } else {
-      importer = new DiPWMImporter(background, collectionDataModel, collectionEffectiveCount, collectionTranspose, collectionPseudocount);
+      return new DiPWMImporter(background, collectionDataModel, collectionEffectiveCount, collectionTranspose, collectionPseudocount);
     }
-    return importer.loadMotifCollectionWithNames(pathToCollectionOfPWMs);
   }
 
   @Override
-  protected DiPWM loadQueryMotif() {
-    MotifImporter<DiPWM> importer;
+  protected MotifImporter<DiPWM> queryImporter() {
     if (queryFromMononucleotide) {
-      importer = new DiPWMFromMonoImporter(background, queryDataModel, queryEffectiveCount, queryTranspose, queryPseudocount);
+      return new DiPWMFromMonoImporter(background, queryDataModel, queryEffectiveCount, queryTranspose, queryPseudocount);
     } else {
-      importer = new DiPWMImporter(background, queryDataModel, queryEffectiveCount, queryTranspose, queryPseudocount);
+      return new DiPWMImporter(background, queryDataModel, queryEffectiveCount, queryTranspose, queryPseudocount);
     }
-    return importer.loadMotif(queryPMFilename);
   }
 
   @Override
@@ -98,11 +92,14 @@ public class ScanCollection extends ru.autosome.macroape.cli.generalized.ScanCol
     return (PairAligned<DiPWM> alignment) -> new AlignedModelIntersection(alignment, background);
   }
 
+  public static void run(String[] args) throws Exception {
+    ScanCollection calculation = ScanCollection.from_arglist(args);
+    calculation.process_and_report();
+  }
+
   public static void main(String[] args) {
     try {
-      ScanCollection calculation = ScanCollection.from_arglist(args);
-      List<ScanningSimilarityInfo> infos = calculation.process();
-      System.out.println(calculation.report(infos));
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
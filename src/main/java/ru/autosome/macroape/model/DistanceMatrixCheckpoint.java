@@ -0,0 +1,158 @@
+package ru.autosome.macroape.model;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import ru.autosome.commons.model.Orientation;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+// Append-only binary store of already calculated pairs of a distance matrix.
+// Pairs are keyed by indices of motifs in the collection sorted by name.
+// File starts with a header (magic, number of motifs and hash of motif names)
+// so that a store of a different collection can't be used by mistake.
+// Records have fixed size, thus an incomplete record at the end of file
+// (left by a killed process) is simply dropped on resume.
+public class DistanceMatrixCheckpoint implements Closeable {
+  private static final int MAGIC = 0x4D444D31; // "MDM1"
+  private static final int HEADER_SIZE = 3 * 4;
+  // first index, second index, distance, precise flag, shift, orientation
+  private static final int RECORD_SIZE = 4 + 4 + 8 + 1 + 4 + 1;
+
+  public static class PairInfo {
+    public final int firstIndex;
+    public final int secondIndex;
+    public final double distance; // NaN if similarity is undefined
+    public final boolean precise;
+    public final int shift;
+    public final Orientation orientation;
+
+    public PairInfo(int firstIndex, int secondIndex, double distance, boolean precise, int shift, Orientation orientation) {
+      this.firstIndex = firstIndex;
+      this.secondIndex = secondIndex;
+      this.distance = distance;
+      this.precise = precise;
+      this.shift = shift;
+      this.orientation = orientation;
+    }
+
+    public PairInfo(int firstIndex, int secondIndex, ScanningSimilarityInfo info) {
+      this(firstIndex, secondIndex,
+           (info.distance() == null) ? Double.NaN : info.distance(),
+           info.precise, info.shift(), info.orientation());
+    }
+  }
+
+  private final int numberOfMotifs;
+  private final int namesHash;
+  private final TLongObjectHashMap<PairInfo> pairs;
+  private DataOutputStream output;
+
+  private DistanceMatrixCheckpoint(List<String> motifNames) {
+    this.numberOfMotifs = motifNames.size();
+    this.namesHash = motifNames.hashCode();
+    this.pairs = new TLongObjectHashMap<>();
+    this.output = null;
+  }
+
+  // Opens store for appending; records which are already in the file are loaded
+  public static DistanceMatrixCheckpoint open(File file, List<String> motifNames) throws IOException {
+    DistanceMatrixCheckpoint checkpoint = new DistanceMatrixCheckpoint(motifNames);
+    boolean isNew = !file.exists() || file.length() < HEADER_SIZE;
+    if (!isNew) {
+      long numberOfRecords = checkpoint.load(file);
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        FileChannel channel = raf.getChannel();
+        channel.truncate(HEADER_SIZE + numberOfRecords * RECORD_SIZE);
+      }
+    }
+    checkpoint.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, !isNew)));
+    if (isNew) {
+      checkpoint.output.writeInt(MAGIC);
+      checkpoint.output.writeInt(checkpoint.numberOfMotifs);
+      checkpoint.output.writeInt(checkpoint.namesHash);
+      checkpoint.output.flush();
+    }
+    return checkpoint;
+  }
+
+  // Read-only store which merges several shards (e.g. calculated on different nodes)
+  public static DistanceMatrixCheckpoint merged(List<File> files, List<String> motifNames) throws IOException {
+    DistanceMatrixCheckpoint checkpoint = new DistanceMatrixCheckpoint(motifNames);
+    for (File file: files) {
+      checkpoint.load(file);
+    }
+    return checkpoint;
+  }
+
+  // Adds records from a file to the store. Returns number of complete records read.
+  public long load(File file) throws IOException {
+    long numberOfRecords = 0;
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (input.readInt() != MAGIC) {
+        throw new IOException("File `" + file + "` is not a distance matrix checkpoint");
+      }
+      if (input.readInt() != numberOfMotifs || input.readInt() != namesHash) {
+        throw new IOException("Checkpoint `" + file + "` was calculated for another motif collection");
+      }
+      long availableRecords = (file.length() - HEADER_SIZE) / RECORD_SIZE;
+      for (; numberOfRecords < availableRecords; ++numberOfRecords) {
+        int firstIndex = input.readInt();
+        int secondIndex = input.readInt();
+        double distance = input.readDouble();
+        boolean precise = input.readBoolean();
+        int shift = input.readInt();
+        Orientation orientation = (input.readByte() == 0) ? Orientation.direct : Orientation.revcomp;
+        put(new PairInfo(firstIndex, secondIndex, distance, precise, shift, orientation));
+      }
+    }
+    return numberOfRecords;
+  }
+
+  private long key(int firstIndex, int secondIndex) {
+    return (long)firstIndex * numberOfMotifs + secondIndex;
+  }
+
+  private void put(PairInfo info) {
+    pairs.put(key(info.firstIndex, info.secondIndex), info);
+  }
+
+  public boolean contains(int firstIndex, int secondIndex) {
+    return pairs.containsKey(key(firstIndex, secondIndex));
+  }
+
+  public PairInfo get(int firstIndex, int secondIndex) {
+    return pairs.get(key(firstIndex, secondIndex));
+  }
+
+  public int size() {
+    return pairs.size();
+  }
+
+  public void append(PairInfo info) throws IOException {
+    if (output == null) {
+      throw new IllegalStateException("Checkpoint is opened in read-only mode");
+    }
+    output.writeInt(info.firstIndex);
+    output.writeInt(info.secondIndex);
+    output.writeDouble(info.distance);
+    output.writeBoolean(info.precise);
+    output.writeInt(info.shift);
+    output.writeByte(info.orientation.isDirect() ? 0 : 1);
+    put(info);
+  }
+
+  public void flush() throws IOException {
+    if (output != null) {
+      output.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (output != null) {
+      output.close();
+      output = null;
+    }
+  }
+}
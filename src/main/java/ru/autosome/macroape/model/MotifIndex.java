@@ -0,0 +1,220 @@
+package ru.autosome.macroape.model;
+
+import ru.autosome.commons.backgroundModel.GeneralizedBackgroundModel;
+import ru.autosome.commons.importer.InputExtensions;
+import ru.autosome.commons.model.BoundaryType;
+import ru.autosome.commons.model.Discretizer;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToDoubleFunction;
+
+// Vantage-point tree over motifs of a collection with distance 1 - (Jaccard similarity).
+// Similarity is maximized over alignments so distance doesn't strictly obey triangle inequality;
+// that's why search accepts a slack which widens pruning boundaries (the bigger slack - the better recall).
+// Slack needed is estimated while building: it's the largest violation of triangle inequality over triples
+// (vantage point, its parent vantage point, motif of its subtree) whose distances are calculated anyway.
+//
+// File format: header lines `# <key> = <value>` describe parameters the index was built with
+// (and its approximation error), then tab-separated nodes `<inner child> <outer child> <median distance> <motif name>`. Node 0 is the root.
+public class MotifIndex {
+  public static class Node {
+    public final String name;
+    public final double medianDistance;
+    public final int inner; // -1 if absent
+    public final int outer; // -1 if absent
+
+    public Node(String name, double medianDistance, int inner, int outer) {
+      this.name = name;
+      this.medianDistance = medianDistance;
+      this.inner = inner;
+      this.outer = outer;
+    }
+  }
+
+  private static final String APPROXIMATION_ERROR_KEY = "approximation error";
+
+  public final Map<String, String> parameters;
+  public final Double approximationError; // null for indices which were built without its estimation
+  private final List<Node> nodes;
+
+  public MotifIndex(Map<String, String> parameters, Double approximationError, List<Node> nodes) {
+    this.parameters = parameters;
+    this.approximationError = approximationError;
+    this.nodes = nodes;
+  }
+
+  // Parameters which affect distances; index built with other parameters shouldn't be used.
+  // conversionParameters are parameters of conversion of collection motifs into PWMs (see MotifImporter.conversionParameters)
+  public static Map<String, String> parametersOf(double pvalue, BoundaryType pvalueBoundary,
+                                                 GeneralizedBackgroundModel background, Discretizer discretizer,
+                                                 Map<String, String> conversionParameters) {
+    Map<String, String> result = new LinkedHashMap<>();
+    result.put("P", String.valueOf(pvalue));
+    result.put("PB", String.valueOf(pvalueBoundary));
+    result.put("B", background.toString());
+    result.put("V", discretizer.toString());
+    result.putAll(conversionParameters);
+    return result;
+  }
+
+  public boolean compatibleWith(Map<String, String> requiredParameters) {
+    return parameters.equals(requiredParameters);
+  }
+
+  public int size() {
+    return nodes.size();
+  }
+
+  public Set<String> names() {
+    Set<String> result = new HashSet<>();
+    for (Node node: nodes) {
+      result.add(node.name);
+    }
+    return result;
+  }
+
+  // distance is a function of indices of motifs in the names list
+  public static MotifIndex build(Map<String, String> parameters, List<String> names, ToDoubleBiFunction<Integer, Integer> distance) {
+    Builder builder = new Builder(names, distance);
+    List<Integer> indices = new ArrayList<>();
+    for (int i = 0; i < names.size(); ++i) {
+      indices.add(i);
+    }
+    builder.buildSubtree(indices, null);
+    return new MotifIndex(parameters, builder.approximationError, builder.nodes);
+  }
+
+  private static class Builder {
+    final List<String> names;
+    final ToDoubleBiFunction<Integer, Integer> distance;
+    final List<Node> nodes = new ArrayList<>();
+    double approximationError = 0.0;
+
+    Builder(List<String> names, ToDoubleBiFunction<Integer, Integer> distance) {
+      this.names = names;
+      this.distance = distance;
+    }
+
+    // parentDistances are distances from vantage point of a parent node to the motifs with given indices (null for the root).
+    // returns index of subtree root or -1 for an empty subtree
+    int buildSubtree(List<Integer> indices, double[] parentDistances) {
+      if (indices.isEmpty()) {
+        return -1;
+      }
+      int vantagePoint = indices.get(0);
+      int nodeIndex = nodes.size();
+      nodes.add(null); // placeholder to preserve preorder numbering
+
+      List<Integer> rest = indices.subList(1, indices.size());
+      double[] distances = new double[rest.size()];
+      for (int i = 0; i < rest.size(); ++i) {
+        distances[i] = distance.applyAsDouble(vantagePoint, rest.get(i));
+        if (parentDistances != null) {
+          updateApproximationError(parentDistances[0], parentDistances[i + 1], distances[i]);
+        }
+      }
+      double median = 0.0;
+      List<Integer> inner = new ArrayList<>();
+      List<Integer> outer = new ArrayList<>();
+      double[] innerDistances = new double[rest.size()];
+      double[] outerDistances = new double[rest.size()];
+      if (distances.length > 0) {
+        double[] sorted = distances.clone();
+        Arrays.sort(sorted);
+        median = sorted[sorted.length / 2];
+        for (int i = 0; i < rest.size(); ++i) {
+          if (distances[i] < median) {
+            innerDistances[inner.size()] = distances[i];
+            inner.add(rest.get(i));
+          } else {
+            outerDistances[outer.size()] = distances[i];
+            outer.add(rest.get(i));
+          }
+        }
+      }
+      int innerIndex = buildSubtree(inner, innerDistances);
+      int outerIndex = buildSubtree(outer, outerDistances);
+      nodes.set(nodeIndex, new Node(names.get(vantagePoint), median, innerIndex, outerIndex));
+      return nodeIndex;
+    }
+
+    // sides of a triangle: each side shouldn't exceed sum of two others
+    private void updateApproximationError(double first, double second, double third) {
+      double violation = Math.max(first - second - third, Math.max(second - first - third, third - first - second));
+      approximationError = Math.max(approximationError, violation);
+    }
+  }
+
+  // Names of motifs visited while looking for motifs within given radius from a query.
+  // distanceToQuery is evaluated exactly for each visited motif (so caller can cache results)
+  public List<String> search(ToDoubleFunction<String> distanceToQuery, double radius, double slack) {
+    return search(distanceToQuery, () -> radius, slack);
+  }
+
+  // Radius can shrink while searching (e.g. when only the nearest motifs are needed); it's requested after each visited motif
+  public List<String> search(ToDoubleFunction<String> distanceToQuery, DoubleSupplier radiusSupplier, double slack) {
+    List<String> visited = new ArrayList<>();
+    if (nodes.isEmpty()) {
+      return visited;
+    }
+    Deque<Integer> stack = new ArrayDeque<>();
+    stack.push(0);
+    while (!stack.isEmpty()) {
+      Node node = nodes.get(stack.pop());
+      visited.add(node.name);
+      double distance = distanceToQuery.applyAsDouble(node.name);
+      double radius = radiusSupplier.getAsDouble();
+      if (node.outer != -1 && distance + radius + slack >= node.medianDistance) {
+        stack.push(node.outer);
+      }
+      if (node.inner != -1 && distance - radius - slack < node.medianDistance) {
+        stack.push(node.inner);
+      }
+    }
+    return visited;
+  }
+
+  public void save_to_file(File file) throws IOException {
+    try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+      for (Map.Entry<String, String> parameter: parameters.entrySet()) {
+        writer.write("# " + parameter.getKey() + " = " + parameter.getValue() + "\n");
+      }
+      if (approximationError != null) {
+        writer.write("# " + APPROXIMATION_ERROR_KEY + " = " + approximationError + "\n");
+      }
+      for (Node node: nodes) {
+        writer.write(node.inner + "\t" + node.outer + "\t" + node.medianDistance + "\t" + node.name + "\n");
+      }
+    }
+  }
+
+  public static MotifIndex load_from_file(File file) throws IOException {
+    Map<String, String> parameters = new LinkedHashMap<>();
+    Double approximationError = null;
+    List<Node> nodes = new ArrayList<>();
+    try (BufferedReader reader = InputExtensions.openReader(file)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) continue;
+        if (line.startsWith("#")) {
+          String[] keyValue = line.substring(1).split("=", 2);
+          if (keyValue.length == 2 && keyValue[0].trim().equals(APPROXIMATION_ERROR_KEY)) {
+            approximationError = Double.valueOf(keyValue[1].trim());
+          } else if (keyValue.length == 2) {
+            parameters.put(keyValue[0].trim(), keyValue[1].trim());
+          }
+          continue;
+        }
+        String[] tokens = line.split("\t", 4);
+        if (tokens.length != 4) {
+          throw new IOException("Corrupted motif index `" + file + "`: " + line);
+        }
+        nodes.add(new Node(tokens[3], Double.valueOf(tokens[2]), Integer.valueOf(tokens[0]), Integer.valueOf(tokens[1])));
+      }
+    }
+    return new MotifIndex(parameters, approximationError, nodes);
+  }
+}
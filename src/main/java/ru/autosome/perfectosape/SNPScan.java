@@ -3,8 +3,8 @@ package ru.autosome.perfectosape;
 import ru.autosome.commons.backgroundModel.mono.Background;
 import ru.autosome.commons.backgroundModel.mono.BackgroundModel;
 import ru.autosome.commons.backgroundModel.mono.WordwiseBackground;
+import ru.autosome.commons.importer.MotifImporter;
 import ru.autosome.commons.importer.PWMImporter;
-import ru.autosome.commons.model.Named;
 import ru.autosome.commons.motifModel.mono.PWM;
 import ru.autosome.commons.scoringModel.PWMSequenceScoring;
 import ru.autosome.perfectosape.model.SequenceWithSNV;
@@ -12,8 +12,6 @@ import ru.autosome.perfectosape.model.encoded.mono.SequenceMonoEncoded;
 import ru.autosome.perfectosape.model.encoded.mono.SequenceWithSNVMonoEncoded;
 
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.List;
 
 public class SNPScan extends ru.autosome.perfectosape.cli.generalized.SNPScan<SequenceMonoEncoded, SequenceWithSNVMonoEncoded, PWM, PWMSequenceScoring, BackgroundModel> {
   @Override
@@ -35,16 +33,8 @@ public class SNPScan extends ru.autosome.perfectosape.cli.generalized.SNPScan<Se
   }
 
   @Override
-  protected List<Named<PWM>> load_collection_of_pwms() {
-    PWMImporter importer = new PWMImporter(background, dataModel, effectiveCount, transpose, pseudocount);
-    if (singleMotifInCollection) {
-      Named<PWM> named_motif = importer.loadMotifWithName(path_to_collection_of_pwms);
-      List<Named<PWM>> result = new ArrayList<>();
-      result.add(named_motif);
-      return result;
-    } else {
-      return importer.loadMotifCollectionWithNames(path_to_collection_of_pwms);
-    }
+  protected MotifImporter<PWM> motifImporter() {
+    return new PWMImporter(background, dataModel, effectiveCount, transpose, pseudocount);
   }
 
   protected SequenceWithSNVMonoEncoded encodeSequenceWithSNV(SequenceWithSNV sequenceWithSNV){
@@ -57,10 +47,14 @@ public class SNPScan extends ru.autosome.perfectosape.cli.generalized.SNPScan<Se
     return result;
   }
 
+  public static void run(String[] args) throws Exception {
+    ru.autosome.perfectosape.cli.generalized.SNPScan calculation = ru.autosome.perfectosape.SNPScan.from_arglist(args);
+    calculation.process();
+  }
+
   public static void main(String[] args) {
     try {
-      ru.autosome.perfectosape.cli.generalized.SNPScan calculation = ru.autosome.perfectosape.SNPScan.from_arglist(args);
-      calculation.process();
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
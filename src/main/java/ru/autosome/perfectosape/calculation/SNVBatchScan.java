@@ -0,0 +1,294 @@
+package ru.autosome.perfectosape.calculation;
+
+import ru.autosome.ape.calculation.findPvalue.CanFindPvalue;
+import ru.autosome.commons.model.Orientation;
+import ru.autosome.commons.model.PositionInterval;
+import ru.autosome.commons.scoringModel.SequenceScoringModel;
+import ru.autosome.perfectosape.model.PositionWithScore;
+import ru.autosome.perfectosape.model.SequenceWithSNV;
+import ru.autosome.perfectosape.model.encoded.EncodedSequenceType;
+import ru.autosome.perfectosape.model.encoded.EncodedSequenceWithSNVType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Scans a block of SNVs motif by motif: encoded variants of all SNVs are packed into a single byte arena
+// so that a motif is scored against the whole block while its matrix stays in cache.
+// Alleles of equal length share windows of the first of them: its windows are scored once and scores of other
+// alleles are obtained by delta of matrix columns covering the substitution. So a multi-allelic SNV costs a single scan
+// and an indel site costs one scan per distinct allele length.
+// Results are the same as of SingleSNVScan applied to each SNV separately.
+public class SNVBatchScan<SequenceType extends EncodedSequenceType,
+                          SequenceWithSNVType extends EncodedSequenceWithSNVType<SequenceType>,
+                          ModelType extends SequenceScoringModel<SequenceType>> {
+  // Upper bounds of scores are calculated in a different order of summation than scores themselves
+  private static final double scoreTolerance = 1e-6;
+  private static final Orientation[] orientations = Orientation.values();
+
+  private final List<SequenceWithSNV> sequencesWithSNV;
+  private final List<SequenceWithSNVType> encodedSequencesWithSNV;
+  private final int expandRegionLength;
+
+  // Variants of i-th SNV have indices [firstVariant[i]; firstVariant[i+1]) in the arrays below
+  private final int[] firstVariant;
+  private final byte[] arena;
+  private final int[] directOffset;
+  private final int[] revcompOffset;
+  private final int[] numberOfCodes;
+  private final int[] sequenceLength;
+  // Variant whose windows are scanned for this one (the variant itself if its windows are scanned on their own);
+  // codes of a variant differ from codes of its base only in [diffFrom; diffTo) on direct strand
+  private final int[] groupBase;
+  private final int[] diffFrom;
+  private final int[] diffTo;
+  private final int[][] groupVariants; // variants sharing windows of a group base (the base goes first); null for others
+
+  public SNVBatchScan(List<SequenceWithSNV> sequencesWithSNV, List<SequenceWithSNVType> encodedSequencesWithSNV, int expandRegionLength) {
+    if (sequencesWithSNV.size() != encodedSequencesWithSNV.size()) {
+      throw new IllegalArgumentException("Number of sequences and of encoded sequences should be equal");
+    }
+    this.sequencesWithSNV = sequencesWithSNV;
+    this.encodedSequencesWithSNV = encodedSequencesWithSNV;
+    this.expandRegionLength = expandRegionLength;
+
+    this.firstVariant = new int[sequencesWithSNV.size() + 1];
+    int totalVariants = 0;
+    int totalCodes = 0;
+    for (int i = 0; i < sequencesWithSNV.size(); ++i) {
+      firstVariant[i] = totalVariants;
+      for (int allele_number = 0; allele_number < sequencesWithSNV.get(i).num_cases(); ++allele_number) {
+        totalCodes += 2 * encodedSequencesWithSNV.get(i).sequenceVariant(allele_number).directCodes().length;
+        ++totalVariants;
+      }
+    }
+    firstVariant[sequencesWithSNV.size()] = totalVariants;
+
+    this.arena = new byte[totalCodes];
+    this.directOffset = new int[totalVariants];
+    this.revcompOffset = new int[totalVariants];
+    this.numberOfCodes = new int[totalVariants];
+    this.sequenceLength = new int[totalVariants];
+    int offset = 0;
+    for (int i = 0; i < sequencesWithSNV.size(); ++i) {
+      for (int allele_number = 0; allele_number < sequencesWithSNV.get(i).num_cases(); ++allele_number) {
+        int variant = firstVariant[i] + allele_number;
+        SequenceType sequence = encodedSequencesWithSNV.get(i).sequenceVariant(allele_number);
+        byte[] direct = sequence.directCodes();
+        byte[] revcomp = sequence.revcompCodes();
+        numberOfCodes[variant] = direct.length;
+        sequenceLength[variant] = sequence.length();
+        directOffset[variant] = offset;
+        System.arraycopy(direct, 0, arena, offset, direct.length);
+        offset += direct.length;
+        revcompOffset[variant] = offset;
+        System.arraycopy(revcomp, 0, arena, offset, revcomp.length);
+        offset += revcomp.length;
+      }
+    }
+
+    this.groupBase = new int[totalVariants];
+    this.diffFrom = new int[totalVariants];
+    this.diffTo = new int[totalVariants];
+    for (int i = 0; i < sequencesWithSNV.size(); ++i) {
+      for (int variant = firstVariant[i]; variant < firstVariant[i + 1]; ++variant) {
+        int base = firstVariant[i];
+        while (numberOfCodes[base] != numberOfCodes[variant]) { // the first allele of the same length
+          ++base;
+        }
+        groupBase[variant] = base;
+        int from = 0;
+        int to = numberOfCodes[variant];
+        while (from < to && arena[directOffset[variant] + from] == arena[directOffset[base] + from]) {
+          ++from;
+        }
+        while (to > from && arena[directOffset[variant] + to - 1] == arena[directOffset[base] + to - 1]) {
+          --to;
+        }
+        diffFrom[variant] = from;
+        diffTo[variant] = to;
+      }
+    }
+    this.groupVariants = new int[totalVariants][];
+    for (int i = 0; i < sequencesWithSNV.size(); ++i) {
+      for (int base = firstVariant[i]; base < firstVariant[i + 1]; ++base) {
+        if (groupBase[base] == base) {
+          int numberOfMembers = 0;
+          for (int variant = base; variant < firstVariant[i + 1]; ++variant) {
+            if (groupBase[variant] == base) {
+              ++numberOfMembers;
+            }
+          }
+          groupVariants[base] = new int[numberOfMembers];
+          int k = 0;
+          for (int variant = base; variant < firstVariant[i + 1]; ++variant) {
+            if (groupBase[variant] == base) {
+              groupVariants[base][k++] = variant;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  public int size() {
+    return sequencesWithSNV.size();
+  }
+
+  // Windows are traversed in the same order as in PositionInterval#findBestPosition so that ties are resolved identically.
+  // Windows which can't score above the current best one (or above scoreFloor) are abandoned midway.
+  // Resulting score is exact if it's greater than scoreFloor.
+  private PositionWithScore findBestPosition(int variant, PositionInterval interval, ModelType pwm, double scoreFloor) {
+    int windowLength = pwm.encodedWindowLength();
+    int from = Math.max(interval.left, 0);
+    int to = Math.min(interval.right, sequenceLength[variant] - pwm.length());
+    int directStart = directOffset[variant];
+    int revcompEnd = revcompOffset[variant] + numberOfCodes[variant] - windowLength;
+
+    int bestPosition = 0;
+    Orientation bestOrientation = null;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (int pos = from; pos <= to; ++pos) {
+      double directScore = pwm.scoreEncodedWindowIfAbove(arena, directStart + pos, Math.max(bestScore, scoreFloor) - scoreTolerance);
+      if (directScore > bestScore) {
+        bestScore = directScore;
+        bestPosition = pos;
+        bestOrientation = Orientation.direct;
+      }
+      double revcompScore = pwm.scoreEncodedWindowIfAbove(arena, revcompEnd - pos, Math.max(bestScore, scoreFloor) - scoreTolerance);
+      if (revcompScore > bestScore) {
+        bestScore = revcompScore;
+        bestPosition = pos;
+        bestOrientation = Orientation.revcomp;
+      }
+    }
+    PositionWithScore result = new PositionWithScore();
+    result.replaceIfBetter(bestPosition, bestOrientation, bestScore);
+    return result;
+  }
+
+  // Best positions of variants which share windows of the first of them (its group base).
+  // Windows of the base are scored as in findBestPosition (scoring is abandoned when a window can't beat the best one);
+  // scores of other variants are obtained by delta of the columns covering their differing codes.
+  // A delta added to an abandoned base window gives an upper bound of a variant score, so a variant window is
+  // scored directly only if it can compete for the best. Estimated score can differ from a directly calculated one
+  // in the last bits, so competing windows are rescored directly and the result (including choice between windows
+  // with equal scores) is the same as of findBestPosition. Resulting score is exact if it's greater than scoreFloor.
+  private PositionWithScore[] findBestPositionsOfGroup(int[] variants, PositionInterval interval, ModelType pwm, double scoreFloor) {
+    int base = variants[0];
+    int windowLength = pwm.encodedWindowLength();
+    int from = Math.max(interval.left, 0);
+    int to = Math.min(interval.right, sequenceLength[base] - pwm.length());
+    int numberOfBaseCodes = numberOfCodes[base];
+
+    double[] bestScores = new double[variants.length];
+    int[] bestPositions = new int[variants.length];
+    Orientation[] bestOrientations = new Orientation[variants.length];
+    Arrays.fill(bestScores, Double.NEGATIVE_INFINITY);
+    for (int pos = from; pos <= to; ++pos) {
+      for (Orientation orientation: orientations) {
+        boolean direct = (orientation == Orientation.direct);
+        int windowStart = direct ? pos : numberOfBaseCodes - windowLength - pos; // index of the first code of a window
+        int baseWindow = (direct ? directOffset[base] : revcompOffset[base]) + windowStart;
+        double baseThreshold = Math.max(bestScores[0], scoreFloor) - scoreTolerance;
+        double baseScore = pwm.scoreEncodedWindowIfAbove(arena, baseWindow, baseThreshold);
+        boolean baseScoreIsExact = (baseScore >= baseThreshold); // otherwise it's an upper bound
+        if (baseScoreIsExact && baseScore > bestScores[0]) {
+          bestScores[0] = baseScore;
+          bestPositions[0] = pos;
+          bestOrientations[0] = orientation;
+        }
+        for (int k = 1; k < variants.length; ++k) {
+          int variant = variants[k];
+          int fromColumn = (direct ? diffFrom[variant] : numberOfBaseCodes - diffTo[variant]) - windowStart;
+          int toColumn = (direct ? diffTo[variant] : numberOfBaseCodes - diffFrom[variant]) - windowStart;
+          fromColumn = Math.max(fromColumn, 0);
+          toColumn = Math.min(toColumn, windowLength);
+          double score;
+          if (fromColumn >= toColumn && baseScoreIsExact) { // window doesn't cover differing codes, so its score is the same
+            score = baseScore;
+          } else {
+            int variantWindow = (direct ? directOffset[variant] : revcompOffset[variant]) + windowStart;
+            double threshold = Math.max(bestScores[k], scoreFloor) - scoreTolerance;
+            double estimate = baseScore; // an upper bound if base window was abandoned
+            if (fromColumn < toColumn) {
+              estimate += pwm.encodedWindowScoreDelta(arena, variantWindow, baseWindow, fromColumn, toColumn);
+            }
+            if (estimate < threshold) {
+              continue;
+            }
+            score = pwm.scoreEncodedWindowIfAbove(arena, variantWindow, threshold);
+            if (score < threshold) {
+              continue;
+            }
+          }
+          if (score > bestScores[k]) {
+            bestScores[k] = score;
+            bestPositions[k] = pos;
+            bestOrientations[k] = orientation;
+          }
+        }
+      }
+    }
+    PositionWithScore[] result = new PositionWithScore[variants.length];
+    for (int k = 0; k < variants.length; ++k) {
+      result[k] = new PositionWithScore();
+      result[k].replaceIfBetter(bestPositions[k], bestOrientations[k], bestScores[k]);
+    }
+    return result;
+  }
+
+  // Scans of each SNV of a block by a motif. Null for SNVs which are shorter than motif
+  // and for SNVs where no allele can score above insignificantScoreBound.
+  public List<SingleSNVScan<SequenceType, SequenceWithSNVType, ModelType>> scansByMotif(ModelType pwm, CanFindPvalue pvalueCalculator,
+                                                                                        double insignificantScoreBound) {
+    List<SingleSNVScan<SequenceType, SequenceWithSNVType, ModelType>> result = new ArrayList<>(size());
+    for (int i = 0; i < size(); ++i) {
+      SequenceWithSNV sequenceWithSNV = sequencesWithSNV.get(i);
+      if (sequenceWithSNV.length() < pwm.length()) {
+        result.add(null);
+        continue;
+      }
+      PositionInterval[] intervals = new PositionInterval[sequenceWithSNV.num_cases()];
+      PositionWithScore[] bestPositions = new PositionWithScore[sequenceWithSNV.num_cases()];
+      for (int allele_number = 0; allele_number < sequenceWithSNV.num_cases(); ++allele_number) {
+        intervals[allele_number] = sequenceWithSNV.positionsOverlappingVariant(allele_number, pwm.length()).expand(expandRegionLength);
+      }
+      for (int allele_number = 0; allele_number < sequenceWithSNV.num_cases(); ++allele_number) {
+        int variant = firstVariant[i] + allele_number;
+        if (groupBase[variant] != variant) {
+          continue; // scanned together with its group base
+        }
+        int[] group = groupVariants[variant];
+        if (group.length == 1) {
+          bestPositions[allele_number] = findBestPosition(variant, intervals[allele_number], pwm, insignificantScoreBound);
+        } else {
+          PositionWithScore[] groupBestPositions = findBestPositionsOfGroup(group, intervals[allele_number], pwm, insignificantScoreBound);
+          for (int k = 0; k < group.length; ++k) {
+            bestPositions[group[k] - firstVariant[i]] = groupBestPositions[k];
+          }
+        }
+      }
+      boolean anyAboveBound = false;
+      for (PositionWithScore bestPosition: bestPositions) {
+        anyAboveBound = anyAboveBound || (bestPosition.getScore() > insignificantScoreBound);
+      }
+      if (!anyAboveBound) {
+        result.add(null);
+        continue;
+      }
+      // Alleles which didn't pass the bound are rescanned exactly (they are necessary for fold change)
+      for (int allele_number = 0; allele_number < sequenceWithSNV.num_cases(); ++allele_number) {
+        if (bestPositions[allele_number].getScore() <= insignificantScoreBound) {
+          bestPositions[allele_number] = findBestPosition(firstVariant[i] + allele_number, intervals[allele_number], pwm, Double.NEGATIVE_INFINITY);
+        }
+      }
+      result.add(new SingleSNVScan<>(pwm, sequenceWithSNV, encodedSequencesWithSNV.get(i), pvalueCalculator, expandRegionLength, bestPositions));
+    }
+    return result;
+  }
+
+  public List<SingleSNVScan<SequenceType, SequenceWithSNVType, ModelType>> scansByMotif(ModelType pwm, CanFindPvalue pvalueCalculator) {
+    return scansByMotif(pwm, pvalueCalculator, Double.NEGATIVE_INFINITY);
+  }
+}
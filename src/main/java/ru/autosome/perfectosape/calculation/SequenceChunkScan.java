@@ -0,0 +1,95 @@
+package ru.autosome.perfectosape.calculation;
+
+import ru.autosome.commons.model.Alphabet;
+import ru.autosome.commons.model.Orientation;
+import ru.autosome.commons.scoringModel.SequenceScoringModel;
+import ru.autosome.perfectosape.model.MotifSite;
+import ru.autosome.perfectosape.model.ThresholdEvaluator;
+
+import java.util.List;
+
+// Scans a chunk of a long sequence (e.g. a part of a chromosome) with motifs on both strands.
+// Chunk is followed by several letters of the next chunk (at least motif length - 1) so that sites
+// which start in the chunk but end in the next one are found. Only sites starting at the first
+// numberOfOwnPositions letters are reported, thus each site of a sequence is found in exactly one chunk.
+// Scan object keeps score buffers, so it shouldn't be shared between threads.
+public class SequenceChunkScan<SequenceType, ModelType extends SequenceScoringModel<SequenceType>> {
+  private static final String LETTERS = "ACGTN";
+  private static final String COMPLEMENT_LETTERS = "TGCAN";
+
+  private final byte[] letterCodes; // single letter codes (see Alphabet.monoACGTN)
+  private final long firstPosition;
+  private final int numberOfOwnPositions;
+  private final byte[] directCodes;
+  private final byte[] revcompCodes;
+  private final double[] directScores;
+  private final double[] revcompScores;
+
+  public SequenceChunkScan(Alphabet alphabet, byte[] letterCodes, long firstPosition, int numberOfOwnPositions) {
+    this.letterCodes = letterCodes;
+    this.firstPosition = firstPosition;
+    this.numberOfOwnPositions = numberOfOwnPositions;
+    if (letterCodes.length >= alphabet.getCodeLength()) {
+      this.directCodes = alphabet.convertLetterCodes(letterCodes);
+      this.revcompCodes = alphabet.convertLetterCodesReverseComplement(letterCodes);
+    } else {
+      this.directCodes = new byte[0];
+      this.revcompCodes = new byte[0];
+    }
+    this.directScores = new double[numberOfOwnPositions];
+    this.revcompScores = new double[numberOfOwnPositions];
+  }
+
+  // Adds sites with P-value not greater than cutoff to result (in arbitrary order).
+  // P-values are taken from motif's P-value calculator; scores not greater than
+  // insignificantScoreBound of a motif aren't looked up at all.
+  public void findSites(int motifIndex, ThresholdEvaluator<SequenceType, ModelType> motifEvaluator,
+                        double pvalueCutoff, List<MotifSite> result) {
+    ModelType pwm = motifEvaluator.pwm;
+    int windowLength = pwm.encodedWindowLength();
+    int numberOfWindows = Math.min(numberOfOwnPositions, directCodes.length - windowLength + 1);
+    if (numberOfWindows <= 0) {
+      return;
+    }
+    // direct window at position pos corresponds to revcomp window at (directCodes.length - windowLength - pos)
+    int firstRevcompWindow = directCodes.length - windowLength - (numberOfWindows - 1);
+    pwm.scoreEncodedWindows(directCodes, 0, numberOfWindows, directScores);
+    pwm.scoreEncodedWindows(revcompCodes, firstRevcompWindow, numberOfWindows, revcompScores);
+
+    double bound = motifEvaluator.insignificantScoreBound;
+    for (int pos = 0; pos < numberOfWindows; ++pos) {
+      double directScore = directScores[pos];
+      if (directScore > bound) {
+        addIfSignificant(result, motifIndex, motifEvaluator, pos, Orientation.direct, directScore, pvalueCutoff);
+      }
+      double revcompScore = revcompScores[numberOfWindows - 1 - pos];
+      if (revcompScore > bound) {
+        addIfSignificant(result, motifIndex, motifEvaluator, pos, Orientation.revcomp, revcompScore, pvalueCutoff);
+      }
+    }
+  }
+
+  private void addIfSignificant(List<MotifSite> result, int motifIndex, ThresholdEvaluator<SequenceType, ModelType> motifEvaluator,
+                                int pos, Orientation orientation, double score, double pvalueCutoff) {
+    double pvalue = motifEvaluator.pvalueCalculator.pvalueByThreshold(score).pvalue;
+    if (pvalue <= pvalueCutoff) {
+      result.add(new MotifSite(motifIndex, firstPosition + pos, orientation, score, pvalue));
+    }
+  }
+
+  // Word of a site (of given length) in the chunk, on the strand of the site
+  public String word(MotifSite site, int length) {
+    int start = (int)(site.position - firstPosition);
+    StringBuilder result = new StringBuilder(length);
+    if (site.orientation == Orientation.direct) {
+      for (int i = start; i < start + length; ++i) {
+        result.append(LETTERS.charAt(letterCodes[i]));
+      }
+    } else {
+      for (int i = start + length - 1; i >= start; --i) {
+        result.append(COMPLEMENT_LETTERS.charAt(letterCodes[i]));
+      }
+    }
+    return result.toString();
+  }
+}
@@ -8,6 +8,9 @@ import ru.autosome.perfectosape.model.*;
 import ru.autosome.perfectosape.model.encoded.EncodedSequenceType;
 import ru.autosome.perfectosape.model.encoded.EncodedSequenceWithSNVType;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SingleSNVScan<SequenceType extends EncodedSequenceType,
                            SequenceWithSNVType extends EncodedSequenceWithSNVType<SequenceType>,
                            ModelType extends SequenceScoringModel<SequenceType>> {
@@ -16,6 +19,7 @@ public class SingleSNVScan<SequenceType extends EncodedSequenceType,
   private final SequenceWithSNVType encodedSequenceWithSNP;
   private final CanFindPvalue pvalueCalculator;
   private final int expandRegionLength;
+  private PositionWithScore[] cache_bestPositionsOfVariants;
 
   public SingleSNVScan(ModelType pwm, SequenceWithSNV sequenceWithSNV, SequenceWithSNVType encodedSequenceWithSNP, CanFindPvalue pvalueCalculator, int expandRegionLength) {
     if (sequenceWithSNV.length() < pwm.length()) {
@@ -29,25 +33,40 @@ public class SingleSNVScan<SequenceType extends EncodedSequenceType,
     if (sequenceWithSNV.length() < pwm.length()) {
       throw new IllegalArgumentException("Can't estimate affinity to sequence '" + sequenceWithSNV + "' (length " + sequenceWithSNV.length() + ") for motif of length " + pwm.length());
     }
-    if (sequenceWithSNV.num_cases() != 2) {
-      throw new IllegalArgumentException("Unable to process more than two variants of nucleotide for SNP " + sequenceWithSNV);
-    }
   }
 
-  PositionInterval positionsToCheck() {
-    return sequenceWithSNV.positionsOverlappingSNV(pwm.length()).expand(expandRegionLength);
+  // Best positions of variants are already known (see SNVBatchScan)
+  SingleSNVScan(ModelType pwm, SequenceWithSNV sequenceWithSNV, SequenceWithSNVType encodedSequenceWithSNP, CanFindPvalue pvalueCalculator, int expandRegionLength,
+                PositionWithScore[] bestPositionsOfVariants) {
+    this(pwm, sequenceWithSNV, encodedSequenceWithSNP, pvalueCalculator, expandRegionLength);
+    this.cache_bestPositionsOfVariants = bestPositionsOfVariants;
+  }
+
+  PositionInterval positionsToCheck(int allele_number) {
+    return sequenceWithSNV.positionsOverlappingVariant(allele_number, pwm.length()).expand(expandRegionLength);
+  }
+
+  // Each allele is scanned separately; SNVBatchScan gives the same result sharing windows of alleles of equal length
+  PositionWithScore[] bestPositionsOfVariants() {
+    if (cache_bestPositionsOfVariants == null) {
+      cache_bestPositionsOfVariants = new PositionWithScore[sequenceWithSNV.num_cases()];
+      for (int allele_number = 0; allele_number < sequenceWithSNV.num_cases(); ++allele_number) {
+        SequenceType encodedSequence = encodedSequenceWithSNP.sequenceVariant(allele_number);
+        cache_bestPositionsOfVariants[allele_number] = positionsToCheck(allele_number).findBestPosition(encodedSequence, pwm);
+      }
+    }
+    return cache_bestPositionsOfVariants;
   }
 
   public RegionAffinityVariantInfo affinityVariantInfo(int allele_number) {
-    SequenceType encodedSequence = encodedSequenceWithSNP.sequenceVariant(allele_number);
-    PositionWithScore bestPositionWithScore = positionsToCheck().findBestPosition(encodedSequence, pwm);
+    PositionWithScore bestPositionWithScore = bestPositionsOfVariants()[allele_number];
 
     Position pos = bestPositionWithScore.getPosition();
-    Position pos_centered = new Position(pos.position() - sequenceWithSNV.left.length(), pos.orientation());
+    Position pos_centered = new Position(pos.position() - sequenceWithSNV.pos_of_snp(), pos.orientation());
 
     double score = bestPositionWithScore.getScore();
     double pvalue = pvalueCalculator.pvalueByThreshold(score).pvalue;
-    Character allele = sequenceWithSNV.mid[allele_number];
+    String allele = sequenceWithSNV.alleleString(allele_number);
     Sequence sequence = sequenceWithSNV.sequence_variants()[allele_number];
     Sequence word = sequence.substring(pos, pwm.length());
     return new RegionAffinityVariantInfo(pos_centered, allele, pvalue, word);
@@ -56,4 +75,14 @@ public class SingleSNVScan<SequenceType extends EncodedSequenceType,
   public RegionAffinityInfos affinityInfos() {
     return new RegionAffinityInfos(affinityVariantInfo(0), affinityVariantInfo(1));
   }
+
+  // Affinity changes of each alternative allele against the reference (the first) one
+  public List<RegionAffinityInfos> affinityInfosAgainstReference() {
+    RegionAffinityVariantInfo referenceInfo = affinityVariantInfo(0);
+    List<RegionAffinityInfos> result = new ArrayList<>(sequenceWithSNV.num_cases() - 1);
+    for (int allele_number = 1; allele_number < sequenceWithSNV.num_cases(); ++allele_number) {
+      result.add(new RegionAffinityInfos(referenceInfo, affinityVariantInfo(allele_number)));
+    }
+    return result;
+  }
 }
@@ -0,0 +1,180 @@
+package ru.autosome.perfectosape.cli;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import ru.autosome.perfectosape.model.RegionAffinityInfos;
+import ru.autosome.perfectosape.model.RegionAffinityVariantInfo;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Columnar binary file of results, intended to be memory-mapped by downstream tools.
+// All numbers are big-endian (as in DataOutputStream and default ByteBuffer); each section is padded to 8 bytes
+// so that columns of a block are aligned when a file is mapped.
+//
+// Header:  bytes "SNPSCANB", int version, int number of motifs, then motif names as (int length, UTF-8 bytes).
+// Block (one per batch of SNPs): int number of records, int number of SNPs in a batch, long ordinal of the first SNP,
+//   columns: double[] P-value 1, double[] P-value 2,
+//            int[] SNP ordinal (index of SNP in input), int[] motif index, int[] position 1, int[] position 2,
+//            byte[] allele number (of alternative allele), byte[] orientation 1, byte[] orientation 2 (0 - direct, 1 - revcomp);
+//   then names of SNPs having records: int number of names, (int SNP ordinal, int length, UTF-8 bytes) for each.
+// Records of a block are ordered by motif, then by SNP.
+// Record values are the same as in text output: allele 1 is the reference allele, allele 2 is an alternative one.
+public class SNPScanBinarySink implements SNPScanResultSink {
+  private static final byte[] MAGIC = "SNPSCANB".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final DataOutputStream output;
+  private long bytesWritten;
+  private long numberOfSNPsWritten;
+
+  public SNPScanBinarySink(File file) throws IOException {
+    this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    this.bytesWritten = 0;
+    this.numberOfSNPsWritten = 0;
+  }
+
+  private static class BinaryBatch implements Batch {
+    final String[] snpNames; // null for SNPs without records
+    final TDoubleArrayList pvalues_1 = new TDoubleArrayList();
+    final TDoubleArrayList pvalues_2 = new TDoubleArrayList();
+    final TIntArrayList snpIndices = new TIntArrayList();
+    final TIntArrayList motifIndices = new TIntArrayList();
+    final TIntArrayList positions_1 = new TIntArrayList();
+    final TIntArrayList positions_2 = new TIntArrayList();
+    final TByteArrayList alleleNumbers = new TByteArrayList();
+    final TByteArrayList orientations_1 = new TByteArrayList();
+    final TByteArrayList orientations_2 = new TByteArrayList();
+
+    BinaryBatch(int numberOfSNPs) {
+      snpNames = new String[numberOfSNPs];
+    }
+
+    @Override
+    public void append(int snpIndex, String snpName, int motifIndex, String motifName, int alleleNumber, RegionAffinityInfos affinityInfos) {
+      if (alleleNumber > Byte.MAX_VALUE) {
+        throw new IllegalArgumentException("Too many alleles of SNP " + snpName + " to be stored in binary format");
+      }
+      RegionAffinityVariantInfo info_1 = affinityInfos.getInfo_1();
+      RegionAffinityVariantInfo info_2 = affinityInfos.getInfo_2();
+      snpNames[snpIndex] = snpName;
+      pvalues_1.add(info_1.getPvalue());
+      pvalues_2.add(info_2.getPvalue());
+      snpIndices.add(snpIndex);
+      motifIndices.add(motifIndex);
+      positions_1.add(info_1.getPosition().position());
+      positions_2.add(info_2.getPosition().position());
+      alleleNumbers.add((byte) alleleNumber);
+      orientations_1.add(info_1.getPosition().isDirect() ? (byte) 0 : (byte) 1);
+      orientations_2.add(info_2.getPosition().isDirect() ? (byte) 0 : (byte) 1);
+    }
+  }
+
+  private void writeString(String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+    bytesWritten += 4 + bytes.length;
+  }
+
+  private void writePadding() throws IOException {
+    while (bytesWritten % 8 != 0) {
+      output.writeByte(0);
+      ++bytesWritten;
+    }
+  }
+
+  private void writeInts(TIntArrayList values) throws IOException {
+    for (int i = 0; i < values.size(); ++i) {
+      output.writeInt(values.getQuick(i));
+    }
+    bytesWritten += 4L * values.size();
+  }
+
+  private void writeDoubles(TDoubleArrayList values) throws IOException {
+    for (int i = 0; i < values.size(); ++i) {
+      output.writeDouble(values.getQuick(i));
+    }
+    bytesWritten += 8L * values.size();
+  }
+
+  private void writeBytes(TByteArrayList values) throws IOException {
+    output.write(values.toArray());
+    bytesWritten += values.size();
+  }
+
+  @Override
+  public void writeHeader(List<String> motifNames) throws IOException {
+    output.write(MAGIC);
+    output.writeInt(VERSION);
+    output.writeInt(motifNames.size());
+    bytesWritten += MAGIC.length + 8;
+    for (String motifName: motifNames) {
+      writeString(motifName);
+    }
+    writePadding();
+  }
+
+  @Override
+  public Batch newBatch(int numberOfSNPs) {
+    return new BinaryBatch(numberOfSNPs);
+  }
+
+  @Override
+  public void writeBatch(Batch batch) throws IOException {
+    BinaryBatch binaryBatch = (BinaryBatch) batch;
+    long firstOrdinal = numberOfSNPsWritten;
+
+    TIntArrayList snpOrdinals = new TIntArrayList(binaryBatch.snpIndices.size());
+    for (int i = 0; i < binaryBatch.snpIndices.size(); ++i) {
+      long ordinal = firstOrdinal + binaryBatch.snpIndices.getQuick(i);
+      if (ordinal > Integer.MAX_VALUE) {
+        throw new IOException("Too many SNPs to be stored in binary format");
+      }
+      snpOrdinals.add((int) ordinal);
+    }
+
+    output.writeInt(snpOrdinals.size());
+    output.writeInt(binaryBatch.snpNames.length);
+    output.writeLong(firstOrdinal);
+    bytesWritten += 16;
+
+    writeDoubles(binaryBatch.pvalues_1);
+    writeDoubles(binaryBatch.pvalues_2);
+    writeInts(snpOrdinals);
+    writeInts(binaryBatch.motifIndices);
+    writeInts(binaryBatch.positions_1);
+    writeInts(binaryBatch.positions_2);
+    writeBytes(binaryBatch.alleleNumbers);
+    writeBytes(binaryBatch.orientations_1);
+    writeBytes(binaryBatch.orientations_2);
+    writePadding();
+
+    int numberOfNames = 0;
+    for (String snpName: binaryBatch.snpNames) {
+      if (snpName != null) {
+        ++numberOfNames;
+      }
+    }
+    output.writeInt(numberOfNames);
+    bytesWritten += 4;
+    for (int snpIndex = 0; snpIndex < binaryBatch.snpNames.length; ++snpIndex) {
+      if (binaryBatch.snpNames[snpIndex] != null) {
+        output.writeInt((int) (firstOrdinal + snpIndex));
+        bytesWritten += 4;
+        writeString(binaryBatch.snpNames[snpIndex]);
+      }
+    }
+    writePadding();
+
+    numberOfSNPsWritten += binaryBatch.snpNames.length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+}
@@ -0,0 +1,22 @@
+package ru.autosome.perfectosape.cli;
+
+import ru.autosome.perfectosape.model.RegionAffinityInfos;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// Destination of SNPScan results.
+// Results of a batch of SNPs are collected by a worker thread (a batch is not shared between threads)
+// and then written by a single thread in the order of batches in input.
+public interface SNPScanResultSink extends Closeable {
+  interface Batch {
+    // snpIndex is an index of SNP in a batch, motifIndex is an index of motif in a collection,
+    // alleleNumber is a number of alternative allele compared with the reference one (reference allele has number 0)
+    void append(int snpIndex, String snpName, int motifIndex, String motifName, int alleleNumber, RegionAffinityInfos affinityInfos);
+  }
+
+  void writeHeader(List<String> motifNames) throws IOException;
+  Batch newBatch(int numberOfSNPs);
+  void writeBatch(Batch batch) throws IOException;
+}
@@ -0,0 +1,81 @@
+package ru.autosome.perfectosape.cli;
+
+import ru.autosome.perfectosape.model.RegionAffinityInfos;
+
+import java.io.*;
+import java.util.List;
+
+// Tab-separated table of results. Rows of a batch are grouped by SNP (in the order of SNPs in a batch).
+public class SNPScanTextSink implements SNPScanResultSink {
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final Writer writer;
+  private final boolean shortFormat;
+  private final boolean useLogFoldChange;
+  private final boolean printHeader;
+
+  public SNPScanTextSink(OutputStream outputStream, boolean shortFormat, boolean useLogFoldChange, boolean printHeader) {
+    this.writer = new BufferedWriter(new OutputStreamWriter(outputStream), BUFFER_SIZE);
+    this.shortFormat = shortFormat;
+    this.useLogFoldChange = useLogFoldChange;
+    this.printHeader = printHeader;
+  }
+
+  private class TextBatch implements Batch {
+    final StringBuilder[] outputs;
+
+    TextBatch(int numberOfSNPs) {
+      outputs = new StringBuilder[numberOfSNPs];
+    }
+
+    @Override
+    public void append(int snpIndex, String snpName, int motifIndex, String motifName, int alleleNumber, RegionAffinityInfos affinityInfos) {
+      if (outputs[snpIndex] == null) {
+        outputs[snpIndex] = new StringBuilder();
+      }
+      StringBuilder output = outputs[snpIndex];
+      output.append(snpName).append('\t').append(motifName).append('\t');
+      if (shortFormat) {
+        affinityInfos.appendShortTo(output);
+      } else {
+        affinityInfos.appendTo(output, useLogFoldChange);
+      }
+      output.append('\n');
+    }
+  }
+
+  @Override
+  public void writeHeader(List<String> motifNames) throws IOException {
+    if (!printHeader) {
+      return;
+    }
+    if (shortFormat) {
+      writer.write("# SNP name\tmotif\tP-value 1\tP-value 2\tposition 1\torientation 1\tposition 2\torientation 2");
+    } else if (useLogFoldChange) {
+      writer.write("# SNP name\tmotif\tposition 1\torientation 1\tword 1\tposition 2\torientation 2\tword 2\tallele 1/allele 2\tP-value 1\tP-value 2\tFold change (log2 scale)");
+    } else {
+      writer.write("# SNP name\tmotif\tposition 1\torientation 1\tword 1\tposition 2\torientation 2\tword 2\tallele 1/allele 2\tP-value 1\tP-value 2\tFold change");
+    }
+    writer.write('\n');
+  }
+
+  @Override
+  public Batch newBatch(int numberOfSNPs) {
+    return new TextBatch(numberOfSNPs);
+  }
+
+  @Override
+  public void writeBatch(Batch batch) throws IOException {
+    for (StringBuilder output: ((TextBatch) batch).outputs) {
+      if (output != null) {
+        writer.append(output);
+      }
+    }
+  }
+
+  // Underlying stream (usually stdout) is flushed but not closed
+  @Override
+  public void close() throws IOException {
+    writer.flush();
+  }
+}
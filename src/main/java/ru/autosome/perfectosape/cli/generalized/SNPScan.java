@@ -5,6 +5,11 @@ import ru.autosome.ape.calculation.findPvalue.FindPvalueAPE;
 import ru.autosome.ape.calculation.findPvalue.FindPvalueBsearch;
 import ru.autosome.commons.backgroundModel.GeneralizedBackgroundModel;
 import ru.autosome.commons.cli.Helper;
+import ru.autosome.commons.importer.AsciiLineReader;
+import ru.autosome.commons.importer.IndexedFasta;
+import ru.autosome.commons.importer.InputExtensions;
+import ru.autosome.commons.importer.LazyMotifCollection;
+import ru.autosome.commons.importer.MotifImporter;
 import ru.autosome.commons.model.Discretizer;
 import ru.autosome.commons.model.Named;
 import ru.autosome.commons.model.PseudocountCalculator;
@@ -14,6 +19,11 @@ import ru.autosome.commons.motifModel.HasLength;
 import ru.autosome.commons.motifModel.ScoreDistribution;
 import ru.autosome.commons.motifModel.types.DataModel;
 import ru.autosome.commons.scoringModel.SequenceScoringModel;
+import ru.autosome.commons.support.Lazy;
+import ru.autosome.perfectosape.cli.SNPScanBinarySink;
+import ru.autosome.perfectosape.cli.SNPScanResultSink;
+import ru.autosome.perfectosape.cli.SNPScanTextSink;
+import ru.autosome.perfectosape.calculation.SNVBatchScan;
 import ru.autosome.perfectosape.calculation.SingleSNVScan;
 import ru.autosome.perfectosape.model.RegionAffinityInfos;
 import ru.autosome.perfectosape.model.SequenceWithSNV;
@@ -25,6 +35,7 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.*;
 
 abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLength,
                               SequenceWithSNVType extends EncodedSequenceWithSNVType<SequenceType>,
@@ -34,24 +45,61 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
 
   protected abstract void initialize_default_background();
   protected abstract void extract_background(String s);
-  protected abstract List<Named<MotifType>> load_collection_of_pwms();
+  protected abstract MotifImporter<MotifType> motifImporter();
+
+  protected LazyMotifCollection<MotifType> load_collection_of_pwms() throws FileNotFoundException {
+    LazyMotifCollection<MotifType> collection;
+    if (singleMotifInCollection) {
+      Named<MotifType> motif = motifImporter().loadMotifWithName(path_to_collection_of_pwms);
+      if (motif == null) {
+        throw new FileNotFoundException("Specified motif file `" + path_to_collection_of_pwms + "` not exists");
+      }
+      collection = LazyMotifCollection.of(Collections.singletonList(motif));
+    } else {
+      collection = motifImporter().lazyMotifCollection(path_to_collection_of_pwms);
+    }
+    return (selectedMotifNames == null) ? collection : collection.filter(selectedMotifNames);
+  }
 
+  // Motifs are loaded at once (their lengths are necessary to read SNPs), but scoring models
+  // and P-value calculators (with their threshold tables) are created when motif is used for the first time.
   protected void load_collection_of_pwms_with_evaluators() throws FileNotFoundException {
-    List<Named<MotifType>> motifList = load_collection_of_pwms();
+    motifList = load_collection_of_pwms().loadAll();
 
-    pwmCollection = new ArrayList<>();
+    pwmCollection = new ArrayList<>(motifList.size());
     for (Named<MotifType> motif: motifList) {
-      CanFindPvalue pvalueCalculator;
+      File thresholds_file;
       if (thresholds_path == null) {
-        pvalueCalculator = new FindPvalueAPE<>(motif.getObject(), background, discretizer);
+        thresholds_file = null;
       } else if (singleMotifInCollection) {
-        pvalueCalculator = new FindPvalueBsearch(thresholds_path);
+        thresholds_file = thresholds_path;
       } else {
-        File thresholds_file = new File(thresholds_path, motif.getName() + ".thr");
-        pvalueCalculator = new FindPvalueBsearch(thresholds_file);
+        thresholds_file = InputExtensions.possiblyCompressedFile(new File(thresholds_path, motif.getName() + ".thr"));
+        if (!thresholds_file.exists()) {
+          throw new FileNotFoundException("Thresholds file `" + thresholds_file + "` for motif " + motif.getName() + " not exists");
+        }
+      }
+      pwmCollection.add(Lazy.of(() -> thresholdEvaluator(motif, thresholds_file)));
+    }
+  }
+
+  protected ThresholdEvaluator<SequenceType, ModelType> thresholdEvaluator(Named<MotifType> motif, File thresholds_file) {
+    CanFindPvalue pvalueCalculator;
+    // Precalculated thresholds give a score below which SNV-motif pairs can't pass P-value cutoff
+    double insignificantScoreBound = Double.NEGATIVE_INFINITY;
+    if (thresholds_file == null) {
+      pvalueCalculator = new FindPvalueAPE<>(motif.getObject(), background, discretizer);
+    } else {
+      FindPvalueBsearch bsearchCalculator;
+      try {
+        bsearchCalculator = new FindPvalueBsearch(thresholds_file);
+      } catch (FileNotFoundException e) {
+        throw new UncheckedIOException(e);
       }
-      pwmCollection.add(new ThresholdEvaluator<>(motif.getObject().onBackground(background), pvalueCalculator, motif.getName()));
+      insignificantScoreBound = bsearchCalculator.maxThresholdWithPvalueGreaterThan(max_pvalue_cutoff);
+      pvalueCalculator = bsearchCalculator;
     }
+    return new ThresholdEvaluator<>(motif.getObject().onBackground(background), pvalueCalculator, motif.getName(), insignificantScoreBound);
   }
 
   protected abstract String DOC_background_option();
@@ -61,6 +109,19 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
     DOC_run_string() + " <folder with PWMs> <file with SNPs> [options]\n" +
     "  or\n" +
     DOC_run_string() + " <PWM file> <file with SNPs> --single-motif [options]\n" +
+    "  or\n" +
+    DOC_run_string() + " <folder with PWMs> <VCF file> --vcf --reference <genome FASTA> [options]\n" +
+    "\n" +
+    "File with SNPs consists of lines `<SNP name> <sequence with variants>`, like `rs123 ACGTT[A/G]TTGCA`.\n" +
+    "Multi-allelic variants ([A/G/T]) and short indels ([A/AT/-], '-' stands for deletion) are supported:\n" +
+    "each alternative allele is compared with the first (reference) one.\n" +
+    "Files with SNPs, motifs and thresholds can be gzip- or zstd-compressed (zstd requires zstd-jni library on classpath),\n" +
+    "compression is recognized automatically. Thresholds file `<motif>.thr` can be given as `<motif>.thr.gz` as well.\n" +
+    "Instead of a folder, collection of PWMs can be given as a single file where each motif starts with\n" +
+    "a `>name` header line (or motifs are separated by empty lines), or as a binary file made by CompileCollection.\n" +
+    "In --vcf mode variants are taken from a VCF file (plain or bgzip-compressed) and flanking sequences\n" +
+    "are extracted from an indexed (uncompressed) reference genome. SNP name is taken from ID column\n" +
+    "(or is composed as <chrom>:<pos>:<ref>:<alt> when ID is missing). Symbolic alleles are ignored.\n" +
     "\n" +
     "Options:\n" +
     "  [--pvalue-cutoff <maximal pvalue to be considered>] or [-P] - drop results having both allele-variant pvalues greater than given\n" +
@@ -75,6 +136,7 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
     "  [--background <background probabilities>] or [-b] " + DOC_background_option() + "\n" +
     "  [--precalc <folder>] - specify folder with thresholds for PWM collection (for fast-and-rough calculation).\n"+
     "                         In --single-motif mode a single file should be specified instead.\n" +
+    "                         Thresholds also let scanning skip SNP-motif pairs which can't pass P-value cutoff.\n" +
     "  [--transpose] - load motif from transposed matrix (nucleotides in lines).\n" +
     "  [--expand-region <length>] - expand the region to scan for PWM hits by <length> positions\n" +
     "                               from each side allowing PWM to be located nearby but not necessarily\n"+
@@ -82,6 +144,19 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
     "  [--compact] - use compact output format.\n" +
     "  [--log-fold-change] - use logarithmic (log2) fold change scale (both in output and in cutoff setup).\n" +
     "  [--without-header] - don't print results table header\n" +
+    "  [--binary-output <file>] - write results into a columnar binary file instead of printing a table\n" +
+    "                             (see SNPScanBinarySink for format description).\n" +
+    "  [--threads <number>] - scan SNPs in <number> worker threads (default: 1). SNPs are read and encoded\n" +
+    "                         in batches, results are printed in the same order as SNPs in input.\n" +
+    "  [--batch-size <number>] - number of SNPs in a batch (default: 1000). SNPs of a batch are scanned\n" +
+    "                            motif by motif; in multithreaded mode a batch is passed to a worker thread.\n" +
+    "  [--motifs <name1,name2,...>] - scan only motifs with given names (names from motif headers, as in output).\n" +
+    "                                 Other motifs (and their thresholds) aren't loaded; in a folder, files named\n" +
+    "                                 <name>.* are checked first, other files are read only if a motif isn't found there.\n" +
+    "  [--motif-list <file>] - scan only motifs listed in a file, one name per line.\n" +
+    "  [--vcf] - treat file with SNPs as a VCF file. Requires --reference option.\n" +
+    "  [--reference <FASTA file>] - reference genome for VCF variants. FASTA should be indexed\n" +
+    "                               with `samtools faidx` (index <FASTA file>.fai is required)\n" +
      DOC_additional_options() +
     "\n" +
     "Examples:\n" +
@@ -104,7 +179,9 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
   protected PseudocountCalculator pseudocount;
   protected File thresholds_path;
 
-  protected List<ThresholdEvaluator<SequenceType, ModelType>> pwmCollection;
+  protected List<String> selectedMotifNames; // null means that all motifs of collection are used
+  protected List<Named<MotifType>> motifList;
+  protected List<Lazy<ThresholdEvaluator<SequenceType, ModelType>>> pwmCollection;
 
   protected double max_pvalue_cutoff;
   protected Double min_fold_change_cutoff; // It can be either linear of logarithmic cutoff (to be refactored later)
@@ -116,6 +193,12 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
   protected boolean useLogFoldChange;
   protected boolean printHeader;
   protected boolean singleMotifInCollection;
+  protected int numberOfThreads;
+  protected int batchSize;
+  protected boolean vcfInput;
+  protected File path_to_reference;
+  protected IndexedFasta reference;
+  protected File binaryOutputFile;
 
   void extract_path_to_collection_of_pwms(List<String> argv) {
     try {
@@ -153,6 +236,13 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
     useLogFoldChange = false;
     printHeader = true;
     singleMotifInCollection = false;
+    numberOfThreads = 1;
+    batchSize = 1000;
+    vcfInput = false;
+    path_to_reference = null;
+    reference = null;
+    binaryOutputFile = null;
+    selectedMotifNames = null;
   }
 
   protected SNPScan() {
@@ -193,6 +283,19 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
       }
     }
 
+    if (vcfInput) {
+      if (path_to_reference == null) {
+        throw new IllegalArgumentException("Specify reference genome with --reference option in --vcf mode");
+      }
+      try {
+        reference = new IndexedFasta(path_to_reference);
+      } catch (FileNotFoundException e) {
+        throw e;
+      } catch (IOException e) {
+        throw new RuntimeException("Can't open reference genome `" + path_to_reference + "`", e);
+      }
+    }
+
     load_collection_of_pwms_with_evaluators();
   }
 
@@ -237,6 +340,27 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
       useLogFoldChange = true;
     } else if(opt.equals("--without-header")) {
       printHeader = false;
+    } else if(opt.equals("--threads")) {
+      numberOfThreads = Integer.valueOf(argv.remove(0));
+      if (numberOfThreads <= 0) {
+        throw new IllegalArgumentException("Number of threads should be positive");
+      }
+    } else if(opt.equals("--batch-size")) {
+      batchSize = Integer.valueOf(argv.remove(0));
+      if (batchSize <= 0) {
+        throw new IllegalArgumentException("Batch size should be positive");
+      }
+    } else if(opt.equals("--binary-output")) {
+      binaryOutputFile = new File(argv.remove(0));
+    } else if(opt.equals("--motifs") || opt.equals("--motif-list")) {
+      selectedMotifNames = Helper.addSelectedMotifNames(selectedMotifNames, opt, argv);
+    } else if(opt.equals("--vcf")) {
+      vcfInput = true;
+    } else if(opt.equals("--reference")) {
+      path_to_reference = new File(argv.remove(0));
+      if (!path_to_reference.exists()) {
+        throw new FileNotFoundException("Specified reference genome `" + path_to_reference + "` not exists");
+      }
     } else {
       if (failed_to_recognize_additional_options(opt, argv)) {
         throw new IllegalArgumentException("Unknown option '" + opt + "'");
@@ -268,60 +392,315 @@ abstract public class SNPScan<SequenceType extends EncodedSequenceType & HasLeng
     return pvalueSignificant(affinityInfos) && foldChangeSignificant(affinityInfos);
   }
 
-  protected void process_snp(String snp_name, SequenceWithSNV seq_w_snp, SequenceWithSNVType encodedSequenceWithSNP) {
-    for (ThresholdEvaluator<SequenceType, ModelType> motifEvaluator: pwmCollection) {
-      ModelType pwm = motifEvaluator.pwm;
-
-      if (seq_w_snp.length() >= pwm.length()) {
-        RegionAffinityInfos affinityInfos;
-        affinityInfos = new SingleSNVScan<>(pwm, seq_w_snp, encodedSequenceWithSNP, motifEvaluator.pvalueCalculator, expand_region_length).affinityInfos();
-        if (affinityChangeSignificant(affinityInfos)) {
-          if (shortFormat) {
-            System.out.println(snp_name + "\t" + motifEvaluator.name + "\t" + affinityInfos.toStringShort());
-          } else {
-            System.out.println(snp_name + "\t" + motifEvaluator.name + "\t" + affinityInfos.toString(useLogFoldChange));
-          }
+  // SNP parsed and encoded by reader stage
+  protected class SNPInput {
+    public final String name;
+    public final SequenceWithSNV sequenceWithSNV;
+    public final SequenceWithSNVType encodedSequenceWithSNV;
+
+    SNPInput(String name, SequenceWithSNV sequenceWithSNV, SequenceWithSNVType encodedSequenceWithSNV) {
+      this.name = name;
+      this.sequenceWithSNV = sequenceWithSNV;
+      this.encodedSequenceWithSNV = encodedSequenceWithSNV;
+    }
+  }
+
+  private static boolean isWhitespace(byte letter) {
+    return letter == ' ' || letter == '\t' || letter == '\r' || letter == '\n' || letter == '\f' || letter == 0x0B;
+  }
+
+  // Line `<SNP name> <sequence with SNV> [anything else]` given by ASCII bytes line[from; to).
+  // Fields are split without decoding the whole line into a string.
+  protected SNPInput parse_snp_line(byte[] line, int from, int to, int necessaryLength) {
+    int nameEnd = from;
+    while (nameEnd < to && !isWhitespace(line[nameEnd])) {
+      ++nameEnd;
+    }
+    int sequenceStart = nameEnd;
+    while (sequenceStart < to && isWhitespace(line[sequenceStart])) {
+      ++sequenceStart;
+    }
+    int sequenceEnd = sequenceStart;
+    while (sequenceEnd < to && !isWhitespace(line[sequenceEnd])) {
+      ++sequenceEnd;
+    }
+    String snp_name = new String(line, from, nameEnd - from);
+    SequenceWithSNV seq_w_snp = SequenceWithSNV.fromBytes(line, sequenceStart, sequenceEnd);
+    SequenceWithSNV seq_extended = seq_w_snp.expandFlanksUpTo(necessaryLength);
+    return new SNPInput(snp_name, seq_extended, encodeSequenceWithSNV(seq_extended));
+  }
+
+  // Alleles with letters other than A,C,G,T,N (e.g. symbolic alleles like <DEL>) can't be scanned
+  private static boolean isPlainAllele(String allele) {
+    for (int i = 0; i < allele.length(); ++i) {
+      switch (allele.charAt(i)) {
+        case 'A': case 'C': case 'G': case 'T': case 'N':
+        case 'a': case 'c': case 'g': case 't': case 'n':
+          break;
+        default:
+          return false;
+      }
+    }
+    return !allele.isEmpty();
+  }
+
+  // Reference can contain IUPAC codes and other letters which are treated as unknown nucleotides
+  private static String normalizedFlank(String sequence) {
+    char[] letters = sequence.toCharArray();
+    for (int i = 0; i < letters.length; ++i) {
+      switch (letters[i]) {
+        case 'A': case 'C': case 'G': case 'T':
+        case 'a': case 'c': case 'g': case 't':
+          break;
+        default:
+          letters[i] = 'n';
+      }
+    }
+    return new String(letters);
+  }
+
+  // VCF record: CHROM POS ID REF ALT ...; returns null for header lines and records which can't be scanned
+  protected SNPInput parse_vcf_line(String line, int necessaryLength) throws IOException {
+    if (line.isEmpty() || line.charAt(0) == '#') {
+      return null;
+    }
+    String[] fields = line.split("\t", 6);
+    if (fields.length < 5) {
+      System.err.println("Skipped malformed VCF record: " + line);
+      return null;
+    }
+    String chromosome = fields[0];
+    long position = Long.valueOf(fields[1]) - 1; // 0-based
+    String ref = fields[3].toUpperCase();
+    String snp_name = fields[2].equals(".") ? (chromosome + ":" + fields[1] + ":" + fields[3] + ":" + fields[4]) : fields[2];
+
+    if (!reference.hasSequence(chromosome)) {
+      System.err.println("Skipped variant " + snp_name + ": sequence `" + chromosome + "` is absent in reference");
+      return null;
+    }
+    if (!isPlainAllele(ref)) {
+      System.err.println("Skipped variant " + snp_name + ": unsupported reference allele `" + fields[3] + "`");
+      return null;
+    }
+    String refInGenome = reference.fetch(chromosome, position, position + ref.length()).toUpperCase();
+    if (!refInGenome.equals(ref)) {
+      System.err.println("Skipped variant " + snp_name + ": reference allele `" + fields[3] + "` doesn't match reference genome (`" + refInGenome + "`)");
+      return null;
+    }
+
+    List<String> alleles = new ArrayList<>();
+    alleles.add(ref);
+    for (String alt: fields[4].split(",")) {
+      if (isPlainAllele(alt)) {
+        alleles.add(alt.toUpperCase());
+      }
+    }
+    if (alleles.size() < 2) {
+      return null; // no alternative alleles except symbolic ones
+    }
+
+    // Padding bases shared by all alleles (e.g. anchor base of an indel) belong to the left flank
+    int commonPrefix = ref.length();
+    for (String allele: alleles) {
+      int len = 0;
+      while (len < commonPrefix && len < allele.length() && allele.charAt(len) == ref.charAt(len)) {
+        ++len;
+      }
+      commonPrefix = len;
+    }
+    String[] trimmedAlleles = new String[alleles.size()];
+    for (int i = 0; i < alleles.size(); ++i) {
+      trimmedAlleles[i] = alleles.get(i).substring(commonPrefix);
+    }
+
+    long variantStart = position + commonPrefix;
+    long variantEnd = position + ref.length();
+    String left = reference.fetch(chromosome, variantStart - (necessaryLength - 1), variantStart);
+    String right = reference.fetch(chromosome, variantEnd, variantEnd + (necessaryLength - 1));
+
+    SequenceWithSNV seq_w_snp = new SequenceWithSNV(normalizedFlank(left), trimmedAlleles, normalizedFlank(right));
+    SequenceWithSNV seq_extended = seq_w_snp.expandFlanksUpTo(necessaryLength);
+    return new SNPInput(snp_name, seq_extended, encodeSequenceWithSNV(seq_extended));
+  }
+
+  // returns null for lines which should be skipped (empty lines, comments and so on)
+  protected SNPInput parse_input_line(AsciiLineReader reader, int necessaryLength) throws IOException {
+    byte[] line = reader.buffer();
+    int from = reader.lineStart();
+    int to = reader.lineEnd();
+    if (from == to || line[from] == '#') {
+      return null;
+    }
+    if (vcfInput) {
+      return parse_vcf_line(reader.lineString(), necessaryLength);
+    }
+    boolean blank = true;
+    for (int i = from; i < to && blank; ++i) {
+      blank = isWhitespace(line[i]);
+    }
+    if (blank) {
+      return null;
+    }
+    return parse_snp_line(line, from, to, necessaryLength);
+  }
+
+  protected void append_significant_infos(int snpIndex, String snp_name, int motifIndex, String motif_name,
+                                          SingleSNVScan<SequenceType, SequenceWithSNVType, ModelType> scan,
+                                          SNPScanResultSink.Batch output) {
+    List<RegionAffinityInfos> affinityInfosList = scan.affinityInfosAgainstReference();
+    for (int i = 0; i < affinityInfosList.size(); ++i) {
+      RegionAffinityInfos affinityInfos = affinityInfosList.get(i);
+      if (affinityChangeSignificant(affinityInfos)) {
+        output.append(snpIndex, snp_name, motifIndex, motif_name, i + 1, affinityInfos);
+      }
+    }
+  }
+
+  protected SNPScanResultSink create_result_sink() throws IOException {
+    if (binaryOutputFile != null) {
+      return new SNPScanBinarySink(binaryOutputFile);
+    } else {
+      return new SNPScanTextSink(System.out, shortFormat, useLogFoldChange, printHeader);
+    }
+  }
+
+  // SNPs of a batch are scanned motif by motif (see SNVBatchScan); it's up to result sink how to order results
+  protected SNPScanResultSink.Batch process_batch(List<SNPInput> batch, SNPScanResultSink resultSink) {
+    List<SequenceWithSNV> sequences = new ArrayList<>(batch.size());
+    List<SequenceWithSNVType> encodedSequences = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); ++i) {
+      sequences.add(batch.get(i).sequenceWithSNV);
+      encodedSequences.add(batch.get(i).encodedSequenceWithSNV);
+    }
+    SNVBatchScan<SequenceType, SequenceWithSNVType, ModelType> batchScan = new SNVBatchScan<>(sequences, encodedSequences, expand_region_length);
+    SNPScanResultSink.Batch output = resultSink.newBatch(batch.size());
+
+    for (int motifIndex = 0; motifIndex < pwmCollection.size(); ++motifIndex) {
+      ThresholdEvaluator<SequenceType, ModelType> motifEvaluator = pwmCollection.get(motifIndex).get();
+      List<SingleSNVScan<SequenceType, SequenceWithSNVType, ModelType>> scans;
+      scans = batchScan.scansByMotif(motifEvaluator.pwm, motifEvaluator.pvalueCalculator, motifEvaluator.insignificantScoreBound);
+      for (int i = 0; i < batch.size(); ++i) {
+        SequenceWithSNV seq_w_snp = sequences.get(i);
+        if (seq_w_snp.length() < motifEvaluator.pwm.length()) {
+          System.err.println("Can't scan sequence '" + seq_w_snp + "' (length " + seq_w_snp.length() + ") with motif of length " + motifEvaluator.pwm.length());
+          continue;
+        }
+        SingleSNVScan<SequenceType, SequenceWithSNVType, ModelType> scan = scans.get(i);
+        if (scan != null) {
+          append_significant_infos(i, batch.get(i).name, motifIndex, motifEvaluator.name, scan, output);
         }
-      } else {
-        System.err.println("Can't scan sequence '" + seq_w_snp + "' (length " + seq_w_snp.length() + ") with motif of length " + pwm.length());
       }
     }
+    return output;
   }
 
   public void process() throws IOException {
-    if (printHeader) {
-      if (shortFormat) {
-        System.out.println("# SNP name\tmotif\tP-value 1\tP-value 2\tposition 1\torientation 1\tposition 2\torientation 2");
+    List<String> motifNames = new ArrayList<>(motifList.size());
+    for (Named<MotifType> motif: motifList) {
+      motifNames.add(motif.getName());
+    }
+    try (AsciiLineReader reader = AsciiLineReader.open(path_to_file_w_snps);
+         SNPScanResultSink resultSink = create_result_sink()) {
+      resultSink.writeHeader(motifNames);
+      if (numberOfThreads > 1) {
+        process_pipelined(reader, resultSink);
       } else {
-        if (useLogFoldChange) {
-          System.out.println("# SNP name\tmotif\tposition 1\torientation 1\tword 1\tposition 2\torientation 2\tword 2\tallele 1/allele 2\tP-value 1\tP-value 2\tFold change (log2 scale)");
-        } else {
-          System.out.println("# SNP name\tmotif\tposition 1\torientation 1\tword 1\tposition 2\torientation 2\tword 2\tallele 1/allele 2\tP-value 1\tP-value 2\tFold change");
-        }
+        process_sequential(reader, resultSink);
+      }
+    } finally {
+      if (reference != null) {
+        reference.close();
       }
     }
+  }
 
+  protected void process_sequential(AsciiLineReader reader, SNPScanResultSink resultSink) throws IOException {
     final int necessaryLength = necessaryFlankLength();
+    List<SNPInput> batch = new ArrayList<>(batchSize);
+    while (reader.nextLine()) {
+      SNPInput snp = parse_input_line(reader, necessaryLength);
+      if (snp == null) continue;
+      batch.add(snp);
+      if (batch.size() >= batchSize) {
+        resultSink.writeBatch(process_batch(batch, resultSink));
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      resultSink.writeBatch(process_batch(batch, resultSink));
+    }
+  }
 
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path_to_file_w_snps)))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        if (line.trim().isEmpty() || line.charAt(0) == '#') continue;
-        String[] input_parts = line.split("\\s+", 3);
-        String snp_name = input_parts[0];
-        SequenceWithSNV seq_w_snp = SequenceWithSNV.fromString(input_parts[1]);
-        SequenceWithSNV seq_extended = seq_w_snp.expandFlanksUpTo(necessaryLength);
-        process_snp(snp_name,
-            seq_extended,
-            encodeSequenceWithSNV(seq_extended));
+  // Three-stage pipeline: reader thread parses and encodes SNPs into batches,
+  // worker pool scans batches against all motifs, current thread writes results of batches in input order.
+  // Number of batches in flight is bounded so that memory consumption doesn't depend on input size.
+  protected void process_pipelined(AsciiLineReader reader, SNPScanResultSink resultSink) throws IOException {
+    final int necessaryLength = necessaryFlankLength();
+    final Future<SNPScanResultSink.Batch> endOfInput = CompletableFuture.completedFuture(null);
+    ExecutorService workers = Executors.newFixedThreadPool(numberOfThreads);
+    BlockingQueue<Future<SNPScanResultSink.Batch>> results = new ArrayBlockingQueue<>(2 * numberOfThreads);
+
+    Thread readerThread = new Thread(() -> {
+      try {
+        List<SNPInput> batch = new ArrayList<>(batchSize);
+        while (reader.nextLine()) {
+          SNPInput snp = parse_input_line(reader, necessaryLength);
+          if (snp == null) continue;
+          batch.add(snp);
+          if (batch.size() >= batchSize) {
+            final List<SNPInput> fullBatch = batch;
+            results.put(workers.submit(() -> process_batch(fullBatch, resultSink)));
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+        if (!batch.isEmpty()) {
+          final List<SNPInput> lastBatch = batch;
+          results.put(workers.submit(() -> process_batch(lastBatch, resultSink)));
+        }
+        results.put(endOfInput);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        CompletableFuture<SNPScanResultSink.Batch> failure = new CompletableFuture<>();
+        failure.completeExceptionally(e);
+        try {
+          results.put(failure);
+        } catch (InterruptedException ignored) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    readerThread.start();
+
+    try {
+      while (true) {
+        Future<SNPScanResultSink.Batch> result = results.take();
+        if (result == endOfInput) {
+          break;
+        }
+        resultSink.writeBatch(result.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("SNP scan was interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
       }
+      throw new RuntimeException(cause);
+    } finally {
+      readerThread.interrupt();
+      workers.shutdownNow();
     }
   }
 
   int necessaryFlankLength() {
     int maxMotifLength = 1;
-    for (ThresholdEvaluator<SequenceType, ModelType> evaluator : pwmCollection) {
-      maxMotifLength = Math.max(maxMotifLength, evaluator.pwm.length());
+    for (Named<MotifType> motif : motifList) {
+      maxMotifLength = Math.max(maxMotifLength, motif.getObject().length());
     }
     return maxMotifLength + expand_region_length;
   }
@@ -0,0 +1,448 @@
+package ru.autosome.perfectosape.cli.generalized;
+
+import ru.autosome.ape.calculation.PrecalculateThresholdList;
+import ru.autosome.ape.calculation.findPvalue.FindPvalueBsearch;
+import ru.autosome.ape.model.PvalueBsearchList;
+import ru.autosome.commons.backgroundModel.GeneralizedBackgroundModel;
+import ru.autosome.commons.cli.Helper;
+import ru.autosome.commons.importer.AsciiLineReader;
+import ru.autosome.commons.importer.InputExtensions;
+import ru.autosome.commons.model.Alphabet;
+import ru.autosome.commons.model.BoundaryType;
+import ru.autosome.commons.model.Discretizer;
+import ru.autosome.commons.model.Named;
+import ru.autosome.commons.model.PseudocountCalculator;
+import ru.autosome.commons.motifModel.BackgroundAppliable;
+import ru.autosome.commons.motifModel.Discretable;
+import ru.autosome.commons.motifModel.HasLength;
+import ru.autosome.commons.motifModel.ScoreBoundaries;
+import ru.autosome.commons.motifModel.ScoreDistribution;
+import ru.autosome.commons.motifModel.types.DataModel;
+import ru.autosome.commons.scoringModel.SequenceScoringModel;
+import ru.autosome.perfectosape.calculation.SequenceChunkScan;
+import ru.autosome.perfectosape.model.MotifSite;
+import ru.autosome.perfectosape.model.ThresholdEvaluator;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+// Scans long sequences (e.g. a genome) from a FASTA file and reports motif sites with P-value not greater than cutoff.
+// P-values are taken from threshold - P-value lists (the same ones as used by SNPScan --precalc),
+// so that a site gets the same P-value as in SNPScan.
+abstract public class ScanSequences<SequenceType,
+                                    MotifType extends HasLength & Discretable<MotifType> & ScoreDistribution<BackgroundType> & ScoreBoundaries & BackgroundAppliable<BackgroundType, ModelType>,
+                                    ModelType extends SequenceScoringModel<SequenceType>,
+                                    BackgroundType extends GeneralizedBackgroundModel> {
+
+  protected abstract void initialize_default_background();
+  protected abstract void extract_background(String s);
+  protected abstract List<Named<MotifType>> load_collection_of_pwms();
+  // Alphabet of symbols scoring model is applied to
+  protected abstract Alphabet alphabet();
+
+  // Letters other than A,C,G,T (N, IUPAC codes, gaps etc.) are treated as unknown nucleotides
+  private static final byte[] LETTER_CODES = new byte[256];
+  static {
+    Arrays.fill(LETTER_CODES, (byte)Alphabet.monoACGTN.singleLetterCode('N'));
+    for (char letter: "ACGTacgt".toCharArray()) {
+      LETTER_CODES[letter] = (byte)Alphabet.monoACGTN.singleLetterCode(letter);
+    }
+  }
+
+  protected PvalueBsearchList load_bsearch_list(Named<MotifType> motif) throws FileNotFoundException {
+    if (singleMotifInCollection) {
+      return PvalueBsearchList.load_from_file(thresholds_path);
+    } else {
+      return PvalueBsearchList.load_from_file(InputExtensions.possiblyCompressedFile(new File(thresholds_path, motif.getName() + ".thr")));
+    }
+  }
+
+  protected void load_collection_of_pwms_with_evaluators() throws FileNotFoundException {
+    List<Named<MotifType>> motifList = load_collection_of_pwms();
+
+    List<PvalueBsearchList> bsearchLists;
+    if (thresholds_path == null) {
+      // The same lists as PrecalculateThresholds makes with default settings; motifs are independent so they're processed in parallel
+      PrecalculateThresholdList<MotifType, BackgroundType> calculator;
+      calculator = new PrecalculateThresholdList<>(PrecalculateThresholdList.PVALUE_LIST, discretizer, background, BoundaryType.STRONG);
+      bsearchLists = motifList.parallelStream()
+                       .map((Named<MotifType> motif) -> calculator.bsearch_list_for_pwm(motif.getObject()))
+                       .collect(Collectors.toList());
+    } else {
+      bsearchLists = new ArrayList<>(motifList.size());
+      for (Named<MotifType> motif: motifList) {
+        bsearchLists.add(load_bsearch_list(motif));
+      }
+    }
+
+    pwmCollection = new ArrayList<>(motifList.size());
+    for (int i = 0; i < motifList.size(); ++i) {
+      Named<MotifType> motif = motifList.get(i);
+      FindPvalueBsearch pvalueCalculator = new FindPvalueBsearch(bsearchLists.get(i));
+      double insignificantScoreBound = pvalueCalculator.maxThresholdWithPvalueGreaterThan(max_pvalue_cutoff);
+      pwmCollection.add(new ThresholdEvaluator<>(motif.getObject().onBackground(background), pvalueCalculator, motif.getName(), insignificantScoreBound));
+    }
+  }
+
+  protected abstract String DOC_background_option();
+  protected abstract String DOC_run_string();
+  protected String documentString() {
+    return "Command-line format:\n" +
+    DOC_run_string() + " <folder with PWMs> <FASTA file> [options]\n" +
+    "  or\n" +
+    DOC_run_string() + " <PWM file> <FASTA file> --single-motif [options]\n" +
+    "\n" +
+    "Scans both strands of each sequence in FASTA file (plain or gzip-compressed) and prints motif sites\n" +
+    "with P-value not greater than cutoff. Letters other than A,C,G,T are treated as unknown nucleotides (N).\n" +
+    "Output columns: sequence name, position (0-based, leftmost nucleotide of a site), orientation, motif,\n" +
+    "score, P-value and site word (on the strand of a site). Sites of each chunk are sorted by position.\n" +
+    "Collection of PWMs can be a folder, a single file with motifs or a compiled collection (see SNPScan help).\n" +
+    "\n" +
+    "Options:\n" +
+    "  [--pvalue-cutoff <maximal pvalue to be considered>] or [-P] - drop sites having P-value greater than given\n" +
+    "                                                       (default: 0.0005)\n" +
+    "  [--precalc <folder>] - specify folder with thresholds for PWM collection (see PrecalculateThresholds).\n"+
+    "                         In --single-motif mode a single file should be specified instead.\n" +
+    "                         If not specified, thresholds are calculated at start with default settings\n" +
+    "                         of PrecalculateThresholds.\n" +
+    "  [--discretization <discretization level>] or [-d] - discretization used to calculate thresholds\n" +
+    "                                                      when they're not precalculated (default: 1000)\n" +
+    "  [--pcm] - treat the input file as Position Count Matrix. PCM-to-PWM transformation to be done internally.\n" +
+    "  [--ppm] or [--pfm] - treat the input file as Position Frequency Matrix. PPM-to-PWM transformation to be done internally.\n" +
+    "  [--effective-count <count>] - effective samples set size for PPM-to-PWM conversion (default: 100). \n" +
+    "  [--background <background probabilities>] or [-b] " + DOC_background_option() + "\n" +
+    "  [--transpose] - load motif from transposed matrix (nucleotides in lines).\n" +
+    "  [--without-header] - don't print results table header\n" +
+    "  [--threads <number>] - scan sequence chunks in <number> worker threads (default: 1).\n" +
+    "                         Results are printed in the same order as in sequential mode.\n" +
+    "  [--chunk-size <length>] - sequences are scanned by chunks of <length> nucleotides (default: 1000000)\n" +
+     DOC_additional_options() +
+    "\n" +
+    "Examples:\n" +
+    "  " + DOC_run_string() + " ./hocomoco/pwms/ hg38.fa --precalc ./collection_thresholds -P 0.0001 --threads 8\n";
+  }
+
+  protected String DOC_additional_options() {
+    return "";
+  }
+
+  protected Discretizer discretizer;
+
+  protected File path_to_collection_of_pwms;
+  protected File path_to_fasta;
+
+  protected DataModel dataModel;
+  protected double effectiveCount;
+  protected PseudocountCalculator pseudocount;
+  protected File thresholds_path;
+
+  protected List<ThresholdEvaluator<SequenceType, ModelType>> pwmCollection;
+
+  protected double max_pvalue_cutoff;
+
+  protected BackgroundType background;
+  protected boolean transpose;
+
+  protected boolean printHeader;
+  protected boolean singleMotifInCollection;
+  protected int numberOfThreads;
+  protected int chunkSize;
+
+  void extract_path_to_collection_of_pwms(List<String> argv) {
+    try {
+      path_to_collection_of_pwms = new File(argv.remove(0));
+    } catch (IndexOutOfBoundsException e) {
+      if (singleMotifInCollection) {
+        throw new IllegalArgumentException("Specify PWM file", e);
+      } else {
+        throw new IllegalArgumentException("Specify PWM-collection folder", e);
+      }
+    }
+  }
+
+  void extract_path_to_fasta(List<String> argv) {
+    try {
+      path_to_fasta = new File(argv.remove(0));
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Specify FASTA file", e);
+    }
+  }
+
+  protected void initialize_defaults() {
+    initialize_default_background();
+    discretizer = new Discretizer(1000.0);
+
+    dataModel = DataModel.PWM;
+    effectiveCount = 100;
+    pseudocount = PseudocountCalculator.logPseudocount;
+    thresholds_path = null;
+    max_pvalue_cutoff = 0.0005;
+    transpose = false;
+    printHeader = true;
+    singleMotifInCollection = false;
+    numberOfThreads = 1;
+    chunkSize = 1000000;
+  }
+
+  protected ScanSequences() {
+    initialize_defaults();
+  }
+
+  protected void setup_from_arglist(String[] args) throws FileNotFoundException {
+    ArrayList<String> argv = new ArrayList<>();
+    Collections.addAll(argv, args);
+    setup_from_arglist(argv);
+  }
+
+  protected void setup_from_arglist(List<String> argv) throws FileNotFoundException {
+    Helper.print_help_if_requested(argv, documentString());
+    if (argv.remove("--single-motif")) {
+      singleMotifInCollection = true;
+    }
+    extract_path_to_collection_of_pwms(argv);
+    extract_path_to_fasta(argv);
+
+    while (argv.size() > 0) {
+      extract_option(argv);
+    }
+
+    load_collection_of_pwms_with_evaluators();
+  }
+
+  protected void extract_option(List<String> argv) throws FileNotFoundException {
+    String opt = argv.remove(0);
+    if (opt.equals("-b") || opt.equals("--background")) {
+      extract_background(argv.remove(0));
+    } else if (opt.equals("-d") || opt.equals("--discretization")) {
+      discretizer = Discretizer.fromString(argv.remove(0));
+    } else if (opt.equals("--pcm")) {
+      dataModel = DataModel.PCM;
+    } else if (opt.equals("--ppm") || opt.equals("--pfm")) {
+      dataModel = DataModel.PPM;
+    } else if (opt.equals("--effective-count")) {
+      effectiveCount = Double.valueOf(argv.remove(0));
+    } else if (opt.equals("--pseudocount")) {
+      pseudocount = PseudocountCalculator.fromString(argv.remove(0));
+    } else if (opt.equals("--precalc")) {
+      thresholds_path = new File(argv.remove(0));
+      if (!thresholds_path.exists()) {
+        throw new FileNotFoundException("Specified folder with thresholds `" + thresholds_path + "` not exists");
+      } else if (singleMotifInCollection) {
+        if (thresholds_path.isDirectory()) {
+          throw new FileNotFoundException("`" + thresholds_path + "` is a directory but should be a single file in --single-motif mode");
+        }
+      } else {
+        if (!thresholds_path.isDirectory()) {
+          throw new FileNotFoundException("`" + thresholds_path + "` is not a directory");
+        }
+      }
+    } else if(opt.equals("--pvalue-cutoff") || opt.equals("-P")) {
+      max_pvalue_cutoff = Double.valueOf(argv.remove(0));
+    } else if(opt.equals("--transpose")) {
+      transpose = true;
+    } else if(opt.equals("--without-header")) {
+      printHeader = false;
+    } else if(opt.equals("--threads")) {
+      numberOfThreads = Integer.valueOf(argv.remove(0));
+      if (numberOfThreads <= 0) {
+        throw new IllegalArgumentException("Number of threads should be positive");
+      }
+    } else if(opt.equals("--chunk-size")) {
+      chunkSize = Integer.valueOf(argv.remove(0));
+      if (chunkSize <= 0) {
+        throw new IllegalArgumentException("Chunk size should be positive");
+      }
+    } else {
+      if (failed_to_recognize_additional_options(opt, argv)) {
+        throw new IllegalArgumentException("Unknown option '" + opt + "'");
+      }
+    }
+  }
+
+  protected boolean failed_to_recognize_additional_options(String opt, List<String> argv) {
+    return true;
+  }
+
+  // Part of a sequence with letters of the next part which are necessary to scan sites starting in this part
+  protected static class SequenceChunk {
+    public final String sequenceName;
+    public final long firstPosition;
+    public final byte[] letterCodes;
+    public final int numberOfOwnPositions;
+
+    SequenceChunk(String sequenceName, long firstPosition, byte[] letterCodes, int numberOfOwnPositions) {
+      this.sequenceName = sequenceName;
+      this.firstPosition = firstPosition;
+      this.letterCodes = letterCodes;
+      this.numberOfOwnPositions = numberOfOwnPositions;
+    }
+  }
+
+  private interface ChunkConsumer {
+    void accept(SequenceChunk chunk) throws IOException, InterruptedException;
+  }
+
+  private static boolean isWhitespace(byte letter) {
+    return letter == ' ' || letter == '\t' || letter == '\r' || letter == '\n' || letter == '\f' || letter == 0x0B;
+  }
+
+  // Sequence name is the first word of a header line
+  private static String sequenceName(byte[] line, int from, int to) {
+    int nameStart = from + 1;
+    int nameEnd = nameStart;
+    while (nameEnd < to && !isWhitespace(line[nameEnd])) {
+      ++nameEnd;
+    }
+    return new String(line, nameStart, nameEnd - nameStart);
+  }
+
+  // Splits each sequence into chunks of chunkSize letters (the last chunk can be shorter).
+  // Consecutive chunks overlap by (maximal motif length - 1) letters.
+  protected void read_chunks(AsciiLineReader reader, ChunkConsumer consumer) throws IOException, InterruptedException {
+    final int overlap = maxMotifLength() - 1;
+    byte[] buffer = new byte[chunkSize + overlap];
+    int filled = 0;
+    long bufferStart = 0;
+    String name = null;
+    while (reader.nextLine()) {
+      byte[] line = reader.buffer();
+      int from = reader.lineStart();
+      int to = reader.lineEnd();
+      if (from < to && line[from] == '>') {
+        if (name != null) {
+          consumer.accept(new SequenceChunk(name, bufferStart, Arrays.copyOf(buffer, filled), filled));
+        }
+        name = sequenceName(line, from, to);
+        filled = 0;
+        bufferStart = 0;
+        continue;
+      }
+      for (int i = from; i < to; ++i) {
+        byte letter = line[i];
+        if (isWhitespace(letter)) continue;
+        if (name == null) {
+          throw new IllegalArgumentException("FASTA file `" + path_to_fasta + "` should start with a header line (>name)");
+        }
+        buffer[filled++] = LETTER_CODES[letter & 0xFF];
+        if (filled == buffer.length) {
+          consumer.accept(new SequenceChunk(name, bufferStart, Arrays.copyOf(buffer, filled), chunkSize));
+          System.arraycopy(buffer, chunkSize, buffer, 0, overlap);
+          filled = overlap;
+          bufferStart += chunkSize;
+        }
+      }
+    }
+    if (name != null) {
+      consumer.accept(new SequenceChunk(name, bufferStart, Arrays.copyOf(buffer, filled), filled));
+    }
+  }
+
+  protected String process_chunk(SequenceChunk chunk) {
+    SequenceChunkScan<SequenceType, ModelType> scan;
+    scan = new SequenceChunkScan<>(alphabet(), chunk.letterCodes, chunk.firstPosition, chunk.numberOfOwnPositions);
+    List<MotifSite> sites = new ArrayList<>();
+    for (int motifIndex = 0; motifIndex < pwmCollection.size(); ++motifIndex) {
+      scan.findSites(motifIndex, pwmCollection.get(motifIndex), max_pvalue_cutoff, sites);
+    }
+    sites.sort(MotifSite.positionComparator);
+
+    StringBuilder output = new StringBuilder();
+    for (MotifSite site: sites) {
+      ThresholdEvaluator<SequenceType, ModelType> motifEvaluator = pwmCollection.get(site.motifIndex);
+      output.append(chunk.sequenceName).append('\t')
+            .append(site.position).append('\t')
+            .append(site.orientation).append('\t')
+            .append(motifEvaluator.name).append('\t')
+            .append(site.score).append('\t')
+            .append(site.pvalue).append('\t')
+            .append(scan.word(site, motifEvaluator.pwm.length())).append('\n');
+    }
+    return output.toString();
+  }
+
+  protected void print_header(Writer writer) throws IOException {
+    if (printHeader) {
+      writer.write("# sequence\tposition\torientation\tmotif\tscore\tP-value\tword\n");
+    }
+  }
+
+  public void process() throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 20);
+    try (AsciiLineReader reader = AsciiLineReader.open(path_to_fasta)) {
+      print_header(writer);
+      if (numberOfThreads > 1) {
+        process_pipelined(reader, writer);
+      } else {
+        read_chunks(reader, (SequenceChunk chunk) -> writer.write(process_chunk(chunk)));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Sequence scan was interrupted");
+    } finally {
+      writer.flush();
+    }
+  }
+
+  // The same pipeline as in SNPScan: reader thread splits sequences into chunks,
+  // worker pool scans chunks against all motifs, current thread prints results of chunks in input order.
+  protected void process_pipelined(AsciiLineReader reader, Writer writer) throws IOException {
+    final Future<String> endOfInput = CompletableFuture.completedFuture(null);
+    ExecutorService workers = Executors.newFixedThreadPool(numberOfThreads);
+    BlockingQueue<Future<String>> results = new ArrayBlockingQueue<>(2 * numberOfThreads);
+
+    Thread readerThread = new Thread(() -> {
+      try {
+        read_chunks(reader, (SequenceChunk chunk) -> results.put(workers.submit(() -> process_chunk(chunk))));
+        results.put(endOfInput);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        CompletableFuture<String> failure = new CompletableFuture<>();
+        failure.completeExceptionally(e);
+        try {
+          results.put(failure);
+        } catch (InterruptedException ignored) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    readerThread.start();
+
+    try {
+      while (true) {
+        Future<String> result = results.take();
+        if (result == endOfInput) {
+          break;
+        }
+        writer.write(result.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Sequence scan was interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      readerThread.interrupt();
+      workers.shutdownNow();
+    }
+  }
+
+  int maxMotifLength() {
+    int maxMotifLength = 1;
+    for (ThresholdEvaluator<SequenceType, ModelType> evaluator : pwmCollection) {
+      maxMotifLength = Math.max(maxMotifLength, evaluator.pwm.length());
+    }
+    return maxMotifLength;
+  }
+}
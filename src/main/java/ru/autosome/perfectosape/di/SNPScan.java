@@ -6,7 +6,6 @@ import ru.autosome.commons.backgroundModel.di.DiWordwiseBackground;
 import ru.autosome.commons.importer.DiPWMFromMonoImporter;
 import ru.autosome.commons.importer.DiPWMImporter;
 import ru.autosome.commons.importer.MotifImporter;
-import ru.autosome.commons.model.Named;
 import ru.autosome.commons.motifModel.di.DiPWM;
 import ru.autosome.commons.scoringModel.DiPWMSequenceScoring;
 import ru.autosome.perfectosape.model.SequenceWithSNV;
@@ -14,7 +13,6 @@ import ru.autosome.perfectosape.model.encoded.di.SequenceDiEncoded;
 import ru.autosome.perfectosape.model.encoded.di.SequenceWithSNVDiEncoded;
 
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
 import java.util.List;
 
 public class SNPScan extends ru.autosome.perfectosape.cli.generalized.SNPScan<SequenceDiEncoded, SequenceWithSNVDiEncoded, DiPWM, DiPWMSequenceScoring, DiBackgroundModel> {
@@ -60,20 +58,11 @@ public class SNPScan extends ru.autosome.perfectosape.cli.generalized.SNPScan<Se
   }
 
   @Override
-  protected List<Named<DiPWM>> load_collection_of_pwms() {
-    MotifImporter<DiPWM> importer;
+  protected MotifImporter<DiPWM> motifImporter() {
     if (fromMononucleotide) {
-      importer = new DiPWMFromMonoImporter(background, dataModel, effectiveCount, transpose, pseudocount);
+      return new DiPWMFromMonoImporter(background, dataModel, effectiveCount, transpose, pseudocount);
     } else {
-      importer = new DiPWMImporter(background, dataModel, effectiveCount, transpose, pseudocount);
-    }
-    if (singleMotifInCollection) {
-      Named<DiPWM> named_motif = importer.loadMotifWithName(path_to_collection_of_pwms);
-      List<Named<DiPWM>> result = new ArrayList<>();
-      result.add(named_motif);
-      return result;
-    } else {
-      return importer.loadMotifCollectionWithNames(path_to_collection_of_pwms);
+      return new DiPWMImporter(background, dataModel, effectiveCount, transpose, pseudocount);
     }
   }
 
@@ -87,10 +76,14 @@ public class SNPScan extends ru.autosome.perfectosape.cli.generalized.SNPScan<Se
     return result;
   }
 
+  public static void run(String[] args) throws Exception {
+    ru.autosome.perfectosape.cli.generalized.SNPScan calculation = ru.autosome.perfectosape.di.SNPScan.from_arglist(args);
+    calculation.process();
+  }
+
   public static void main(String[] args) {
     try {
-      ru.autosome.perfectosape.cli.generalized.SNPScan calculation = ru.autosome.perfectosape.di.SNPScan.from_arglist(args);
-      calculation.process();
+      run(args);
     } catch (Exception err) {
       System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
       err.printStackTrace();
@@ -0,0 +1,102 @@
+package ru.autosome.perfectosape.di;
+
+import ru.autosome.commons.backgroundModel.di.DiBackground;
+import ru.autosome.commons.backgroundModel.di.DiBackgroundModel;
+import ru.autosome.commons.backgroundModel.di.DiWordwiseBackground;
+import ru.autosome.commons.importer.DiPWMFromMonoImporter;
+import ru.autosome.commons.importer.DiPWMImporter;
+import ru.autosome.commons.importer.MotifImporter;
+import ru.autosome.commons.model.Alphabet;
+import ru.autosome.commons.model.Named;
+import ru.autosome.commons.motifModel.di.DiPWM;
+import ru.autosome.commons.scoringModel.DiPWMSequenceScoring;
+import ru.autosome.perfectosape.model.encoded.di.SequenceDiEncoded;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScanSequences extends ru.autosome.perfectosape.cli.generalized.ScanSequences<SequenceDiEncoded, DiPWM, DiPWMSequenceScoring, DiBackgroundModel> {
+  @Override
+  protected String DOC_run_string(){
+    return "java ru.autosome.perfectosape.di.ScanSequences";
+  }
+  @Override
+  protected String DOC_background_option() {
+    return "ACGT - 16 numbers, comma-delimited(spaces not allowed), sum should be equal to 1, like 0.02,0.03,0.03,0.02,0.08,0.12,0.12,0.08,0.08,0.12,0.12,0.08,0.02,0.03,0.03,0.02";
+  }
+
+  @Override
+  protected String DOC_additional_options() {
+    return "  [--from-mono] - obtain collection DiPWMs from mono PWM/PCM/PPMs.\n";
+  }
+
+  boolean fromMononucleotide;
+
+  @Override
+  protected void initialize_defaults() {
+    super.initialize_defaults();
+    fromMononucleotide = false;
+  }
+
+  @Override
+  protected boolean failed_to_recognize_additional_options(String opt, List<String> argv) {
+    if (opt.equals("--from-mono")) {
+      fromMononucleotide = true;
+      return false;
+    } else {
+      return true;
+    }
+  }
+
+  @Override
+  protected void extract_background(String str) {
+    background = DiBackground.fromString(str);
+  }
+  @Override
+  protected void initialize_default_background() {
+    background = new DiWordwiseBackground();
+  }
+
+  @Override
+  protected Alphabet alphabet() {
+    return Alphabet.diACGTN;
+  }
+
+  @Override
+  protected List<Named<DiPWM>> load_collection_of_pwms() {
+    MotifImporter<DiPWM> importer;
+    if (fromMononucleotide) {
+      importer = new DiPWMFromMonoImporter(background, dataModel, effectiveCount, transpose, pseudocount);
+    } else {
+      importer = new DiPWMImporter(background, dataModel, effectiveCount, transpose, pseudocount);
+    }
+    if (singleMotifInCollection) {
+      Named<DiPWM> named_motif = importer.loadMotifWithName(path_to_collection_of_pwms);
+      List<Named<DiPWM>> result = new ArrayList<>();
+      result.add(named_motif);
+      return result;
+    } else {
+      return importer.loadMotifCollectionWithNames(path_to_collection_of_pwms);
+    }
+  }
+
+  protected static ru.autosome.perfectosape.cli.generalized.ScanSequences<SequenceDiEncoded, DiPWM, DiPWMSequenceScoring, DiBackgroundModel> from_arglist(String[] args) throws FileNotFoundException {
+    ru.autosome.perfectosape.di.ScanSequences result = new ru.autosome.perfectosape.di.ScanSequences();
+    result.setup_from_arglist(args);
+    return result;
+  }
+
+  public static void main(String[] args) {
+    try {
+      ru.autosome.perfectosape.cli.generalized.ScanSequences<SequenceDiEncoded, DiPWM, DiPWMSequenceScoring, DiBackgroundModel> calculation = ru.autosome.perfectosape.di.ScanSequences.from_arglist(args);
+      calculation.process();
+    } catch (Exception err) {
+      System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
+      err.printStackTrace();
+      System.err.println("\n--------------------------------------\nUse --help option for help\n\n" + new ScanSequences().documentString());
+      System.exit(1);
+
+    }
+  }
+}
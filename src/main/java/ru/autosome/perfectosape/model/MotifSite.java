@@ -0,0 +1,27 @@
+package ru.autosome.perfectosape.model;
+
+import ru.autosome.commons.model.Orientation;
+
+import java.util.Comparator;
+
+// Motif occurrence in a long sequence (position is counted from the start of the sequence, 0-based)
+public class MotifSite {
+  public final int motifIndex;
+  public final long position;
+  public final Orientation orientation;
+  public final double score;
+  public final double pvalue;
+
+  public MotifSite(int motifIndex, long position, Orientation orientation, double score, double pvalue) {
+    this.motifIndex = motifIndex;
+    this.position = position;
+    this.orientation = orientation;
+    this.score = score;
+    this.pvalue = pvalue;
+  }
+
+  public static final Comparator<MotifSite> positionComparator =
+    Comparator.comparingLong((MotifSite site) -> site.position)
+              .thenComparingInt((MotifSite site) -> site.motifIndex)
+              .thenComparing((MotifSite site) -> site.orientation);
+}
@@ -1,5 +1,7 @@
 package ru.autosome.perfectosape.model;
 
+import ru.autosome.commons.support.StringExtensions;
+
 public class RegionAffinityInfos {
   private final RegionAffinityVariantInfo info_1;
   private final RegionAffinityVariantInfo info_2;
@@ -30,26 +32,38 @@ public class RegionAffinityInfos {
     return toString(false);
   }
   public String toString(boolean useLogFoldChange) {
-    StringBuilder result = new StringBuilder();
-    result.append(info_1.position.toString()).append("\t").append(info_1.word).append("\t");
-    result.append(info_2.position.toString()).append("\t").append(info_2.word).append("\t");
+    return appendTo(new StringBuilder(), useLogFoldChange).toString();
+  }
 
-    result.append(info_1.allele).append("/").append(info_2.allele).append("\t");
-    result.append(info_1.pvalue).append("\t").append(info_2.pvalue).append("\t");
+  public String toStringShort() {
+    return appendShortTo(new StringBuilder()).toString();
+  }
+
+  // Appends the same as toString(useLogFoldChange) without intermediate strings
+  public StringBuilder appendTo(StringBuilder result, boolean useLogFoldChange) {
+    info_1.position.appendTo(result).append('\t').append(info_1.word.sequence).append('\t');
+    info_2.position.appendTo(result).append('\t').append(info_2.word.sequence).append('\t');
+
+    result.append(info_1.allele).append('/').append(info_2.allele).append('\t');
+    result.append(info_1.pvalue).append('\t').append(info_2.pvalue).append('\t');
 
     if (useLogFoldChange) {
       result.append(logFoldChange());
     } else {
       result.append(foldChange());
     }
-    return result.toString();
+    return result;
   }
 
-  public String toStringShort() {
-    return String.format("%.2e", info_1.pvalue) + "\t" +
-                        String.format("%.2e", info_2.pvalue) + "\t" +
-                        info_1.position.toStringShort() + "\t" +
-                        info_2.position.toStringShort();
+  // P-values are printed as with "%.2e" format
+  public StringBuilder appendShortTo(StringBuilder result) {
+    StringExtensions.appendScientific(result, info_1.pvalue, 2);
+    result.append('\t');
+    StringExtensions.appendScientific(result, info_2.pvalue, 2);
+    result.append('\t');
+    info_1.position.appendShortTo(result).append('\t');
+    info_2.position.appendShortTo(result);
+    return result;
   }
 
   public boolean hasSiteOnAnyAllele(double max_pvalue_cutoff) {
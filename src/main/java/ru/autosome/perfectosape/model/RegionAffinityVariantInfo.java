@@ -5,14 +5,18 @@ import ru.autosome.commons.model.Position;
 public class RegionAffinityVariantInfo {
   final Position position;
   final Sequence word;
-  final Character allele;
+  final String allele;
   final double pvalue;
 
   public double getPvalue() {
     return pvalue;
   }
 
-  public RegionAffinityVariantInfo(Position position, Character allele, double pvalue, Sequence word) {
+  public Position getPosition() {
+    return position;
+  }
+
+  public RegionAffinityVariantInfo(Position position, String allele, double pvalue, Sequence word) {
     this.position = position;
     this.allele = allele;
     this.pvalue = pvalue;
@@ -1,22 +1,22 @@
 package ru.autosome.perfectosape.model;
 
-import gnu.trove.set.TCharSet;
-import gnu.trove.set.hash.TCharHashSet;
+import ru.autosome.commons.model.Alphabet;
 import ru.autosome.commons.model.Position;
 import ru.autosome.commons.model.PositionInterval;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class SequenceWithSNV {
-  // Duplicated in class Sequence
-  private static final TCharSet allowedLetters = new TCharHashSet(new char[]{'A','C','G','T','a','c','g','t', 'n', 'N'});
-  static Pattern SNVSequencePattern = Pattern.compile("([ACGTN]*)\\[([ACGTN](?:/[ACGTN])+)\\]([ACGTN]*)", Pattern.CASE_INSENSITIVE);
+  private static final Alphabet alphabet = Alphabet.monoACGTN;
+  // letters indexed by single letter codes; flanks are printed in lowercase, alleles in uppercase
+  private static final String flankLetters = "acgtn";
+  private static final String alleleLetters = "ACGTN";
 
-  final public String left;
-  final public String right;
-  final public char[] mid;
+  // Single letter codes (see Alphabet.monoACGTN) of each sequence variant: left flank, allele, right flank
+  private final byte[][] variantCodes;
+  private final int leftLength;
+  private final int rightLength;
   private Sequence[] cache_sequence_variants;
 
   // line should finish with sequence (which doesn't have spaces).
@@ -24,46 +24,190 @@ public class SequenceWithSNV {
   // input:  "GATTCAAAGGTTCTGAATTCCACAAC[a/g]GCTTTCCTGTGTTTTTGCAGCCAGA"
   // possible SNP formats: [a/g]; [ag]; a/g; a/g/c; [agc]; [a/g/c] and so on
   public SequenceWithSNV(String left, char[] mid, String right) {
-    if ( !allowedLetters.containsAll(left.toCharArray()) ) {
-      throw new IllegalArgumentException("Sequence '" + left + "' (left part of SNP) contains unallowed character (only A,C,G,T,N letters are allowed).");
-    }
-    if ( !allowedLetters.containsAll(right.toCharArray()) ) {
-      throw new IllegalArgumentException("Sequence '" + right + "' (right part of SNP) contains unallowed character (only A,C,G,T,N letters are allowed).");
+    this(left, allelesOfNucleotides(mid), right);
+  }
+
+  // Alleles can be of different length (short indels); the first allele is treated as reference
+  public SequenceWithSNV(String left, String[] alleles, String right) {
+    this(variantCodesOf(left, alleles, right), left.length(), right.length());
+  }
+
+  // Codes are already validated
+  private SequenceWithSNV(byte[][] variantCodes, int leftLength, int rightLength) {
+    this.variantCodes = variantCodes;
+    this.leftLength = leftLength;
+    this.rightLength = rightLength;
+  }
+
+  private static String[] allelesOfNucleotides(char[] mid) {
+    String[] result = new String[mid.length];
+    for (int i = 0; i < mid.length; ++i) {
+      result[i] = String.valueOf(mid[i]);
     }
+    return result;
+  }
 
-    if ( !allowedLetters.containsAll(mid) ) {
-      throw new IllegalArgumentException("SNP variants: '" + new String(mid) + "' contain unallowed character (only A,C,G,T,N letters are allowed).");
+  // returns false if string contains a character other than A,C,G,T,N (of any case)
+  private static boolean encodeInto(String letters, byte[] codes, int offset) {
+    for (int i = 0; i < letters.length(); ++i) {
+      int code = alphabet.singleLetterCode(letters.charAt(i));
+      if (code < 0) {
+        return false;
+      }
+      codes[offset + i] = (byte)code;
     }
+    return true;
+  }
 
-    this.left = left.toLowerCase();
-    char[] mid_upcased = new char[mid.length];
-    for (int i = 0; i < mid.length; ++i) {
-      mid_upcased[i] = Character.toUpperCase(mid[i]);
+  private static byte[][] variantCodesOf(String left, String[] alleles, String right) {
+    byte[][] result = new byte[alleles.length][];
+    for (int variant = 0; variant < alleles.length; ++variant) {
+      byte[] codes = new byte[left.length() + alleles[variant].length() + right.length()];
+      if (!encodeInto(left, codes, 0)) {
+        throw new IllegalArgumentException("Sequence '" + left + "' (left part of SNP) contains unallowed character (only A,C,G,T,N letters are allowed).");
+      }
+      if (!encodeInto(alleles[variant], codes, left.length())) {
+        throw new IllegalArgumentException("SNP variant: '" + alleles[variant] + "' contain unallowed character (only A,C,G,T,N letters are allowed).");
+      }
+      if (!encodeInto(right, codes, left.length() + alleles[variant].length())) {
+        throw new IllegalArgumentException("Sequence '" + right + "' (right part of SNP) contains unallowed character (only A,C,G,T,N letters are allowed).");
+      }
+      result[variant] = codes;
     }
-    this.mid = mid_upcased;
-    this.right = right.toLowerCase();
+    return result;
   }
 
   public static SequenceWithSNV fromString(String seq_w_snp) {
+    byte[] bytes = seq_w_snp.getBytes(StandardCharsets.ISO_8859_1);
+    return fromBytes(bytes, 0, bytes.length);
+  }
 
-    Matcher matcher = SNVSequencePattern.matcher(seq_w_snp);
-    if (matcher.find()) {
-      String left = matcher.group(1);
-      String mid_str = matcher.group(2);
-      char[] mid = mid_str.replaceAll("/", "").toCharArray();
-      String right = matcher.group(3);
-      return new SequenceWithSNV(left, mid, right);
-    } else {
-      throw new IllegalArgumentException("Can't parse sequence with SNPs: " + seq_w_snp);
+  // Hand-written parser of an ASCII slice bytes[from; to) (it's a hot spot when lots of SNPs are processed)
+  public static SequenceWithSNV fromBytes(byte[] bytes, int from, int to) {
+    for (int bracketPos = from; bracketPos < to; ++bracketPos) {
+      if (bytes[bracketPos] == '[') {
+        SequenceWithSNV result = parseAtBracket(bytes, from, to, bracketPos);
+        if (result != null) {
+          return result;
+        }
+      }
     }
+    throw new IllegalArgumentException("Can't parse sequence with SNPs: " + new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
   }
 
-  int pos_of_snp() {
-    return left.length();
+  // returns null if there is no `left[X/Y/...]right` pattern with opening bracket at given position.
+  // Alleles are nucleotide strings (e.g. [A/AT/ATT]) or '-' for deletion.
+  // Letters are decoded straight from bytes into the codes of each sequence variant.
+  private static SequenceWithSNV parseAtBracket(byte[] bytes, int from, int to, int openingBracketPos) {
+    int leftStart = openingBracketPos;
+    while (leftStart > from && alphabet.singleLetterCode(bytes[leftStart - 1]) >= 0) {
+      --leftStart;
+    }
+
+    int numberOfVariants = 1;
+    for (int i = openingBracketPos + 1; i < to && bytes[i] != ']'; ++i) {
+      if (bytes[i] == '/') {
+        ++numberOfVariants;
+      }
+    }
+    if (numberOfVariants < 2) {
+      return null;
+    }
+
+    // allele boundaries; deletion ('-') is an empty allele
+    int[] alleleStarts = new int[numberOfVariants];
+    int[] alleleEnds = new int[numberOfVariants];
+    int pos = openingBracketPos + 1;
+    for (int variant = 0; variant < numberOfVariants; ++variant) {
+      if (variant > 0) {
+        if (pos >= to || bytes[pos] != '/') {
+          return null;
+        }
+        ++pos;
+      }
+      alleleStarts[variant] = pos;
+      if (pos < to && bytes[pos] == '-') {
+        alleleEnds[variant] = pos;
+        ++pos;
+      } else {
+        while (pos < to && alphabet.singleLetterCode(bytes[pos]) >= 0) {
+          ++pos;
+        }
+        if (pos == alleleStarts[variant]) {
+          return null;
+        }
+        alleleEnds[variant] = pos;
+      }
+    }
+    if (pos >= to || bytes[pos] != ']') {
+      return null;
+    }
+
+    int rightStart = pos + 1;
+    int rightFinish = rightStart;
+    while (rightFinish < to && alphabet.singleLetterCode(bytes[rightFinish]) >= 0) {
+      ++rightFinish;
+    }
+
+    int leftLength = openingBracketPos - leftStart;
+    int rightLength = rightFinish - rightStart;
+    byte[][] variantCodes = new byte[numberOfVariants][];
+    for (int variant = 0; variant < numberOfVariants; ++variant) {
+      int alleleLength = alleleEnds[variant] - alleleStarts[variant];
+      byte[] codes = new byte[leftLength + alleleLength + rightLength];
+      if (variant == 0) {
+        decodeInto(bytes, leftStart, openingBracketPos, codes, 0);
+        decodeInto(bytes, rightStart, rightFinish, codes, leftLength + alleleLength);
+      } else { // flanks are decoded once and copied from the first variant
+        byte[] firstCodes = variantCodes[0];
+        System.arraycopy(firstCodes, 0, codes, 0, leftLength);
+        System.arraycopy(firstCodes, firstCodes.length - rightLength, codes, leftLength + alleleLength, rightLength);
+      }
+      decodeInto(bytes, alleleStarts[variant], alleleEnds[variant], codes, leftLength);
+      variantCodes[variant] = codes;
+    }
+    return new SequenceWithSNV(variantCodes, leftLength, rightLength);
+  }
+
+  // bytes[from; to) should be already checked to be nucleotides
+  private static void decodeInto(byte[] bytes, int from, int to, byte[] codes, int offset) {
+    for (int i = from; i < to; ++i) {
+      codes[offset + i - from] = (byte)alphabet.singleLetterCode(bytes[i]);
+    }
+  }
+
+  public int pos_of_snp() {
+    return leftLength;
   }
 
   public int num_cases() {
-    return mid.length;
+    return variantCodes.length;
+  }
+
+  private int alleleLength(int allele_number) {
+    return variantCodes[allele_number].length - leftLength - rightLength;
+  }
+
+  private static void appendLetters(StringBuilder builder, byte[] codes, int from, int to, String letters) {
+    for (int i = from; i < to; ++i) {
+      builder.append(letters.charAt(codes[i]));
+    }
+  }
+
+  // allele as it's printed (deletion is denoted by '-')
+  public String alleleString(int allele_number) {
+    if (alleleLength(allele_number) == 0) {
+      return "-";
+    }
+    StringBuilder builder = new StringBuilder(alleleLength(allele_number));
+    appendLetters(builder, variantCodes[allele_number], leftLength, leftLength + alleleLength(allele_number), alleleLetters);
+    return builder.toString();
+  }
+
+  // Single letter codes (see Alphabet.monoACGTN) of each sequence variant.
+  // Arrays are shared, not copied, so they must not be modified.
+  public byte[][] letterCodesOfVariants() {
+    return variantCodes;
   }
 
   // output: ["GATTCAAAGGTTCTGAATTCCACAACaGCTTTCCTGTGTTTTTGCAGCCAGA",
@@ -73,14 +217,28 @@ public class SequenceWithSNV {
       cache_sequence_variants = new Sequence[num_cases()];
 
       for (int i = 0; i < num_cases(); ++i) {
-        cache_sequence_variants[i] = new Sequence(left + mid[i] + right, true);
+        byte[] codes = variantCodes[i];
+        StringBuilder builder = new StringBuilder(codes.length);
+        appendLetters(builder, codes, 0, leftLength, flankLetters);
+        appendLetters(builder, codes, leftLength, codes.length - rightLength, alleleLetters);
+        appendLetters(builder, codes, codes.length - rightLength, codes.length, flankLetters);
+        cache_sequence_variants[i] = new Sequence(builder.toString(), true);
       }
     }
     return cache_sequence_variants;
   }
 
+  public int length(int allele_number) {
+    return variantCodes[allele_number].length;
+  }
+
+  // length of the shortest sequence variant
   public int length() {
-    return left.length() + 1 + right.length();
+    int result = length(0);
+    for (int i = 1; i < num_cases(); ++i) {
+      result = Math.min(result, length(i));
+    }
+    return result;
   }
 
 //  public int left_shift(int motif_length) {
@@ -88,33 +246,47 @@ public class SequenceWithSNV {
 //  }
 
   public PositionInterval positionsOverlappingSNV(int subsequence_length) {
-    int left_pos = Math.max(0, left.length() - subsequence_length + 1);
-    int right_pos = Math.min(length(), left.length() + subsequence_length);
+    return positionsOverlappingVariant(0, subsequence_length);
+  }
+
+  // Positions of subsequences (of given sequence variant) which overlap allele.
+  // For deletion these are subsequences spanning the junction of flanks.
+  public PositionInterval positionsOverlappingVariant(int allele_number, int subsequence_length) {
+    int left_pos = Math.max(0, leftLength - subsequence_length + 1);
+    int right_pos = Math.min(length(allele_number), leftLength + alleleLength(allele_number) - 1 + subsequence_length);
     return Position.positions_between(left_pos, right_pos, subsequence_length);
   }
 
   @Override
   public String toString() {
-    String mid_variants = "" + mid[0];
+    byte[] codes = variantCodes[0];
+    StringBuilder builder = new StringBuilder();
+    appendLetters(builder, codes, 0, leftLength, flankLetters);
+    builder.append('[').append(alleleString(0));
     for (int i = 1; i < num_cases(); ++i) {
-      mid_variants += "/" + mid[i];
+      builder.append('/').append(alleleString(i));
     }
-    return left + "[" + mid_variants + "]" + right;
-  }
-
-  private String polyNString(int len) {
-    char[] buf = new char[len];
-    Arrays.fill(buf, 'N');
-    return new String(buf);
+    builder.append(']');
+    appendLetters(builder, codes, codes.length - rightLength, codes.length, flankLetters);
+    return builder.toString();
   }
 
   // Expands sequence with poly-N flanks if necessary
   // sequenceRadius includes substitution position
   public SequenceWithSNV expandFlanksUpTo(int sequenceRadius) {
-    int leftExpansionLength = Math.max(sequenceRadius - 1 - left.length(), 0);
-    int rightExpansionLength = Math.max(sequenceRadius - 1 - right.length(), 0);
-    return new SequenceWithSNV(polyNString(leftExpansionLength) + left,
-                               mid,
-                               right + polyNString(rightExpansionLength));
+    int leftExpansionLength = Math.max(sequenceRadius - 1 - leftLength, 0);
+    int rightExpansionLength = Math.max(sequenceRadius - 1 - rightLength, 0);
+    if (leftExpansionLength == 0 && rightExpansionLength == 0) {
+      return this;
+    }
+    byte nCode = (byte)alphabet.singleLetterCode('N');
+    byte[][] result = new byte[num_cases()][];
+    for (int variant = 0; variant < num_cases(); ++variant) {
+      byte[] codes = new byte[leftExpansionLength + length(variant) + rightExpansionLength];
+      Arrays.fill(codes, nCode);
+      System.arraycopy(variantCodes[variant], 0, codes, leftExpansionLength, length(variant));
+      result[variant] = codes;
+    }
+    return new SequenceWithSNV(result, leftExpansionLength + leftLength, rightLength + rightExpansionLength);
   }
 }
@@ -8,10 +8,17 @@ public class ThresholdEvaluator<SequenceType,
   public final ModelType pwm;
   public final CanFindPvalue pvalueCalculator;
   public final String name;
+  // Scores not greater than this bound are known to be insignificant (negative infinity if bound is unknown)
+  public final double insignificantScoreBound;
 
-  public ThresholdEvaluator(ModelType pwm, CanFindPvalue pvalueCalculator, String name) {
+  public ThresholdEvaluator(ModelType pwm, CanFindPvalue pvalueCalculator, String name, double insignificantScoreBound) {
     this.pwm = pwm;
     this.pvalueCalculator = pvalueCalculator;
     this.name = name;
+    this.insignificantScoreBound = insignificantScoreBound;
+  }
+
+  public ThresholdEvaluator(ModelType pwm, CanFindPvalue pvalueCalculator, String name) {
+    this(pwm, pvalueCalculator, name, Double.NEGATIVE_INFINITY);
   }
 }
@@ -3,4 +3,8 @@ package ru.autosome.perfectosape.model.encoded;
 import ru.autosome.commons.motifModel.HasLength;
 
 public interface EncodedSequenceType extends HasLength {
+  // Symbol codes of the sequence and of its reverse complement
+  // (nucleotide codes for mono-, dinucleotide codes for di-nucleotide encoding)
+  byte[] directCodes();
+  byte[] revcompCodes();
 }
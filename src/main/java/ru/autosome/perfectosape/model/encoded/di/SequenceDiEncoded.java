@@ -21,6 +21,16 @@ public class SequenceDiEncoded implements EncodedSequenceType {
     return directSequence.length + 1;
   }
 
+  @Override
+  public byte[] directCodes() {
+    return directSequence;
+  }
+
+  @Override
+  public byte[] revcompCodes() {
+    return revcompSequence;
+  }
+
   @Override
   public String toString() {
     return Alphabet.diACGTN.decodeString(directSequence);
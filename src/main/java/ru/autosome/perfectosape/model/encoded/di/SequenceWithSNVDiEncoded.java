@@ -1,6 +1,6 @@
 package ru.autosome.perfectosape.model.encoded.di;
 
-import ru.autosome.perfectosape.model.Sequence;
+import ru.autosome.commons.model.Alphabet;
 import ru.autosome.perfectosape.model.SequenceWithSNV;
 import ru.autosome.perfectosape.model.encoded.EncodedSequenceWithSNVType;
 
@@ -14,12 +14,12 @@ public class SequenceWithSNVDiEncoded implements EncodedSequenceWithSNVType<Sequ
     if(sequenceVariants.size() < 2) {
       throw new IllegalArgumentException("There should be at least two sequences in SequenceWithSNVMonoEncoded");
     }
-    this.length = sequenceVariants.get(0).length();
+    // variants can have different lengths (indels); length of the shortest one is used
+    int minLength = sequenceVariants.get(0).length();
     for (int i = 1; i < sequenceVariants.size(); ++i) {
-      if (sequenceVariants.get(i).length() != this.length) {
-        throw new IllegalArgumentException("All sequences should be of equal length");
-      }
+      minLength = Math.min(minLength, sequenceVariants.get(i).length());
     }
+    this.length = minLength;
     this.sequenceVariants = sequenceVariants;
   }
   @Override
@@ -32,8 +32,9 @@ public class SequenceWithSNVDiEncoded implements EncodedSequenceWithSNVType<Sequ
 
   public static SequenceWithSNVDiEncoded encode(SequenceWithSNV sequenceWithSNV) {
     List<SequenceDiEncoded> encodedVariants = new ArrayList<>(sequenceWithSNV.num_cases());
-    for (Sequence seq: sequenceWithSNV.sequence_variants()) {
-      encodedVariants.add(SequenceDiEncoded.encode(seq));
+    for (byte[] letterCodes: sequenceWithSNV.letterCodesOfVariants()) {
+      encodedVariants.add(new SequenceDiEncoded(Alphabet.diACGTN.convertLetterCodes(letterCodes),
+                                                Alphabet.diACGTN.convertLetterCodesReverseComplement(letterCodes)));
     }
     return new SequenceWithSNVDiEncoded(encodedVariants);
   }
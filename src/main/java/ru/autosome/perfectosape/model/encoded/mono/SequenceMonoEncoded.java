@@ -21,6 +21,16 @@ public class SequenceMonoEncoded implements EncodedSequenceType {
     return directSequence.length;
   }
 
+  @Override
+  public byte[] directCodes() {
+    return directSequence;
+  }
+
+  @Override
+  public byte[] revcompCodes() {
+    return revcompSequence;
+  }
+
   @Override
   public String toString() {
     return Alphabet.monoACGTN.decodeString(directSequence);
@@ -0,0 +1,247 @@
+package ru.autosome.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal JSON support for the server protocol.
+// Objects are parsed into LinkedHashMap, arrays into ArrayList, numbers into Double; strings, booleans and null as is.
+public class JSON {
+  public static class ParseError extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    ParseError(String message, int position) {
+      super(message + " at position " + position);
+    }
+  }
+
+  private final String text;
+  private int pos;
+
+  private JSON(String text) {
+    this.text = text;
+    this.pos = 0;
+  }
+
+  public static Object parse(String text) {
+    JSON parser = new JSON(text);
+    Object result = parser.parseValue();
+    parser.skipWhitespace();
+    if (parser.pos != text.length()) {
+      throw new ParseError("Unexpected data after JSON value", parser.pos);
+    }
+    return result;
+  }
+
+  private void skipWhitespace() {
+    while (pos < text.length() && " \t\r\n".indexOf(text.charAt(pos)) != -1) {
+      ++pos;
+    }
+  }
+
+  private char peek() {
+    if (pos >= text.length()) {
+      throw new ParseError("Unexpected end of JSON", pos);
+    }
+    return text.charAt(pos);
+  }
+
+  private void expect(char letter) {
+    if (peek() != letter) {
+      throw new ParseError("Expected `" + letter + "`", pos);
+    }
+    ++pos;
+  }
+
+  private Object parseValue() {
+    skipWhitespace();
+    char letter = peek();
+    if (letter == '{') {
+      return parseObject();
+    } else if (letter == '[') {
+      return parseArray();
+    } else if (letter == '"') {
+      return parseString();
+    } else if (text.startsWith("true", pos)) {
+      pos += 4;
+      return Boolean.TRUE;
+    } else if (text.startsWith("false", pos)) {
+      pos += 5;
+      return Boolean.FALSE;
+    } else if (text.startsWith("null", pos)) {
+      pos += 4;
+      return null;
+    } else {
+      return parseNumber();
+    }
+  }
+
+  private Map<String, Object> parseObject() {
+    Map<String, Object> result = new LinkedHashMap<>();
+    expect('{');
+    skipWhitespace();
+    if (peek() == '}') {
+      ++pos;
+      return result;
+    }
+    while (true) {
+      skipWhitespace();
+      String key = parseString();
+      skipWhitespace();
+      expect(':');
+      result.put(key, parseValue());
+      skipWhitespace();
+      if (peek() == ',') {
+        ++pos;
+      } else {
+        expect('}');
+        return result;
+      }
+    }
+  }
+
+  private List<Object> parseArray() {
+    List<Object> result = new ArrayList<>();
+    expect('[');
+    skipWhitespace();
+    if (peek() == ']') {
+      ++pos;
+      return result;
+    }
+    while (true) {
+      result.add(parseValue());
+      skipWhitespace();
+      if (peek() == ',') {
+        ++pos;
+      } else {
+        expect(']');
+        return result;
+      }
+    }
+  }
+
+  private String parseString() {
+    expect('"');
+    StringBuilder builder = new StringBuilder();
+    while (true) {
+      char letter = peek();
+      ++pos;
+      if (letter == '"') {
+        return builder.toString();
+      } else if (letter == '\\') {
+        char escaped = peek();
+        ++pos;
+        switch (escaped) {
+          case '"': builder.append('"'); break;
+          case '\\': builder.append('\\'); break;
+          case '/': builder.append('/'); break;
+          case 'b': builder.append('\b'); break;
+          case 'f': builder.append('\f'); break;
+          case 'n': builder.append('\n'); break;
+          case 'r': builder.append('\r'); break;
+          case 't': builder.append('\t'); break;
+          case 'u':
+            if (pos + 4 > text.length()) {
+              throw new ParseError("Incomplete unicode escape", pos);
+            }
+            try {
+              builder.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+            } catch (NumberFormatException e) {
+              throw new ParseError("Incorrect unicode escape", pos);
+            }
+            pos += 4;
+            break;
+          default:
+            throw new ParseError("Unknown escape sequence", pos - 1);
+        }
+      } else {
+        builder.append(letter);
+      }
+    }
+  }
+
+  private Double parseNumber() {
+    int start = pos;
+    while (pos < text.length() && "+-.eE0123456789".indexOf(text.charAt(pos)) != -1) {
+      ++pos;
+    }
+    try {
+      return Double.valueOf(text.substring(start, pos));
+    } catch (NumberFormatException e) {
+      throw new ParseError("Unexpected value", start);
+    }
+  }
+
+  public static String toString(Object value) {
+    StringBuilder builder = new StringBuilder();
+    append(builder, value);
+    return builder.toString();
+  }
+
+  public static void append(StringBuilder builder, Object value) {
+    if (value == null) {
+      builder.append("null");
+    } else if (value instanceof String) {
+      appendString(builder, (String) value);
+    } else if (value instanceof Boolean) {
+      builder.append(value);
+    } else if (value instanceof Number) {
+      double number = ((Number) value).doubleValue();
+      if (Double.isNaN(number) || Double.isInfinite(number)) {
+        builder.append("null");
+      } else if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+        builder.append((long) number);
+      } else {
+        builder.append(number);
+      }
+    } else if (value instanceof Map) {
+      builder.append('{');
+      boolean first = true;
+      for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet()) {
+        if (!first) {
+          builder.append(',');
+        }
+        first = false;
+        appendString(builder, entry.getKey().toString());
+        builder.append(':');
+        append(builder, entry.getValue());
+      }
+      builder.append('}');
+    } else if (value instanceof Iterable) {
+      builder.append('[');
+      boolean first = true;
+      for (Object element: (Iterable<?>) value) {
+        if (!first) {
+          builder.append(',');
+        }
+        first = false;
+        append(builder, element);
+      }
+      builder.append(']');
+    } else {
+      appendString(builder, value.toString());
+    }
+  }
+
+  private static void appendString(StringBuilder builder, String string) {
+    builder.append('"');
+    for (int i = 0; i < string.length(); ++i) {
+      char letter = string.charAt(i);
+      switch (letter) {
+        case '"': builder.append("\\\""); break;
+        case '\\': builder.append("\\\\"); break;
+        case '\n': builder.append("\\n"); break;
+        case '\r': builder.append("\\r"); break;
+        case '\t': builder.append("\\t"); break;
+        default:
+          if (letter < 0x20) {
+            builder.append(String.format("\\u%04x", (int) letter));
+          } else {
+            builder.append(letter);
+          }
+      }
+    }
+    builder.append('"');
+  }
+}
@@ -0,0 +1,181 @@
+package ru.autosome.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+// Tools print results to System.out and read values from System.in, so in server mode these streams are replaced
+// by ones which route data to streams of the request being processed by the current thread.
+// Threads started by a tool during request inherit its streams. Threads without request use original streams.
+// Parallel streams of a tool run in a pool of its request (see Request.run); workers of the common pool
+// are shared by all requests, so they always use original streams whichever request created them.
+class RequestStreams {
+  private static final InheritableThreadLocal<OutputStream> output = new InheritableThreadLocal<>();
+  private static final InheritableThreadLocal<OutputStream> errors = new InheritableThreadLocal<>();
+  private static final InheritableThreadLocal<InputStream> input = new InheritableThreadLocal<>();
+
+  static void install() {
+    System.setOut(new PrintStream(new RoutedOutputStream(output, System.out), true));
+    System.setErr(new PrintStream(new RoutedOutputStream(errors, System.err), true));
+    System.setIn(new RoutedInputStream(input, System.in));
+  }
+
+  interface Task {
+    void run() throws Exception;
+  }
+
+  // Request output and log are collected in memory, so that they can be sent in a response
+  static class Request {
+    final ByteArrayOutputStream requestOutput = new ByteArrayOutputStream();
+    final ByteArrayOutputStream requestErrors = new ByteArrayOutputStream();
+    final InputStream requestInput;
+
+    Request(String stdin) {
+      requestInput = new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8));
+      route();
+    }
+
+    private void route() {
+      output.set(requestOutput);
+      errors.set(requestErrors);
+      input.set(requestInput);
+    }
+
+    // Task is run in a fork-join pool of this request, so that parallel streams started by the task
+    // (which run in the pool of the calling worker) are processed by threads routed to this request
+    void run(Task task) throws Exception {
+      ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                                           (ForkJoinPool workerPool) -> new RequestWorkerThread(workerPool, this),
+                                           null, false);
+      try {
+        pool.submit(() -> {
+          task.run();
+          return null;
+        }).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw e;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw e;
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    String output() {
+      System.out.flush();
+      return new String(requestOutput.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    String errors() {
+      System.err.flush();
+      return new String(requestErrors.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    void finish() {
+      output.remove();
+      errors.remove();
+      input.remove();
+    }
+  }
+
+  private static class RequestWorkerThread extends ForkJoinWorkerThread {
+    private final Request request;
+
+    RequestWorkerThread(ForkJoinPool pool, Request request) {
+      super(pool);
+      this.request = request;
+    }
+
+    @Override
+    protected void onStart() {
+      super.onStart();
+      request.route();
+    }
+
+    @Override
+    protected void onTermination(Throwable exception) {
+      output.remove();
+      errors.remove();
+      input.remove();
+      super.onTermination(exception);
+    }
+  }
+
+  // Returns stream of the current request (or a default one for a thread without request)
+  private static <T> T routed(ThreadLocal<T> target, T defaultTarget) {
+    Thread thread = Thread.currentThread();
+    if (thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == ForkJoinPool.commonPool()) {
+      target.remove(); // inherited from a request which happened to create the worker
+      return defaultTarget;
+    }
+    T stream = target.get();
+    return (stream != null) ? stream : defaultTarget;
+  }
+
+  private static class RoutedOutputStream extends OutputStream {
+    private final ThreadLocal<OutputStream> target;
+    private final OutputStream defaultTarget;
+
+    RoutedOutputStream(ThreadLocal<OutputStream> target, OutputStream defaultTarget) {
+      this.target = target;
+      this.defaultTarget = defaultTarget;
+    }
+
+    private OutputStream current() {
+      return routed(target, defaultTarget);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      current().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      current().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      current().flush();
+    }
+  }
+
+  private static class RoutedInputStream extends InputStream {
+    private final ThreadLocal<InputStream> source;
+    private final InputStream defaultSource;
+
+    RoutedInputStream(ThreadLocal<InputStream> source, InputStream defaultSource) {
+      this.source = source;
+      this.defaultSource = defaultSource;
+    }
+
+    private InputStream current() {
+      return routed(source, defaultSource);
+    }
+
+    @Override
+    public int read() throws IOException {
+      return current().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return current().read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return current().available();
+    }
+  }
+}
@@ -0,0 +1,262 @@
+package ru.autosome.server;
+
+import ru.autosome.commons.cli.Helper;
+import ru.autosome.commons.support.SharedCache;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Long-running server which runs tools on requests, so that JVM startup, loading of collections and precalculated
+// thresholds and calculation of thresholds for collection motifs are done once for all requests (see SharedCache).
+// Protocol: each request is a single line with a JSON object, each response is a single line with a JSON object.
+public class Server {
+  interface Tool {
+    void run(String[] args) throws Exception;
+  }
+
+  private static final Map<String, Tool> TOOLS = new LinkedHashMap<>();
+  static {
+    TOOLS.put("ape.FindPvalue", ru.autosome.ape.FindPvalue::run);
+    TOOLS.put("ape.FindThreshold", ru.autosome.ape.FindThreshold::run);
+    TOOLS.put("ape.di.FindPvalue", ru.autosome.ape.di.FindPvalue::run);
+    TOOLS.put("ape.di.FindThreshold", ru.autosome.ape.di.FindThreshold::run);
+    TOOLS.put("macroape.EvalSimilarity", ru.autosome.macroape.EvalSimilarity::run);
+    TOOLS.put("macroape.di.EvalSimilarity", ru.autosome.macroape.di.EvalSimilarity::run);
+    TOOLS.put("macroape.ScanCollection", ru.autosome.macroape.ScanCollection::run);
+    TOOLS.put("macroape.di.ScanCollection", ru.autosome.macroape.di.ScanCollection::run);
+    TOOLS.put("perfectosape.SNPScan", ru.autosome.perfectosape.SNPScan::run);
+    TOOLS.put("perfectosape.di.SNPScan", ru.autosome.perfectosape.di.SNPScan::run);
+  }
+
+  private static final List<String> HELP_OPTIONS = Arrays.asList("-h", "--h", "-help", "--help");
+
+  protected int port;
+  protected int numberOfThreads;
+  protected int cacheCapacity;
+
+  private ServerSocket serverSocket;
+  private ExecutorService workers;
+  // set by shutdown command; server socket is closed only after the response is sent
+  private volatile boolean shutdownRequested = false;
+
+  protected static String documentString() {
+    return "Command-line format:\n" +
+      "java ru.autosome.server.Server [options]\n" +
+      "\n" +
+      "Runs tools on requests sent to a local (loopback) TCP socket. Loaded motif collections, precalculated thresholds\n" +
+      "and thresholds of collection motifs (calculated by ScanCollection) are kept in memory between requests.\n" +
+      "\n" +
+      "Options:\n" +
+      "  [--port <number>] - port to listen (default: 8765)\n" +
+      "  [--threads <number>] - number of requests processed simultaneously (default: number of processors)\n" +
+      "  [--cache-size <number>] - maximal number of objects kept in memory; least recently used ones are dropped\n" +
+      "                            (default: " + SharedCache.DEFAULT_CAPACITY + "). Objects made of changed files are dropped anyway.\n" +
+      "\n" +
+      "Protocol: each request and each response is a JSON object on a single line.\n" +
+      "Requests on a single connection are processed one by one; use several connections to run requests in parallel.\n" +
+      "  {\"id\": <any value>, \"tool\": \"<tool>\", \"args\": [<command-line arguments>...], \"stdin\": \"<text>\"}\n" +
+      "    --> {\"id\": <the same value>, \"status\": \"ok\", \"output\": \"<tool stdout>\", \"log\": \"<tool stderr>\"}\n" +
+      "     or {\"id\": <the same value>, \"status\": \"error\", \"message\": \"<error>\", \"log\": \"<tool stderr>\"}\n" +
+      "  Tools: " + String.join(", ", TOOLS.keySet()) + "\n" +
+      "  `id` and `stdin` are optional. Paths are relative to the working directory of the server.\n" +
+      "  Control commands: {\"command\": \"ping\" | \"status\" | \"clear-cache\" | \"shutdown\"}\n" +
+      "\n" +
+      "Example:\n" +
+      "  echo '{\"tool\": \"ape.FindPvalue\", \"args\": [\"motifs/KLF4_f2.pat\", \"7.32\"]}' | nc localhost 8765\n";
+  }
+
+  protected void initialize_defaults() {
+    port = 8765;
+    numberOfThreads = Runtime.getRuntime().availableProcessors();
+    cacheCapacity = SharedCache.DEFAULT_CAPACITY;
+  }
+
+  protected void setup_from_arglist(List<String> argv) {
+    if (!argv.isEmpty()) {
+      Helper.print_help_if_requested(argv, documentString());
+    }
+    while (!argv.isEmpty()) {
+      String opt = argv.remove(0);
+      if (opt.equals("--port")) {
+        port = Integer.valueOf(argv.remove(0));
+      } else if (opt.equals("--threads")) {
+        numberOfThreads = Integer.valueOf(argv.remove(0));
+        if (numberOfThreads <= 0) {
+          throw new IllegalArgumentException("Number of threads should be positive");
+        }
+      } else if (opt.equals("--cache-size")) {
+        cacheCapacity = Integer.valueOf(argv.remove(0));
+        if (cacheCapacity <= 0) {
+          throw new IllegalArgumentException("Cache size should be positive");
+        }
+      } else {
+        throw new IllegalArgumentException("Unknown option '" + opt + "'");
+      }
+    }
+  }
+
+  protected Server() {
+    initialize_defaults();
+  }
+
+  protected void serve() throws IOException {
+    SharedCache.setCapacity(cacheCapacity);
+    SharedCache.enable();
+    RequestStreams.install();
+    workers = Executors.newFixedThreadPool(numberOfThreads);
+    serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    System.err.println("Listening on " + serverSocket.getLocalSocketAddress());
+    try {
+      while (true) {
+        Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (SocketException e) { // server socket is closed by shutdown command
+          break;
+        }
+        Thread connectionThread = new Thread(() -> serveConnection(socket));
+        connectionThread.setDaemon(true);
+        connectionThread.start();
+      }
+    } finally {
+      workers.shutdown();
+    }
+  }
+
+  private void serveConnection(Socket socket) {
+    try (Socket connection = socket;
+         BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+         Writer writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        writer.write(JSON.toString(respond(line)));
+        writer.write("\n");
+        writer.flush();
+        if (shutdownRequested) { // JVM exits as soon as serve() returns
+          serverSocket.close();
+          break;
+        }
+      }
+    } catch (IOException e) {
+      // connection is lost; nothing to respond
+    }
+  }
+
+  private Map<String, Object> respond(String line) {
+    Map<String, Object> response = new LinkedHashMap<>();
+    Map<?, ?> request;
+    try {
+      Object parsed = JSON.parse(line);
+      if (!(parsed instanceof Map)) {
+        throw new IllegalArgumentException("Request should be a JSON object");
+      }
+      request = (Map<?, ?>) parsed;
+    } catch (IllegalArgumentException e) {
+      response.put("status", "error");
+      response.put("message", e.getMessage());
+      return response;
+    }
+    if (request.containsKey("id")) {
+      response.put("id", request.get("id"));
+    }
+    try {
+      if (request.containsKey("command")) {
+        response.putAll(control(String.valueOf(request.get("command"))));
+      } else {
+        response.putAll(workers.submit(() -> runTool(request)).get());
+      }
+    } catch (ExecutionException e) {
+      response.put("status", "error");
+      response.put("message", errorMessage(e.getCause()));
+    } catch (Exception e) {
+      response.put("status", "error");
+      response.put("message", errorMessage(e));
+    }
+    return response;
+  }
+
+  private Map<String, Object> control(String command) {
+    Map<String, Object> response = new LinkedHashMap<>();
+    if (command.equals("ping")) {
+      response.put("status", "ok");
+    } else if (command.equals("status")) {
+      response.put("status", "ok");
+      response.put("cached", SharedCache.size());
+      response.put("capacity", SharedCache.getCapacity());
+      response.put("threads", numberOfThreads);
+    } else if (command.equals("clear-cache")) {
+      SharedCache.clear();
+      response.put("status", "ok");
+    } else if (command.equals("shutdown")) {
+      shutdownRequested = true;
+      response.put("status", "ok");
+    } else {
+      throw new IllegalArgumentException("Unknown command `" + command + "`");
+    }
+    return response;
+  }
+
+  private static Map<String, Object> runTool(Map<?, ?> request) {
+    Map<String, Object> response = new LinkedHashMap<>();
+    String toolName = String.valueOf(request.get("tool"));
+    Tool tool = TOOLS.get(toolName.startsWith("ru.autosome.") ? toolName.substring("ru.autosome.".length()) : toolName);
+    if (tool == null) {
+      throw new IllegalArgumentException("Unknown tool `" + toolName + "`");
+    }
+    Object argsValue = request.get("args");
+    if (!(argsValue instanceof List)) {
+      throw new IllegalArgumentException("Request should have `args` list");
+    }
+    List<String> args = new ArrayList<>();
+    for (Object arg: (List<?>) argsValue) {
+      args.add(arg instanceof Double ? JSON.toString(arg) : String.valueOf(arg));
+    }
+    // help would terminate the whole server
+    if (args.isEmpty() || !Collections.disjoint(args, HELP_OPTIONS)) {
+      throw new IllegalArgumentException("Help isn't available in server mode, run the tool from command line");
+    }
+    Object stdin = request.get("stdin");
+
+    RequestStreams.Request streams = new RequestStreams.Request(stdin == null ? "" : stdin.toString());
+    try {
+      streams.run(() -> tool.run(args.toArray(new String[0])));
+      response.put("status", "ok");
+      response.put("output", streams.output());
+    } catch (Exception e) {
+      response.put("status", "error");
+      response.put("message", errorMessage(e));
+    } finally {
+      response.put("log", streams.errors());
+      streams.finish();
+    }
+    return response;
+  }
+
+  private static String errorMessage(Throwable e) {
+    return (e.getMessage() != null) ? e.getMessage() : e.toString();
+  }
+
+  public static void main(String[] args) {
+    try {
+      Server server = new Server();
+      server.setup_from_arglist(new ArrayList<>(Arrays.asList(args)));
+      server.serve();
+    } catch (Exception err) {
+      System.err.println("\n" + err.getMessage() + "\n--------------------------------------\n");
+      err.printStackTrace();
+      System.err.println("\n--------------------------------------\nUse --help option for help\n\n" + documentString());
+      System.exit(1);
+    }
+  }
+}